@@ -25,6 +25,7 @@ import org.eclipse.lsp4j.launch.LSPLauncher;
 import org.eclipse.lsp4j.services.LanguageClient;
 import ru.beeatlas.c4.custom.Custom;
 import ru.beeatlas.c4.service.C4LanguageServer;
+import ru.beeatlas.c4.utils.C4Metrics;
 
 public class C4LanguageServerLauncher {
 
@@ -32,13 +33,7 @@ public class C4LanguageServerLauncher {
         InputStream in = System.in;
         OutputStream out = System.out;
         System.setOut(System.err);
-        C4LanguageServer c4LanguageServer = new C4LanguageServer();
-        Launcher<LanguageClient> launcher = LSPLauncher.createServerLauncher(c4LanguageServer, in, out);
-        // Get the client that request to launch the LS.
-        LanguageClient client = launcher.getRemoteProxy();
-        // Set the client to language server
-        c4LanguageServer.connect(client);
-        Custom.getInstance().setClient(client);
+        Launcher<LanguageClient> launcher = launch(new C4LanguageServer(), in, out);
         // Start the listener for JsonRPC
         Future<?> startListening = launcher.startListening();
         // Get the computed result from LS.
@@ -49,5 +44,22 @@ public class C4LanguageServerLauncher {
         }
         System.exit(0);
     }
+
+	// Connects the server to the client on the other end of the streams
+	public static Launcher<LanguageClient> launch(C4LanguageServer c4LanguageServer, InputStream in, OutputStream out) {
+        Launcher<LanguageClient> launcher = new LSPLauncher.Builder<LanguageClient>()
+                .setLocalService(c4LanguageServer)
+                .setRemoteInterface(LanguageClient.class)
+                .setInput(in)
+                .setOutput(out)
+                .wrapMessages(C4Metrics.getInstance()::timeRequests)
+                .create();
+        // Get the client that request to launch the LS.
+        LanguageClient client = launcher.getRemoteProxy();
+        // Set the client to language server
+        c4LanguageServer.connect(client);
+        Custom.getInstance().setClient(client);
+        return launcher;
+    }
 	
 }
@@ -36,11 +36,13 @@ public class C4ExecuteCommandProvider {
     public static final String GET_JSON = "c4-server.get-json";
     public static final String WORKSPACE_2_DOT = "c4-server.workspace-2-dot";
     public static final String VIEW_2_MX = "c4-server.view-2-mx";
+    public static final String MEMORY_REPORT = "c4-server.memory-report";
+    public static final String METRICS = "c4-server.metrics";
 
     private static final Logger logger = LoggerFactory.getLogger(C4ExecuteCommandProvider.class);
 
     public static final List<String> SERVER_COMMANDS = Arrays.asList(UPDATE_CONFIGURATION, 
-        CALCULATE_TEXT_DECORATIONS, AUTO_FORMAT_INDENT, REFRESH_PREVIEW, SEND_SNIPPET_TELEMETRY, SEND_DEPLOYMENT_TELEMETRY, GET_JSON, WORKSPACE_2_DOT, VIEW_2_MX, SEND_PATTERN_TELEMETRY);
+        CALCULATE_TEXT_DECORATIONS, AUTO_FORMAT_INDENT, REFRESH_PREVIEW, SEND_SNIPPET_TELEMETRY, SEND_DEPLOYMENT_TELEMETRY, GET_JSON, WORKSPACE_2_DOT, VIEW_2_MX, SEND_PATTERN_TELEMETRY, MEMORY_REPORT, METRICS);
 
     public static C4ExecuteCommandResult execute(String command, List<Object> arguments, C4DocumentManager documentManager) {
 
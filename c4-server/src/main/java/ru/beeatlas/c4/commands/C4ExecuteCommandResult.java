@@ -28,6 +28,7 @@ public enum C4ExecuteCommandResult {
     STRUCTURIZR_PARSER_EXCEPTION (2),
     IO_EXCEPTION (3),
     TEXT_DECORATIONS (4),
+    NOT_MODIFIED (5),
     UNKNOWN_FAILURE (99, "Unknown Failure"),
     OK (100);
 
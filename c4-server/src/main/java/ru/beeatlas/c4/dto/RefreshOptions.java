@@ -19,9 +19,14 @@ package ru.beeatlas.c4.dto;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
-public record RefreshOptions (String document, String viewKey, String svg, String mx) {
+// viewOnly: reply with the part of the workspace the view shows only,
+// version: of the reply the client got last, not sent again if it is still the same
+public record RefreshOptions (String document, String viewKey, String svg, String mx, Boolean viewOnly, String version) {
     private static final Gson GSON = new Gson();
     public static RefreshOptions fromJson(JsonObject jsonObject) {
         return GSON.fromJson(jsonObject, RefreshOptions.class);
     }
+    public boolean scoped() {
+        return Boolean.TRUE.equals(viewOnly) && viewKey != null;
+    }
 }
\ No newline at end of file
@@ -16,12 +16,293 @@
 
 package ru.beeatlas.c4.generator;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.structurizr.Workspace;
-import com.structurizr.util.WorkspaceUtils;
+import com.structurizr.io.json.JsonWriter;
+import com.structurizr.model.ContainerInstance;
+import com.structurizr.model.Element;
+import com.structurizr.model.Relationship;
+import com.structurizr.model.SoftwareSystemInstance;
+import com.structurizr.view.ComponentView;
+import com.structurizr.view.FilteredView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.View;
 
+/**
+ * The workspace as it is passed to the client. The JSON writer of Structurizr writes
+ * straight into the base64 encoder, so neither the JSON nor its bytes are ever held
+ * as a whole. Preview payloads are written once into the string sent and the digest
+ * of their fingerprint, see {@link #payload(JsonObject)}. Encodings are kept for the
+ * snapshot version the workspace was published in, until a layout is applied to the
+ * workspace in place. A preview of a single view may ask for the part of the workspace
+ * the view shows only, see {@link #viewJson(Workspace, JsonObject, String)}.
+ */
 public class C4Generator {
+
+    private static final class Encodings {
+        final long version;
+        volatile String base64;
+        // view key -> JSON of the part of the workspace the view shows, "" for the whole workspace
+        final Map<String, Payload> views = new ConcurrentHashMap<>();
+
+        Encodings(long version) {
+            this.version = version;
+        }
+    }
+
+    // JSON sent to the client and the fingerprint it is tagged with
+    public record Payload(String json, String version) {
+    }
+
+    private static final Gson GSON = new Gson();
+
+    // workspace -> its encodings, dropped together with the models of the workspace
+    private static final Map<Workspace, Encodings> ENCODINGS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // Base64 of the JSON
     public static String generateEncodedWorkspace(Workspace workspace) throws Exception {
-        return Base64.getEncoder().encodeToString(WorkspaceUtils.toJson(workspace, false).getBytes());
+        ByteArrayOutputStream base64 = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(Base64.getEncoder().wrap(base64), StandardCharsets.UTF_8)) {
+            new JsonWriter(false).write(workspace, writer);
+        }
+        // base64 is ASCII, one byte per character
+        return base64.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    // Encoded once per snapshot version of the workspace
+    public static String generateEncodedWorkspace(Workspace workspace, long version) throws Exception {
+        Encodings encodings = encodings(workspace, version);
+        String encoded = encodings.base64;
+        if (encoded == null) {
+            encoded = generateEncodedWorkspace(workspace);
+            encodings.base64 = encoded;
+        }
+        return encoded;
+    }
+
+    // JSON of the workspace, written once per snapshot version of the workspace
+    public static String json(Workspace workspace, long version) throws Exception {
+        return payload(workspace, version).json();
+    }
+
+    // JSON of the whole workspace, tagged with its fingerprint
+    public static Payload payload(Workspace workspace, long version) throws Exception {
+        return encodings(workspace, version).views.computeIfAbsent("",
+                key -> write(writer -> new JsonWriter(false).write(workspace, writer)));
+    }
+
+    // JSON of the part of the workspace the view shows, once per snapshot version
+    public static Payload viewPayload(Workspace workspace, long version, String viewKey) throws Exception {
+        if (workspace.getViews().getViewWithKey(viewKey) == null) {
+            return payload(workspace, version);
+        }
+        Map<String, Payload> views = encodings(workspace, version).views;
+        Payload payload = views.get(viewKey);
+        if (payload != null) {
+            return payload;
+        }
+        // written outside of computeIfAbsent, it updates the same map
+        String json = json(workspace, version);
+        return views.computeIfAbsent(viewKey, key -> viewPayload(workspace, JsonParser.parseString(json).getAsJsonObject(), key));
+    }
+
+    // The parsed workspace JSON, pruned in place to the view
+    public static Payload viewPayload(Workspace workspace, JsonObject json, String viewKey) {
+        prune(workspace, json, viewKey);
+        return payload(json);
+    }
+
+    public static Payload payload(JsonObject json) {
+        return write(writer -> GSON.getAdapter(JsonElement.class).write(new com.google.gson.stream.JsonWriter(writer), json));
+    }
+
+    public static Payload payload(String json) {
+        return new Payload(json, fingerprint(json));
+    }
+
+    private interface JsonSource {
+        void write(Writer writer) throws Exception;
+    }
+
+    // The JSON is written once, into the string and the digest of its UTF-8 bytes at the same time
+    private static Payload write(JsonSource source) {
+        MessageDigest digest = sha256();
+        StringBuilder json = new StringBuilder();
+        Writer bytes = new OutputStreamWriter(new DigestOutputStream(OutputStream.nullOutputStream(), digest), StandardCharsets.UTF_8);
+        try (Writer writer = new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                json.append(chars, offset, length);
+                bytes.write(chars, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                bytes.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                bytes.close();
+            }
+        }) {
+            source.write(writer);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return new Payload(json.toString(), HexFormat.of().formatHex(digest.digest(), 0, 16));
+    }
+
+    /**
+     * The workspace JSON with the elements and relationships the view does not show
+     * removed, and all views but the view (and the view a filtered view is based on).
+     * Elements containing a shown element, the containers and software systems of shown
+     * instances, and the relationships implied ones are linked to together with what they
+     * connect are kept. The styles are kept as they are, the renderer also applies them
+     * to tags it adds itself, like those of boundaries and groups.
+     */
+    public static String viewJson(Workspace workspace, String workspaceJson, String viewKey) {
+        if (workspace.getViews().getViewWithKey(viewKey) == null) {
+            return workspaceJson;
+        }
+        return viewJson(workspace, JsonParser.parseString(workspaceJson).getAsJsonObject(), viewKey);
+    }
+
+    // The same for the parsed JSON, which is pruned in place
+    public static String viewJson(Workspace workspace, JsonObject json, String viewKey) {
+        prune(workspace, json, viewKey);
+        return json.toString();
+    }
+
+    private static void prune(Workspace workspace, JsonObject json, String viewKey) {
+        View view = workspace.getViews().getViewWithKey(viewKey);
+        if (view == null) {
+            return;
+        }
+        Set<String> viewKeys = new HashSet<>();
+        viewKeys.add(viewKey);
+        if (view instanceof FilteredView filteredView) {
+            viewKeys.add(filteredView.getBaseViewKey());
+            view = filteredView.getView();
+        }
+        if (!(view instanceof ModelView modelView)) {
+            return;
+        }
+
+        Set<String> elementIds = new HashSet<>();
+        Set<String> relationshipIds = new HashSet<>();
+        modelView.getElements().forEach(elementView -> keepElement(workspace, elementView.getId(), elementIds));
+        keepElement(workspace, modelView.getSoftwareSystemId(), elementIds);
+        if (modelView instanceof ComponentView componentView) {
+            keepElement(workspace, componentView.getContainerId(), elementIds);
+        }
+        modelView.getRelationships().forEach(relationshipView -> {
+            Relationship relationship = workspace.getModel().getRelationship(relationshipView.getId());
+            keepRelationship(workspace, relationship, elementIds, relationshipIds);
+            if (relationship != null && relationship.getLinkedRelationshipId() != null) {
+                keepRelationship(workspace, workspace.getModel().getRelationship(relationship.getLinkedRelationshipId()),
+                        elementIds, relationshipIds);
+            }
+        });
+
+        if (json.get("model") instanceof JsonObject model) {
+            pruneElements(model, elementIds, relationshipIds);
+        }
+        if (json.get("views") instanceof JsonObject views) {
+            views.entrySet().forEach(entry -> {
+                if (entry.getValue() instanceof JsonArray array) {
+                    array.asList().removeIf(v -> !(v instanceof JsonObject o) || !o.has("key")
+                            || !viewKeys.contains(o.get("key").getAsString()));
+                }
+            });
+        }
+    }
+
+    // The element, the elements containing it, and for an instance what it is an instance of
+    private static void keepElement(Workspace workspace, String id, Set<String> elementIds) {
+        Element element = id != null ? workspace.getModel().getElement(id) : null;
+        while (element != null && elementIds.add(element.getId())) {
+            if (element instanceof ContainerInstance instance) {
+                keepElement(workspace, instance.getContainerId(), elementIds);
+            } else if (element instanceof SoftwareSystemInstance instance) {
+                keepElement(workspace, instance.getSoftwareSystemId(), elementIds);
+            }
+            element = element.getParent();
+        }
     }
+
+    // The relationship and the elements it connects
+    private static void keepRelationship(Workspace workspace, Relationship relationship, Set<String> elementIds, Set<String> relationshipIds) {
+        if (relationship != null && relationship.getSource() != null && relationship.getDestination() != null) {
+            relationshipIds.add(relationship.getId());
+            keepElement(workspace, relationship.getSource().getId(), elementIds);
+            keepElement(workspace, relationship.getDestination().getId(), elementIds);
+        }
+    }
+
+    // Arrays of objects with an id are nested elements, or relationships of their element
+    private static void pruneElements(JsonObject parent, Set<String> elementIds, Set<String> relationshipIds) {
+        parent.entrySet().forEach(entry -> {
+            if (!(entry.getValue() instanceof JsonArray array)) {
+                return;
+            }
+            boolean relationships = entry.getKey().equals("relationships");
+            array.asList().removeIf(item -> {
+                if (!(item instanceof JsonObject object) || !object.has("id")) {
+                    return false;
+                }
+                String id = object.get("id").getAsString();
+                if (!(relationships ? relationshipIds : elementIds).contains(id)) {
+                    return true;
+                }
+                pruneElements(object, elementIds, relationshipIds);
+                return false;
+            });
+        });
+    }
+
+    static String fingerprint(String json) {
+        return HexFormat.of().formatHex(sha256().digest(json.getBytes(StandardCharsets.UTF_8)), 0, 16);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The layout of the workspace was changed in place
+    public static void invalidate(Workspace workspace) {
+        ENCODINGS.remove(workspace);
+    }
+
+    private static Encodings encodings(Workspace workspace, long version) {
+        return ENCODINGS.compute(workspace, (w, encodings) ->
+                encodings != null && encodings.version == version ? encodings : new Encodings(version));
+    }
+
 }
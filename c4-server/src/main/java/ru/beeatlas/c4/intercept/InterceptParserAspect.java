@@ -81,8 +81,13 @@ public class InterceptParserAspect {
         parserListener.onStartFile(dslFile);
         try {
             joinPoint.proceed();
+        } catch (StructurizrDslParserException e) {
+            parserListener.onException(e);
+        } catch (RuntimeException | Error e) {
+            // e.g. cancellation requested by the listener
+            throw e;
         } catch (Throwable e) {
-            parserListener.onException((StructurizrDslParserException) e);
+            throw new RuntimeException(e);
         }
         parserListener.onEndFile();
     }
@@ -23,23 +23,32 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.eclipse.lsp4j.Diagnostic;
 import org.eclipse.lsp4j.DiagnosticSeverity;
+import org.eclipse.lsp4j.FileChangeType;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.PublishDiagnosticsParams;
 import org.eclipse.lsp4j.Range;
 import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,123 +58,199 @@ import com.structurizr.dsl.StructurizrDslParser;
 import com.structurizr.dsl.StructurizrDslParserException;
 import com.structurizr.model.Element;
 import com.structurizr.model.Relationship;
-import com.structurizr.util.WorkspaceUtils;
 import com.structurizr.view.View;
-import com.structurizr.view.ViewSet;
 
 import ru.beeatlas.c4.intercept.StructurizrDslParserListener;
+import ru.beeatlas.c4.model.C4ParseSession.ParseContext;
+import ru.beeatlas.c4.utils.C4Events;
+import ru.beeatlas.c4.utils.C4Metrics;
 import ru.beeatlas.c4.utils.C4Utils;
 
 public class C4DocumentManager implements StructurizrDslParserListener {
 
-	class ParseContext {
-		public File file;
-		public C4DocumentModel model;
-		public String currentIdentifier;
-		public Line line;
-		public List<Line> lines;
-		int lineIndex;
-		int leadingSpace = 0;
-		public void newLine() {
-			if(lines != null && !lines.isEmpty()) {
-				Line newLine = lines.get(lineIndex++);
-				if(newLine != null) {
-					if(leadingSpace > 0 && newLine.source().length() >= leadingSpace) {
-						line = new Line(newLine.number(), newLine.source().substring(leadingSpace));
-					} else {
-						line = newLine;
-					}
-				}
-			}			
-		}
-	}
-
     private static final Logger logger = LoggerFactory.getLogger(C4DocumentManager.class);
 
-    private Map<String, C4DocumentModel> c4Models = new ConcurrentHashMap<>();
-	private AtomicReference<Set<C4ObjectWithContext<Element>>> elements = new AtomicReference<>(new HashSet<>());
+	// Last committed parse result, replaced as a whole so readers never see a half-built model
+	private AtomicReference<C4DocumentSnapshot> snapshot = new AtomicReference<>(C4DocumentSnapshot.EMPTY);
+	// Snapshot version, last parsed workspace and include edges are updated together
+	private final Object commitLock = new Object();
+
+	private static final CancelChecker NOT_CANCELED = () -> {};
+	// Parse state of the diagnostics request running on the current thread, the parser
+	// calls the listener on that thread. Workspaces parse in parallel on different threads.
+	private final ThreadLocal<C4ParseSession> sessions = new ThreadLocal<>();
+	// on-disk indexes of parsed files, null if not enabled
+	private volatile C4IndexStore indexStore = null;
+	// path -> model restored from its index, until the file is part of a snapshot
+	private final Map<String, C4DocumentModel> indexedModels = new ConcurrentHashMap<>();
+
+	private record JsonLayouts(long modified, long length, CompletableFuture<C4LayoutTable> layouts) {
+	}
 
-	private ParseContext context = null;
-	private LinkedList<ParseContext> contextStack = new LinkedList<>();
+	// path of workspace.json -> layouts read from it, read again once the file changes
+	private final Map<String, JsonLayouts> jsonLayouts = new ConcurrentHashMap<>();
+	private final ExecutorService layoutReader = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "c4-layout-reader");
+		thread.setDaemon(true);
+		return thread;
+	});
 
-	private Workspace jsonWorkspace = null;
-	private long jsonModified = 0;
+	private final Map<File, String> fileContent = new ConcurrentHashMap<>();
 
-	private Map<File, String> fileContent = new HashMap<>();
+	// directory and file name -> workspace file found from there, see setFileWatching
+	private final Map<String, File> workspaceFiles = new ConcurrentHashMap<>();
+	private volatile boolean fileWatching = false;
 
-	private int nextLeadingSpace = 0;
-	private Workspace lastParsedWorkspace = null;
+	// Results of recent parses by content fingerprint: skip parsing if the text was seen before
+	private final C4ParseCache parseCache = new C4ParseCache(C4ParseCache.DEFAULT_SIZE);
 
-	// For content hash caching: skip parsing if file unchanged
-	private Map<String, Integer> contentHashes = new ConcurrentHashMap<>();
-	private Map<String, PublishDiagnosticsParams> cachedDiagnostics = new ConcurrentHashMap<>();
+	// Include and extends edges between files, used to reparse only affected workspaces
+	private final C4IncludeGraph includeGraph = new C4IncludeGraph();
 
-	// For double buffering: parse new models into a separate map
-	// so hover/definition see the old valid one during parsing
-	private Map<String, C4DocumentModel> pendingModels = new ConcurrentHashMap<>();
+	// Models of closed documents are evicted once their estimated size exceeds the budget
+	private final C4MemoryBudget memoryBudget = new C4MemoryBudget();
 
-	public Workspace getLastParsedWorkspace() {
-		return lastParsedWorkspace;
+	public C4DocumentSnapshot getSnapshot() {
+		return snapshot.get();
 	}
 
-	public Set<C4ObjectWithContext<Element>> getElements() {
-		return elements.get();
+	// Elements of the workspace the file was last parsed with
+	public Set<C4ObjectWithContext<Element>> getElements(File file) {
+		return snapshot.get().getElements(getWorkspaceRoot(file));
 	}
 
     public C4DocumentModel getDocument(TextDocumentIdentifier documentId) throws URISyntaxException {
+		return getDocument(snapshot.get(), documentId);
+    }
+
+    public static C4DocumentModel getDocument(C4DocumentSnapshot snapshot, TextDocumentIdentifier documentId) throws URISyntaxException {
 		File file = new File(new URI(documentId.getUri()));
-		String path = file.getAbsolutePath();
-		return Optional.ofNullable(c4Models.get(path)).orElse(new C4DocumentModel(path, true));
+		return snapshot.getDocument(file.getAbsolutePath());
     }
 
+	// Like getDocument, but a file not parsed yet is served from its index if there is one.
+	// Such a model only has scopes, tokens and element identifiers, no workspace.
+	public C4DocumentModel getDocumentOrIndexed(C4DocumentSnapshot snapshot, TextDocumentIdentifier documentId) throws URISyntaxException {
+		String path = new File(new URI(documentId.getUri())).getAbsolutePath();
+		C4DocumentModel model = snapshot.models().get(path);
+		if (model == null) {
+			model = indexedModels.get(path);
+		}
+		return model != null ? model : snapshot.getDocument(path);
+	}
+
+	public void setIndexStore(C4IndexStore indexStore) {
+		this.indexStore = indexStore;
+	}
+
+	public C4IndexStore getIndexStore() {
+		return indexStore;
+	}
+
+	// Restore the model of an opened file from its index, if the file has not been parsed
+	// yet and the index was built from the same text. Returns true if a model was restored.
+	public boolean warmUp(File file, C4TextBuffer.Text text) {
+		C4IndexStore store = indexStore;
+		String path = file.getAbsolutePath();
+		if (store == null || snapshot.get().models().containsKey(path)) {
+			return false;
+		}
+		C4FileIndex index = store.read(path, C4FileIndex.fingerprint(text.text()));
+		if (index == null) {
+			return false;
+		}
+		C4DocumentModel model = index.toModel(text, path);
+		model.freeze(0);
+		indexedModels.put(path, model);
+		logger.info("{} restored from index", path);
+		return true;
+	}
+
+	// Callbacks of a parser not started by calcDiagnostics are ignored
+	private ParseContext context() {
+		C4ParseSession session = sessions.get();
+		return session != null ? session.context : null;
+	}
+
 	@Override
 	public void onExtendsBy(File file) {
-		C4DocumentModel extendsBy = getModel(file);
-		context.model.setExtendsBy(extendsBy);
+		ParseContext context = context();
+		if (context == null) {
+			return;
+		}
+		C4ParseSession session = sessions.get();
+		session.addInclude(context.file, file);
+		session.events.add(C4ParseEvents.EXTENDS_BY, context, 0, getModel(session, file), null);
 	}
 
 	@Override
 	public void onLeadingSpace(int leadingSpace) {
-		nextLeadingSpace = leadingSpace;
+		C4ParseSession session = sessions.get();
+		if (session != null) {
+			session.nextLeadingSpace = leadingSpace;
+		}
 	}
 
 	@Override
 	public void onLines(List<Line> lines) {
-		context.lines = lines;
-		context.lineIndex = 0;
+		ParseContext context = context();
+		if (context != null) {
+			context.lines = lines;
+			context.lineIndex = 0;
+		}
 	}
 
 	@Override
 	public void onNewLine() {
-		context.newLine();
+		C4ParseSession session = sessions.get();
+		if (session != null) {
+			session.cancelChecker.checkCanceled();
+			if (session.context != null) {
+				session.context.newLine();
+			}
+		}
 	}	
 
 	@Override
 	public void onIdentifier(String identifier) {
-		context.currentIdentifier = identifier;
+		ParseContext context = context();
+		if (context != null) {
+			context.currentIdentifier = identifier;
+		}
 	}
 
 	@Override
 	public void onStartFile(File file) {
-		contextStack.addLast(context);
-		context = new ParseContext();
+		C4ParseSession session = sessions.get();
+		if (session == null) {
+			return;
+		}
+		session.contextStack.addLast(session.context);
+		ParseContext context = new ParseContext();
+		session.context = context;
 		context.file = file;
-		context.model = getModel(file);
-		context.model.clear();
-		context.leadingSpace = nextLeadingSpace;
-		nextLeadingSpace = 0;
+		session.startFile(file);
+		context.model = getModel(session, file);
+		context.leadingSpace = session.nextLeadingSpace;
+		session.nextLeadingSpace = 0;
+		context.index = session.events.addFile(context);
+		session.events.add(C4ParseEvents.START_FILE, context, 0, null, null);
 	}
 
 	@Override
 	public void onEndFile() {
-		context = contextStack.removeLast();
+		C4ParseSession session = sessions.get();
+		if (session != null) {
+			session.context = session.contextStack.removeLast();
+		}
 	}	
 
 	@Override
 	public void onParsedRelationShip(Relationship relationship) {
-		if (relationship != null) {
-			context.model.addRelationship(context.line.number(), new C4ObjectWithContext<>(
-					context.currentIdentifier, context.line.number(), context.line.source(), relationship, context.model));
+		C4ParseSession session = sessions.get();
+		ParseContext context = session != null ? session.context : null;
+		if (relationship != null && context != null) {
+			session.events.add(C4ParseEvents.RELATIONSHIP, context, 0, relationship, context.currentIdentifier);
 		} else {
 			logger.error("onParsedRelationShip() - Context is null");
 		}
@@ -173,10 +258,10 @@ public class C4DocumentManager implements StructurizrDslParserListener {
 
 	@Override
 	public void onParsedModelElement(Element item) {
+		C4ParseSession session = sessions.get();
+		ParseContext context = session != null ? session.context : null;
 		if (context != null) {
-			C4ObjectWithContext<Element> element = new C4ObjectWithContext<>(context.currentIdentifier, context.line.number(), context.line.source(), item, context.model);
-			context.model.addElement(context.line.number(), element);
-			elements.get().add(element);
+			session.events.add(C4ParseEvents.ELEMENT, context, 0, item, context.currentIdentifier);
 		} else {
 			logger.error("onParsedModelElement() - Context is null");
 		}
@@ -184,9 +269,10 @@ public class C4DocumentManager implements StructurizrDslParserListener {
 
 	@Override
 	public void onParsedView(View view) {
+		C4ParseSession session = sessions.get();
+		ParseContext context = session != null ? session.context : null;
 		if (context != null) {
-			context.model.addView(context.line.number(),
-					new C4ObjectWithContext<>(null, context.line.number(), context.line.source(), view, null));
+			session.events.add(C4ParseEvents.VIEW, context, 0, view, null);
 		} else {
 			logger.error("onParsedView() - Context is null");
 		}
@@ -194,8 +280,10 @@ public class C4DocumentManager implements StructurizrDslParserListener {
 	
 	@Override
 	public void onParsedColor() {
+		C4ParseSession session = sessions.get();
+		ParseContext context = session != null ? session.context : null;
 		if (context != null) {
-			context.model.addColor(context.line.number(), context.line.source());
+			session.events.add(C4ParseEvents.COLOR, context, 0, null, null);
 		} else {
 			logger.error("onParsedColor() - Context is null");
 		}
@@ -203,9 +291,11 @@ public class C4DocumentManager implements StructurizrDslParserListener {
 			
 	@Override
 	public void onInclude(File referencedFile) {
+		C4ParseSession session = sessions.get();
+		ParseContext context = session != null ? session.context : null;
 		if (context != null) {
-			getModel(referencedFile).setExtendsBy(context.model.getExtendsBy());
-			context.model.addReferencedModel(getModel(referencedFile), context.line.number(), referencedFile.getPath());
+			session.addInclude(context.file, referencedFile);
+			session.events.add(C4ParseEvents.INCLUDE, context, 0, getModel(session, referencedFile), referencedFile.getPath());
 		} else {
 			logger.error("onInclude() - Context is null");
 		}
@@ -213,8 +303,10 @@ public class C4DocumentManager implements StructurizrDslParserListener {
 
 	@Override
 	public void onStartContext(int contextId, String contextName) {
+		C4ParseSession session = sessions.get();
+		ParseContext context = session != null ? session.context : null;
 		if (context != null) {
-			context.model.openScope(context.line.number(), contextId, contextName);
+			session.events.add(C4ParseEvents.START_CONTEXT, context, contextId, contextName, null);
 		} else {
 			logger.error("onStartContext() - Context is null");
 		}
@@ -222,8 +314,10 @@ public class C4DocumentManager implements StructurizrDslParserListener {
 
 	@Override
 	public void onEndContext(int contextId, String contextName) {
+		C4ParseSession session = sessions.get();
+		ParseContext context = session != null ? session.context : null;
 		if (context != null) {
-			context.model.closeScope(context.line.number(), contextId, contextName);
+			session.events.add(C4ParseEvents.END_CONTEXT, context, contextId, contextName, null);
 		} else {
 			logger.error("onEndContext() - Context is null");
 		}
@@ -237,8 +331,10 @@ public class C4DocumentManager implements StructurizrDslParserListener {
 
 	@Override
 	public void onParsedProperty(String name, String value) {
+		C4ParseSession session = sessions.get();
+		ParseContext context = session != null ? session.context : null;
 		if(context != null) {
-			context.model.addProperty(new C4Property(context.line.number(), context.line.source(), name, value));
+			session.events.add(C4ParseEvents.PROPERTY, context, 0, name, value);
 		} else {
 			logger.error("onParsedProperty() - Context is null");
 		}
@@ -246,31 +342,293 @@ public class C4DocumentManager implements StructurizrDslParserListener {
 
 	// Get model for file during parsing.
 	// First check pendingModels (current parsing cycle),
-	// if not found — create new one there. Old models in c4Models remain untouched,
+	// if not found — create new one there. Committed models remain untouched,
 	// ensuring hover/definition still use valid data.
-	private C4DocumentModel getModel(File _file) {
+	// Text of unchanged included files is taken over from the last committed model.
+	private C4DocumentModel getModel(C4ParseSession session, File _file) {
 		String file = _file.getAbsolutePath();
-		return pendingModels.computeIfAbsent(file, key -> new C4DocumentModel(file, true));
+		return session.pendingModels.computeIfAbsent(file, key -> {
+			C4DocumentModel model = new C4DocumentModel(file, true);
+			C4DocumentModel previous = snapshot.get().models().get(file);
+			if (previous != null) {
+				model.reuseText(previous);
+			}
+			return model;
+		});
 	}
 
 	// Create new model in pendingModels with file content.
-	// Model saves at main c4Models cache only after successful parsing
+	// Model is published in a snapshot only after successful parsing
 	// (via commitPendingModels), ensuring an atomic update.
-	private C4DocumentModel createModel(File file, String content) {
-		C4DocumentModel model = new C4DocumentModel(content, file.getAbsolutePath());
-		pendingModels.put(file.getAbsolutePath(), model);
+	private C4DocumentModel createModel(C4ParseSession session, File file, String content) {
+		C4TextBuffer.Text editedText = session.editedText;
+		C4DocumentModel model = editedText != null && editedText.text() == content
+				? new C4DocumentModel(editedText, file.getAbsolutePath())
+				: new C4DocumentModel(content, file.getAbsolutePath());
+		session.pendingModels.put(file.getAbsolutePath(), model);
 		return model;
 	}
 
-	// Atomically move all models from pendingModels to the main c4Models cache.
-	// Called only after parsing succeeds — until then,
-	// hover/definition see the previous valid version.
-	private void commitPendingModels() {
-		c4Models.putAll(pendingModels);
-		pendingModels.clear();
+	// Publish models from pendingModels together with the models of the previous snapshot
+	// as a new snapshot, and the include edges found by the parse. Called only after
+	// parsing succeeds — until then, hover/definition see the previous valid version.
+	// The workspace and elements are published for the root only, other roots keep theirs.
+	private Map<String, C4DocumentModel> commitPendingModels(C4ParseSession session, String root) {
+		Map<String, C4DocumentModel> committed = Map.copyOf(session.pendingModels);
+		synchronized (commitLock) {
+			C4DocumentSnapshot previous = snapshot.get();
+			long version = previous.version() + 1;
+			committed.values().forEach(model -> model.freeze(version));
+			Map<String, C4DocumentModel> models = new HashMap<>(previous.models());
+			models.putAll(committed);
+			snapshot.set(publish(previous, version, models, root, session.workspace,
+					Collections.unmodifiableSet(session.pendingElements)));
+			session.includes.forEach((path, children) -> {
+				includeGraph.startFile(path);
+				children.forEach(child -> includeGraph.addEdge(path, child));
+			});
+			session.roots.forEach(includeGraph::addRoot);
+		}
+		indexedModels.keySet().removeAll(committed.keySet());
+		C4IndexStore store = indexStore;
+		if (store != null) {
+			store.writeAsync(committed.values());
+		}
+		session.startParsing();
+		return committed;
+	}
+
+	// Commit the parse and remember its result. Every file of the parse but parsedRoot is
+	// fingerprinted on disk, the texts of the key are checked by the key itself: the given
+	// text is that of parsedRoot, or on the include path that of the edited fragment, with
+	// parsedRoot read from disk.
+	private PublishDiagnosticsParams commitAndCache(C4ParseSession session, String key, PublishDiagnosticsParams result, File parsedRoot) {
+		String root = parsedRoot.getAbsolutePath();
+		Workspace workspace = session.workspace;
+		Set<C4ObjectWithContext<Element>> elements = Collections.unmodifiableSet(session.pendingElements);
+		Map<String, C4DocumentModel> committed = commitPendingModels(session, root);
+		Map<String, Set<String>> includes = new HashMap<>();
+		committed.keySet().forEach(path -> includes.put(path, includeGraph.getIncludes(path)));
+		Set<String> files = new HashSet<>(committed.keySet());
+		files.remove(root);
+		parseCache.put(key, new C4ParseCache.Entry(result, root, committed, elements, workspace,
+				includes, files, parseCache.fingerprint(files)));
+		memoryBudget.touch(root);
+		enforceMemoryBudget();
+		session.committed(workspace);
+		return result;
+	}
+
+	// Publish the models of a cached parse again, as if the parse had just been done
+	private PublishDiagnosticsParams restore(C4ParseSession session, C4ParseCache.Entry entry) {
+		synchronized (commitLock) {
+			entry.includes().forEach((path, children) -> {
+				includeGraph.startFile(path);
+				children.forEach(child -> includeGraph.addEdge(path, child));
+			});
+			C4DocumentSnapshot previous = snapshot.get();
+			boolean current = previous.getElements(entry.root()) == entry.elements() && entry.models().entrySet().stream()
+					.allMatch(e -> previous.models().get(e.getKey()) == e.getValue());
+			if (!current) {
+				Map<String, C4DocumentModel> models = new HashMap<>(previous.models());
+				models.putAll(entry.models());
+				snapshot.set(publish(previous, previous.version() + 1, models, entry.root(), entry.workspace(), entry.elements()));
+			}
+		}
+		indexedModels.keySet().removeAll(entry.models().keySet());
+		entry.models().keySet().stream().filter(includeGraph::isRoot).forEach(memoryBudget::touch);
+		enforceMemoryBudget();
+		session.committed(entry.workspace());
+		return entry.diagnostics();
+	}
+
+	// New snapshot with the models, and the workspace (if the parse created one) and elements of the root
+	private static C4DocumentSnapshot publish(C4DocumentSnapshot previous, long version, Map<String, C4DocumentModel> models,
+			String root, Workspace workspace, Set<C4ObjectWithContext<Element>> elements) {
+		Map<String, Workspace> workspaces = new HashMap<>(previous.workspaces());
+		if (workspace != null) {
+			workspaces.put(root, workspace);
+		}
+		Map<String, Set<C4ObjectWithContext<Element>>> rootElements = new HashMap<>(previous.elements());
+		rootElements.put(root, elements);
+		return new C4DocumentSnapshot(version, Collections.unmodifiableMap(models),
+				Collections.unmodifiableMap(workspaces), Collections.unmodifiableMap(rootElements));
+	}
+
+	public int getModelCount() {
+		return snapshot.get().models().size();
+	}
+
+	public int getFileContentCount() {
+		return fileContent.size();
+	}
+
+	// characters of the file texts kept for parsing
+	public long getFileContentLength() {
+		return fileContent.values().stream().mapToLong(String::length).sum();
+	}
+
+	public C4ParseCache getParseCache() {
+		return parseCache;
+	}
+
+	public C4MemoryBudget getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	public void setMemoryBudget(long bytes) {
+		memoryBudget.setBudget(bytes);
+		enforceMemoryBudget();
+	}
+
+	public void documentOpened(File file) {
+		memoryBudget.opened(file.getAbsolutePath());
+	}
+
+	// The models of a closed document are kept until the memory budget is exceeded
+	public void documentClosed(File file) {
+		String path = file.getAbsolutePath();
+		memoryBudget.closed(path);
+		indexedModels.remove(path);
+		enforceMemoryBudget();
+	}
+
+	// Estimated bytes retained by every model of the current snapshot, largest first
+	public List<C4MemoryBudget.ModelSize> getMemoryReport() {
+		List<C4MemoryBudget.ModelSize> report = new ArrayList<>();
+		snapshot.get().models().forEach((path, model) -> report.add(new C4MemoryBudget.ModelSize(path, getWorkspaceRoot(new File(path)),
+				C4MemoryBudget.estimate(model, includeGraph.isRoot(path)), memoryBudget.isOpen(path))));
+		report.sort(Comparator.comparingLong(C4MemoryBudget.ModelSize::bytes).reversed());
+		return report;
 	}
 
-	private static File findWorksapce(String currentDirectory, String fileName) {
+	// Drop the parses only the parse cache holds on to, then evict the workspaces used
+	// least recently, as long as none of their files is open, until the models fit into
+	// the budget. Files shared with other workspaces are kept, and so is the workspace
+	// used last, it was parsed for a reason.
+	private void enforceMemoryBudget() {
+		synchronized (commitLock) {
+			Map<String, Long> sizes = new HashMap<>();
+			snapshot.get().models().forEach((path, model) -> sizes.put(path, C4MemoryBudget.estimate(model, includeGraph.isRoot(path))));
+			long total = sizes.values().stream().mapToLong(Long::longValue).sum();
+			total += enforceParseCacheBudget(total);
+			if (total <= memoryBudget.getBudget()) {
+				return;
+			}
+			List<String> roots = memoryBudget.getRoots();
+			for (String root : roots.subList(0, Math.max(0, roots.size() - 1))) {
+				if (total <= memoryBudget.getBudget()) {
+					break;
+				}
+				Set<String> files = new HashSet<>(includeGraph.closure(root));
+				files.removeIf(file -> !file.equals(root) && includeGraph.findRoots(file).stream().anyMatch(other -> !other.equals(root)));
+				files.retainAll(sizes.keySet());
+				if (files.stream().anyMatch(memoryBudget::isOpen)) {
+					continue;
+				}
+				evict(files);
+				memoryBudget.forget(root);
+				total -= files.stream().mapToLong(sizes::get).sum();
+				logger.info("Evicted {} with {} files, {} bytes in use", root, files.size(), total);
+			}
+		}
+	}
+
+	// Models of earlier parses kept by the parse cache, apart from those of the snapshot,
+	// are dropped least recently used first while over budget. Returns the bytes still held.
+	private long enforceParseCacheBudget(long snapshotBytes) {
+		Set<C4DocumentModel> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+		counted.addAll(snapshot.get().models().values());
+		List<C4ParseCache.Entry> entries = parseCache.entries();
+		// a model shared by entries is held until the most recently used of them is dropped
+		long[] bytes = new long[entries.size()];
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			for (Map.Entry<String, C4DocumentModel> model : entries.get(i).models().entrySet()) {
+				if (counted.add(model.getValue())) {
+					bytes[i] += C4MemoryBudget.estimate(model.getValue(), includeGraph.isRoot(model.getKey()));
+				}
+			}
+		}
+		long cached = Arrays.stream(bytes).sum();
+		for (int i = 0; i < entries.size() && snapshotBytes + cached > memoryBudget.getBudget(); i++) {
+			if (bytes[i] > 0) {
+				parseCache.remove(entries.get(i));
+				cached -= bytes[i];
+			}
+		}
+		return cached;
+	}
+
+	private void evict(Set<String> files) {
+		C4DocumentSnapshot previous = snapshot.get();
+		Map<String, C4DocumentModel> models = new HashMap<>(previous.models());
+		Set<C4DocumentModel> evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+		files.forEach(path -> evicted.add(models.remove(path)));
+		Map<String, Workspace> workspaces = new HashMap<>(previous.workspaces());
+		workspaces.keySet().removeAll(files);
+		Map<String, Set<C4ObjectWithContext<Element>>> rootElements = new HashMap<>();
+		previous.elements().forEach((root, elements) -> {
+			if (!files.contains(root)) {
+				Set<C4ObjectWithContext<Element>> kept = new HashSet<>(elements);
+				kept.removeIf(element -> evicted.contains(element.getContainer()));
+				rootElements.put(root, Collections.unmodifiableSet(kept));
+			}
+		});
+		snapshot.set(new C4DocumentSnapshot(previous.version() + 1, Collections.unmodifiableMap(models),
+				Collections.unmodifiableMap(workspaces), Collections.unmodifiableMap(rootElements)));
+		files.forEach(path -> {
+			fileContent.remove(new File(path));
+			indexedModels.remove(path);
+		});
+		parseCache.evict(files);
+	}
+
+	// Results of findWorksapce are kept only while the client reports created and deleted files
+	public void setFileWatching(boolean fileWatching) {
+		this.fileWatching = fileWatching;
+		workspaceFiles.clear();
+	}
+
+	// A file was created, changed or deleted on disk (a git checkout, a generator).
+	// Its cached text is dropped, and if files appeared or disappeared, the cached
+	// workspace lookups too. Returns the workspace roots to parse again in the background.
+	public Set<String> fileChanged(File file, FileChangeType type) {
+		String path = file.getAbsolutePath();
+		fileContent.remove(file.getAbsoluteFile());
+		if (type != FileChangeType.Changed) {
+			workspaceFiles.clear();
+		}
+		if (file.getName().equalsIgnoreCase("workspace.json")) {
+			jsonLayouts.remove(path);
+			return Collections.emptySet();
+		}
+		if (!path.toLowerCase().endsWith(".dsl")) {
+			return Collections.emptySet();
+		}
+		Set<String> roots = new LinkedHashSet<>(includeGraph.findRoots(path));
+		if (includeGraph.isRoot(path)) {
+			roots.add(path);
+		}
+		if (type == FileChangeType.Deleted) {
+			includeGraph.remove(path);
+			roots.remove(path);
+		} else if (roots.isEmpty()) {
+			// not parsed yet: the workspace it belongs to, parsing it parses the file too
+			File worksapceFile = findWorksapce(file.getParent(), "workspace.dsl");
+			roots.add(worksapceFile.exists() ? worksapceFile.getAbsolutePath() : path);
+		}
+		return roots;
+	}
+
+	private File findWorksapce(String currentDirectory, String fileName) {
+		if (!fileWatching) {
+			return findWorksapceOnDisk(currentDirectory, fileName);
+		}
+		return workspaceFiles.computeIfAbsent(currentDirectory + File.pathSeparator + fileName,
+				key -> findWorksapceOnDisk(currentDirectory, fileName));
+	}
+
+	private static File findWorksapceOnDisk(String currentDirectory, String fileName) {
 		File worksapceFile = new File(currentDirectory, fileName);
 		while (!worksapceFile.exists() && currentDirectory != null) {
 			currentDirectory = Paths.get(currentDirectory).toFile().getParent();
@@ -279,185 +637,294 @@ public class C4DocumentManager implements StructurizrDslParserListener {
 		return worksapceFile;
 	}
 
-	private static void updateModel(C4DocumentModel model, CompletableFuture<ViewSet> layouts) {
+	private static void updateModel(C4DocumentModel model, CompletableFuture<C4LayoutTable> layouts) {
 		model.setValid(true);
 		if (layouts == null) {
 			return;
 		}
 		try {
-			ViewSet viewSet = layouts.get();
-			if (viewSet == null) {
+			C4LayoutTable layoutTable = layouts.get();
+			if (layoutTable == null) {
 				return;
 			}
-			model.getWorkspace().getViews().copyLayoutInformationFrom(viewSet);
+			layoutTable.apply(model.getWorkspace().getViews());
 		} catch (Exception e) {
 		}
 	}
 
-	private PublishDiagnosticsParams calcDiagnosticsForFile(File file, String content) {
-
-		String filePath = file.getAbsolutePath();
-		String currentDirectory = file.getParent();
-
-		// Find workspace.dsl early — needed for combined cache key
-		File worksapceFile = findWorksapce(currentDirectory, "workspace.dsl");
-		boolean isWorkspace = worksapceFile.getAbsolutePath().equals(file.getAbsolutePath());
+	private record ParseOutcome(Workspace workspace, StructurizrDslParserException exception) {
+	}
 
-		// Check content hash — if file unchanged, return cached diagnostics without re-parsing.
-		// For fragment files, combine hash with workspace.dsl content to detect changes in either file.
-		logger.info("Check content changes for {}", filePath);
-		int fileHash = content.hashCode();
-		int newHash = fileHash;
-		if (!isWorkspace && worksapceFile.exists()) {
-			String wsContent = fileContent.get(worksapceFile);
-			if (wsContent != null) {
-				newHash = 31 * newHash + wsContent.hashCode();
+	// Parse file with a fresh parser. Layouts are applied only if parsing succeeds,
+	// the parser exception is returned to let the caller decide what to report.
+	private ParseOutcome parse(C4ParseSession session, File file, String content, CompletableFuture<C4LayoutTable> layouts) {
+		C4DocumentModel model = createModel(session, file, content);
+		StructurizrDslParser parser = new StructurizrDslParser();
+		StructurizrDslParserException exception = null;
+		session.elementIndex = new C4ElementIndex();
+		C4Events.Parse event = new C4Events.Parse();
+		// models the parse starts from
+		event.snapshotVersion = snapshot.get().version();
+		event.begin();
+		long start = System.nanoTime();
+		try {
+			model.clear();
+			parser.parse(content, file);
+		} catch (StructurizrDslParserException e) {
+			logger.info("ParserException {}", e.getMessage());
+			exception = e;
+		} catch (Exception e) {
+			if (!session.cancelChecker.isCanceled()) {
+				logger.error("ParserException {}", e.getMessage());
 			}
 		}
-		Integer oldHash = contentHashes.get(filePath);
-		if (oldHash != null && oldHash.equals(newHash)) {
-			PublishDiagnosticsParams cached = cachedDiagnostics.get(filePath);
-			if (cached != null) {
-				logger.info("Content unchanged, skipping parse for {}", filePath);
-				return cached;
+		// The parser may wrap the cancellation into its own exception, so check once more.
+		// Models parsed so far are dropped, committed models stay as they are.
+		if (session.cancelChecker.isCanceled()) {
+			logger.info("Parsing of {} canceled", file.getAbsolutePath());
+			commitParseEvent(event, file, content, null, "canceled");
+			session.startParsing();
+			throw new CancellationException();
+		}
+		// models of a parse that failed half way are still built from what it reported
+		session.events.apply(session);
+		C4Metrics.getInstance().recordParse(System.nanoTime() - start);
+		Workspace workspace = parser.getWorkspace();
+		commitParseEvent(event, file, content, workspace, exception != null ? "error" : "parsed");
+		if (workspace != null) {
+			session.roots.add(file.getAbsolutePath());
+			session.workspace = workspace;
+			model.setWorkspace(workspace);
+			if (exception == null) {
+				updateModel(model, layouts);
 			}
 		}
-		logger.info("Content changed, parsing for {}", filePath);
-		CompletableFuture<ViewSet> layouts = null;
+		return new ParseOutcome(workspace, exception);
+	}
 
-		fileContent.put(file, content);
+	private void commitParseEvent(C4Events.Parse event, File file, String content, Workspace workspace, String outcome) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.uri = file.toURI().toString();
+			event.lines = (int) content.lines().count();
+			event.elements = workspace != null ? workspace.getModel().getElements().size() : 0;
+			event.outcome = outcome;
+			event.commit();
+		}
+	}
 
-		// Clear staging area before starting a new parsing cycle
-		pendingModels.clear();
+	private PublishDiagnosticsParams parseWorkspace(C4ParseSession session, File workspaceFile, String workspaceContent, CompletableFuture<C4LayoutTable> layouts) {
+		List<Diagnostic> errors = new ArrayList<>();
+		ParseOutcome outcome = parse(session, workspaceFile, workspaceContent, layouts);
+		if (outcome.exception() != null) {
+			errors.add(createError(outcome.exception()));
+		}
+		return new PublishDiagnosticsParams(workspaceFile.toURI().toString(), errors);
+	}
 
+	// Only the layout information is read from workspace.json, while the DSL is parsed
+	private CompletableFuture<C4LayoutTable> loadLayouts(String currentDirectory) {
 		File worksapceJson = findWorksapce(currentDirectory, "workspace.json");
 		if(worksapceJson.exists() && worksapceJson.canRead()) {
-			if(jsonWorkspace == null || jsonModified != worksapceJson.lastModified()) {
-				logger.info("Get layout from workspace.json");
-				jsonModified = worksapceJson.lastModified();
-				layouts = CompletableFuture.supplyAsync(() -> {
+			long modified = worksapceJson.lastModified();
+			long length = worksapceJson.length();
+			return jsonLayouts.compute(worksapceJson.getAbsolutePath(), (path, cached) -> {
+				if (cached != null && cached.modified() == modified && cached.length() == length) {
+					C4Metrics.getInstance().layoutHit();
+					return cached;
+				}
+				C4Metrics.getInstance().layoutMiss();
+				logger.info("Get layout from {}", path);
+				return new JsonLayouts(modified, length, CompletableFuture.supplyAsync(() -> {
 					try {
-						jsonWorkspace = WorkspaceUtils.loadWorkspaceFromJson(worksapceJson);
-						return jsonWorkspace.getViews();
+						return C4LayoutTable.read(worksapceJson);
 					} catch(Exception e) {
+						logger.warn("Layout of {} not readable: {}", path, e.getMessage());
 						return null;
 					}
-				});
-			} else if(jsonWorkspace != null) {
-				layouts = CompletableFuture.completedFuture(jsonWorkspace.getViews());
-			}
+				}, layoutReader));
+			}).layouts();
 		}
+		return null;
+	}
 
-		context = null;
-		elements.set(new HashSet<>());
-		contextStack.clear();
+	private String readContent(File file) {
+		return fileContent.computeIfAbsent(file, f -> {
+			try {
+				return new String(Files.readAllBytes(Paths.get(f.getAbsolutePath())));
+			} catch (IOException e) {
+				return null;
+			}
+		});
+	}
 
-		StructurizrDslParser parser = new StructurizrDslParser();
-		List<Diagnostic> errors = new ArrayList<>();
+	private PublishDiagnosticsParams calcDiagnosticsForFile(C4ParseSession session, File file, String content) {
+
+		String filePath = file.getAbsolutePath();
+		String currentDirectory = file.getParent();
+
+		// Find workspace.dsl early — needed for combined cache key
+		File worksapceFile = findWorksapce(currentDirectory, "workspace.dsl");
+		boolean isWorkspace = worksapceFile.getAbsolutePath().equals(file.getAbsolutePath());
+
+		// Check the parse cache — if this text was parsed before, return its result without re-parsing.
+		// For fragment files, the key includes workspace.dsl content to detect changes in either file.
+		logger.info("Check content changes for {}", filePath);
+		String workspacePath = !isWorkspace && worksapceFile.exists() ? worksapceFile.getAbsolutePath() : null;
+		String key = C4ParseCache.key(filePath, content, workspacePath,
+				workspacePath != null ? fileContent.get(worksapceFile) : null);
+		fileContent.put(file, content);
+		C4ParseCache.Entry cached = parseCache.get(key);
+		if (cached != null) {
+			logger.info("Content parsed before, skipping parse for {}", filePath);
+			return restore(session, cached);
+		}
+		logger.info("Content changed, parsing for {}", filePath);
+
+		session.startParsing();
+		CompletableFuture<C4LayoutTable> layouts = loadLayouts(currentDirectory);
 
 		if (isWorkspace) {
-			C4DocumentModel model = createModel(file, content);
-			try {
-				model.clear();
-				parser.parse(content, file);
-			} catch (StructurizrDslParserException e) {
-				logger.info("ParserException {}", e.getMessage());
-				errors.add(createError(e));
-			} catch (Exception e) {
-				logger.error("ParserException {}", e.getMessage());
-			} finally {
-				if (parser.getWorkspace() != null) {
-					lastParsedWorkspace = parser.getWorkspace();
-					model.setWorkspace(lastParsedWorkspace);
-					if(errors.isEmpty()) {
-						updateModel(model, layouts);
-					}
-				}
-			}
 			// Parsing complete — commit content hash and
-			// move models from staging (pendingModels) to the main c4Models cache
-			PublishDiagnosticsParams result = new PublishDiagnosticsParams(file.toURI().toString(), errors);
-			contentHashes.put(filePath, newHash);
-			cachedDiagnostics.put(filePath, result);
-			commitPendingModels();
-			return result;
+			// publish models from staging (pendingModels) as a new snapshot
+			PublishDiagnosticsParams result = parseWorkspace(session, file, content, layouts);
+			return commitAndCache(session, key, result, file);
 		}
 
-		C4DocumentModel model = createModel(file, content);
-		try {
-			model.clear();
-			parser.parse(content, file);
-		} catch (StructurizrDslParserException e) {
+		List<Diagnostic> errors = new ArrayList<>();
+		ParseOutcome outcome = parse(session, file, content, layouts);
+		StructurizrDslParserException e = outcome.exception();
+		if (e != null) {
 			logger.info("Got structurizr exception {}", e.getMessage());
-			if (parser.getWorkspace() != null || !worksapceFile.exists()) {
+			if (outcome.workspace() != null || !worksapceFile.exists()) {
 				// File has workspace {} (real error) or no workspace.dsl to fall back to
 				errors.add(createError(e));
 			} else {
 				// File is a fragment (no workspace created) — try parsing via workspace.dsl
 				logger.info("try to parse workspace {}", worksapceFile.getAbsolutePath());
-				String content0 = fileContent.get(worksapceFile);
-				if (content0 == null) {
-					try {
-						content0 = new String(Files.readAllBytes(Paths.get(worksapceFile.getAbsolutePath())));
-						fileContent.put(worksapceFile, content0);
-					} catch (IOException e0) {
-					}
-				}
+				String content0 = readContent(worksapceFile);
 				if (content0 != null) {
-					model = createModel(worksapceFile, content0);
-					createModel(file, content);
-					parser = new StructurizrDslParser();
-					try {
-						model.clear();
-						parser.parse(content0, worksapceFile);
-					} catch (StructurizrDslParserException e0) {
-						logger.info("ParserException {}", e0.getMessage());
-						errors.add(createError(e0));
-					} catch (Exception e0) {
-						logger.error("ParserException {}", e0.getMessage());
-					} finally {
-						if (parser.getWorkspace() != null) {
-							lastParsedWorkspace = parser.getWorkspace();
-							model.setWorkspace(lastParsedWorkspace);
-							if(errors.isEmpty()) {
-								updateModel(model, layouts);
-							}
-						}
-					}
+					createModel(session, file, content);
 					// Parsing workspace.dsl (fallback) complete — commit and move models.
-					// Cache with combined hash (fragment + workspace) so changes in either file invalidate it
-					PublishDiagnosticsParams result0 = new PublishDiagnosticsParams(worksapceFile.toURI().toString(), errors);
-					int combinedHash = 31 * fileHash + content0.hashCode();
-					contentHashes.put(filePath, combinedHash);
-					cachedDiagnostics.put(filePath, result0);
-					commitPendingModels();
-					return result0;
+					// Cached with the key of the fragment and workspace text, a change in either misses.
+					PublishDiagnosticsParams result0 = parseWorkspace(session, worksapceFile, content0, layouts);
+					return commitAndCache(session, C4ParseCache.key(filePath, content, worksapceFile.getAbsolutePath(), content0),
+							result0, worksapceFile);
 				} else {
 					errors.add(createError(e));
 				}
 			}
-		} catch (Exception e) {
-			logger.error("calcDiagnostics {}", e.getMessage());
-		} finally {
-			if (parser.getWorkspace() != null) {
-				lastParsedWorkspace = parser.getWorkspace();
-				model.setWorkspace(lastParsedWorkspace);
-				if(errors.isEmpty()) {
-					updateModel(model, layouts);
-				}
-			}
 		}
 		// Parsing regular .dsl file complete — commit and move models
 		PublishDiagnosticsParams result = new PublishDiagnosticsParams(file.toURI().toString(), errors);
-		contentHashes.put(filePath, newHash);
-		cachedDiagnostics.put(filePath, result);
-		commitPendingModels();
-		return result;
+		return commitAndCache(session, key, result, file);
+	}
+
+	// The file is known to be included (directly or transitively) by the root,
+	// so the root is parsed right away, without trying the file on its own.
+	private PublishDiagnosticsParams calcDiagnosticsForInclude(C4ParseSession session, File file, String content, File root) {
+
+		String filePath = file.getAbsolutePath();
+		String rootContent = readContent(root);
+		if (rootContent == null) {
+			logger.info("Workspace {} is not available anymore", root.getAbsolutePath());
+			includeGraph.remove(root.getAbsolutePath());
+			return calcDiagnosticsForFile(session, file, content);
+		}
+
+		String key = C4ParseCache.key(filePath, content, root.getAbsolutePath(), rootContent);
+		fileContent.put(file, content);
+		C4ParseCache.Entry cached = parseCache.get(key);
+		if (cached != null) {
+			logger.info("Content parsed before, skipping parse for {}", filePath);
+			return restore(session, cached);
+		}
+		logger.info("Content changed, parsing {} for {}", root.getAbsolutePath(), filePath);
+
+		session.startParsing();
+		CompletableFuture<C4LayoutTable> layouts = loadLayouts(root.getParent());
+
+		createModel(session, file, content);
+		PublishDiagnosticsParams result = parseWorkspace(session, root, rootContent, layouts);
+		return commitAndCache(session, key, result, root);
+	}
+
+	// Workspace root the file is parsed with, the file itself if its root is not known yet
+	public String getWorkspaceRoot(File file) {
+		String filePath = file.getAbsolutePath();
+		if (includeGraph.isRoot(filePath)) {
+			return filePath;
+		}
+		return includeGraph.findRoots(filePath).stream().findFirst().orElse(filePath);
+	}
+
+	// Whether the file is the root itself or one of the files it includes, directly or transitively
+	public boolean isPartOf(File file, String root) {
+		return includeGraph.closure(root).contains(file.getAbsolutePath());
+	}
+
+	// Workspace root the file will be parsed with, stable before its first parse: the known
+	// root, else the workspace.dsl found from its directory, else the file itself
+	public String findWorkspaceRoot(File file) {
+		String filePath = file.getAbsolutePath();
+		if (includeGraph.isRoot(filePath)) {
+			return filePath;
+		}
+		Set<String> roots = includeGraph.findRoots(filePath);
+		if (!roots.isEmpty()) {
+			return roots.iterator().next();
+		}
+		File worksapceFile = findWorksapce(file.getParent(), "workspace.dsl");
+		return worksapceFile.exists() ? worksapceFile.getAbsolutePath() : filePath;
 	}
 
 	public List<PublishDiagnosticsParams> calcDiagnostics(File file, String content) {
+		return calcDiagnostics(file, content, NOT_CANCELED);
+	}
+
+	// Throws CancellationException if the checker reports cancellation while parsing,
+	// neither the models nor the diagnostics cache are updated in that case.
+	public List<PublishDiagnosticsParams> calcDiagnostics(File file, String content, CancelChecker cancelChecker) {
+		return calcDiagnostics(new C4ParseSession(cancelChecker, null, workspace -> {}), file, content);
+	}
+
+	// Text of an open document, its model reuses the line index of the buffer
+	public List<PublishDiagnosticsParams> calcDiagnostics(File file, C4TextBuffer.Text text, CancelChecker cancelChecker) {
+		return calcDiagnostics(file, text, cancelChecker, workspace -> {});
+	}
+
+	// Every workspace committed for the file, one per root it was parsed with, is passed to the consumer
+	public List<PublishDiagnosticsParams> calcDiagnostics(File file, C4TextBuffer.Text text, CancelChecker cancelChecker,
+			Consumer<Workspace> committed) {
+		return calcDiagnostics(new C4ParseSession(cancelChecker, text, committed), file, text.text());
+	}
+
+	// Safe to call from several threads at once, a file shared by workspaces parsed at
+	// the same time ends up with the model of the workspace committed last
+	private List<PublishDiagnosticsParams> calcDiagnostics(C4ParseSession session, File file, String content) {
+		C4ParseSession outer = sessions.get();
+		sessions.set(session);
+		try {
+			return calcDiagnosticsForRoots(session, file, content);
+		} finally {
+			if (outer != null) {
+				sessions.set(outer);
+			} else {
+				sessions.remove();
+			}
+		}
+	}
+
+	private List<PublishDiagnosticsParams> calcDiagnosticsForRoots(C4ParseSession session, File file, String content) {
 		List<PublishDiagnosticsParams> diagnostics = new ArrayList<>();
-		diagnostics.add( calcDiagnosticsForFile(file, content));
+		String filePath = file.getAbsolutePath();
+		// Reparse only the workspaces depending on the changed file
+		Set<String> roots = includeGraph.isRoot(filePath) ? Collections.emptySet() : includeGraph.findRoots(filePath);
+		if (roots.isEmpty()) {
+			diagnostics.add(calcDiagnosticsForFile(session, file, content));
+		} else {
+			roots.forEach(root -> diagnostics.add(calcDiagnosticsForInclude(session, file, content, new File(root))));
+		}
 		return diagnostics;
 	}
 
@@ -28,7 +28,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
@@ -49,6 +48,7 @@ import org.eclipse.lsp4j.Range;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonObject;
 import com.structurizr.Workspace;
 import com.structurizr.model.ContainerInstance;
 import com.structurizr.model.Element;
@@ -61,20 +61,15 @@ import ru.beeatlas.c4.custom.Custom;
 import ru.beeatlas.c4.dto.CodeLensCommandArgs;
 import ru.beeatlas.c4.generator.C4Generator;
 import ru.beeatlas.c4.provider.C4SemanticTokenProvider;
+import ru.beeatlas.c4.provider.C4SemanticTokenProvider.EncodedTokens;
+import ru.beeatlas.c4.provider.C4SemanticTokenProvider.Token;
 import ru.beeatlas.c4.utils.LineToken;
 import ru.beeatlas.c4.utils.LineTokenizer;
+import ru.beeatlas.c4.utils.C4Events;
 import ru.beeatlas.c4.utils.C4Utils;
 
 public class C4DocumentModel {
 
-	private record C4SemanticToken(
-			int lineNumber,
-			int startPos,
-			int length,
-			int tokenType,
-			int tokenModifier) {
-	}
-
 	public record C4CompletionScope(
 			int id,
 			String name,
@@ -90,6 +85,7 @@ public class C4DocumentModel {
     private static final String COLOR_START_TOKEN = "#";
 
 	private String rawText = "";
+	private long rawTextModified = 0;
 	private Workspace workspace;
 	private boolean valid = false;
 	
@@ -98,11 +94,14 @@ public class C4DocumentModel {
     
 	private Deque<C4CompletionScope> scopeStack = new ArrayDeque<>();
 	private List<C4CompletionScope> scopes = new ArrayList<>();
+	// line to scope tables, rebuilt on first lookup after scopes have changed
+	private volatile C4ScopeIndex scopeIndex = null;
 
     private Map<Integer, C4ObjectWithContext<View>> viewToLineNumber = new HashMap<>();
     private Map<Integer, C4ObjectWithContext<Element>> elementsToLineNumber = new HashMap<>();
 	private Map<Integer, C4ObjectWithContext<Relationship>> relationShipsToLineNumber = new HashMap<>();
-	private Map<String, List<C4ObjectWithContext<Element>>> elementsById = new HashMap<>();
+	// elements of the whole workspace this model was parsed with
+	private C4ElementIndex elementIndex = null;
 
 	private Map<Integer, String> includesToLineNumber = new HashMap<>();
 	private List<ColorInformation> colorInformations = new ArrayList<>();
@@ -110,31 +109,60 @@ public class C4DocumentModel {
 	private List<C4Property> properties = new ArrayList<>();
 
 	private List<DecoratorRange> decorations = new ArrayList<>();
-	private List<C4SemanticToken> tokens = new ArrayList<>();
+	private List<Token> tokens = new ArrayList<>();
+	// encoded once per snapshot
+	private volatile EncodedTokens encodedTokens = null;
 
 	private List<CodeLens> codeLenses = new ArrayList<>();
 
 	private URI uri;
 	private boolean parsedInternally;
 	private C4DocumentModel extendsBy;
-	private String encodedWorkspace = "";
+	// code lenses sent to the client, their commands are resolved one by one
+	private volatile List<CodeLens> unresolvedCodeLenses = null;
+	// version of the snapshot the model was published in, 0 while parsing
+	private long version = 0;
 
 	public void clear() {
 		scopeStack.clear();
 		scopes.clear();
+		scopeIndex = null;
     	viewToLineNumber.clear();
     	elementsToLineNumber.clear();
 		relationShipsToLineNumber.clear();
-		elementsById.clear();
 		decorations.clear();
 		tokens.clear();
+		encodedTokens = null;
 		codeLenses.clear();
 		includesToLineNumber.clear();
 		colorInformations.clear();
 		referencedModels.clear();
 		properties.clear();
-		lines = Collections.emptyList();
-		encodedWorkspace = "";
+		unresolvedCodeLenses = null;
+	}
+
+	// Called once the model is published in a snapshot. Any further attempt to change
+	// the model fails, so providers running in parallel may read it without locking.
+	void freeze(long version) {
+		this.version = version;
+		getRawLines();
+		scopes = Collections.unmodifiableList(scopes);
+		scopeIndex = new C4ScopeIndex(scopes);
+		viewToLineNumber = Collections.unmodifiableMap(viewToLineNumber);
+		elementsToLineNumber = Collections.unmodifiableMap(elementsToLineNumber);
+		relationShipsToLineNumber = Collections.unmodifiableMap(relationShipsToLineNumber);
+		includesToLineNumber = Collections.unmodifiableMap(includesToLineNumber);
+		colorInformations = Collections.unmodifiableList(colorInformations);
+		referencedModels = Collections.unmodifiableList(referencedModels);
+		properties = Collections.unmodifiableList(properties);
+		decorations = Collections.unmodifiableList(decorations);
+		tokens = Collections.unmodifiableList(tokens);
+		encodedTokens = encodeTokens();
+		codeLenses = Collections.unmodifiableList(codeLenses);
+	}
+
+	public long getVersion() {
+		return version;
 	}
 
 	public C4DocumentModel getExtendsBy() {
@@ -160,9 +188,16 @@ public class C4DocumentModel {
 		this.parsedInternally = parsedInternally;
 	}
 
+	// Text of an open document, lines are taken from the line index of its buffer
+	public C4DocumentModel(C4TextBuffer.Text text, String path) {
+		this(text.text(), path, false);
+		this.lines = C4TextBuffer.lines(text.text(), text.lineStarts());
+	}
+
 	public String getRawText() {
 		if(rawText.isEmpty()) {
 			try {
+				rawTextModified = new File(uri).lastModified();
 				rawText = new String(Files.readAllBytes(Paths.get(uri)));
 			} catch (IOException e) {
 			}		
@@ -170,6 +205,16 @@ public class C4DocumentModel {
 		return rawText;
 	}
 
+	// Take over text (and split lines) read from disk by the previous model
+	// of the same file, if the file has not been modified since.
+	void reuseText(C4DocumentModel previous) {
+		if (previous.rawTextModified != 0 && previous.rawTextModified == new File(uri).lastModified()) {
+			rawText = previous.rawText;
+			rawTextModified = previous.rawTextModified;
+			lines = previous.lines;
+		}
+	}
+
 	public Workspace getWorkspace() {		
 		return workspace;
 	}
@@ -255,32 +300,61 @@ public class C4DocumentModel {
 		return properties;
 	}
 
+	// Tokens as they were found, in no particular order
+	public List<Token> getSemanticTokens() {
+		return Collections.unmodifiableList(tokens);
+	}
+
 	public List<Integer> calculateTokens() {
-		List<C4SemanticToken> sorted = tokens.stream().sorted(Comparator.comparing(C4SemanticToken::lineNumber)).toList();
+		return C4SemanticTokenProvider.asList(getEncodedTokens());
+	}
 
-		List<Integer> result = new ArrayList<>();
+	public int[] getEncodedTokens() {
+		return getTokens().data();
+	}
 
-		for (int index = 0; index < sorted.size(); index++) {
-			C4SemanticToken token = sorted.get(index);
-			if (index == 0) {
-				result.add(token.lineNumber());
-				result.add(token.startPos());
+	// Tokens from startLine to endLine (0-based, both included), encoded on their own
+	public List<Integer> calculateTokens(int startLine, int endLine) {
+		EncodedTokens encoded = getTokens();
+		int from = firstTokenAtOrAfter(encoded.lines(), startLine);
+		int to = firstTokenAtOrAfter(encoded.lines(), endLine + 1);
+		if (from >= to) {
+			return Collections.emptyList();
+		}
+		int[] data = Arrays.copyOfRange(encoded.data(), from * 5, to * 5);
+		// first token is relative to the start of the document
+		data[0] = encoded.lines()[from];
+		data[1] = encoded.starts()[from];
+		return C4SemanticTokenProvider.asList(data);
+	}
+
+	private static int firstTokenAtOrAfter(int[] lines, int line) {
+		int low = 0;
+		int high = lines.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (lines[mid] < line) {
+				low = mid + 1;
 			} else {
-				C4SemanticToken predecessor = sorted.get(index - 1);
-				final int deltaLine = token.lineNumber() - predecessor.lineNumber();
-				final int deltaChar = deltaLine == 0 ? token.startPos() - predecessor.startPos()
-						: token.startPos();
-				result.add(deltaLine);
-				result.add(deltaChar);
+				high = mid;
 			}
-			result.add(token.length());
-			result.add(token.tokenType());
-			result.add(token.tokenModifier());
 		}
+		return low;
+	}
 
-		logger.debug("Semantik Tokens at {}", result);
+	private EncodedTokens getTokens() {
+		EncodedTokens encoded = encodedTokens;
+		if (encoded == null) {
+			encoded = encodeTokens();
+			encodedTokens = encoded;
+		}
+		return encoded;
+	}
 
-		return result;
+	private EncodedTokens encodeTokens() {
+		EncodedTokens encoded = C4SemanticTokenProvider.encode(tokens);
+		logger.debug("Semantic tokens of {}: {}", uri, tokens.size());
+		return encoded;
 	}
 
 	public List<String> getIdentifiersWithFilter(Predicate<C4ObjectWithContext<Element>> func) {
@@ -295,21 +369,45 @@ public class C4DocumentModel {
 				.toList();
 	}
 
-    private Optional<C4SemanticToken> createToken(String referenceId, int line) {
+    private Optional<Token> createToken(String referenceId, int line) {
 		List<Entry<Integer, C4ObjectWithContext<Element>>> elements = findElementsById(referenceId);
         if(elements.size() == 1) {
             String identifier = elements.get(0).getValue().getIdentifier();
             if(identifier != null) {
                 final int startPos = C4Utils.getStartPosition(getLineAt(line), identifier);
-                return Optional.of(new C4SemanticToken(line, startPos, identifier.length(), C4SemanticTokenProvider.MODEL_ELEMENT, 0));
+                return Optional.of(new Token(line, startPos, identifier.length(), C4SemanticTokenProvider.MODEL_ELEMENT, 0));
             }
         }
         return Optional.empty();
     }
 
+	// Scopes, tokens (LSP encoded) and elements of an earlier parse of the same text, see C4FileIndex
+	void restore(List<C4CompletionScope> indexedScopes, int[] indexedTokens, Map<Integer, C4ObjectWithContext<Element>> indexedElements) {
+		scopes.addAll(indexedScopes);
+		scopeIndex = null;
+		int line = 0;
+		int start = 0;
+		for (int i = 0; i + 4 < indexedTokens.length; i += 5) {
+			start = indexedTokens[i] == 0 ? start + indexedTokens[i + 1] : indexedTokens[i + 1];
+			line += indexedTokens[i];
+			tokens.add(new Token(line, start, indexedTokens[i + 2], indexedTokens[i + 3], indexedTokens[i + 4]));
+		}
+		encodedTokens = null;
+		elementsToLineNumber.putAll(indexedElements);
+	}
+
+	void setElementIndex(C4ElementIndex elementIndex) {
+		this.elementIndex = elementIndex;
+	}
+
+	// Elements with the given id (line number -> element) anywhere in the workspace.
+	// Models not taking part in a workspace parse only look at themselves and their includes.
 	public List<Entry<Integer, C4ObjectWithContext<Element>>> findElementsById(String id) {
-		Stream<Entry<Integer, C4ObjectWithContext<Element>>> s1 = elementsToLineNumber.entrySet().parallelStream().filter(e -> e.getValue().getObject().getId().equals(id));
-		Stream<Entry<Integer, C4ObjectWithContext<Element>>> s2 = referencedModels.parallelStream().map(e -> e.elementsToLineNumber.entrySet()).flatMap(Collection::stream).filter(e -> e.getValue().getObject().getId().equals(id));
+		if (elementIndex != null) {
+			return elementIndex.get(id).stream().map(e -> Map.entry(e.getLineNumber(), e)).toList();
+		}
+		Stream<Entry<Integer, C4ObjectWithContext<Element>>> s1 = elementsToLineNumber.entrySet().stream().filter(e -> e.getValue().getObject().getId().equals(id));
+		Stream<Entry<Integer, C4ObjectWithContext<Element>>> s2 = referencedModels.stream().map(e -> e.elementsToLineNumber.entrySet()).flatMap(Collection::stream).filter(e -> e.getValue().getObject().getId().equals(id));
 		return Stream.concat(s1, s2).toList();
 	}
 
@@ -340,7 +438,6 @@ public class C4DocumentModel {
 		}
 
 		elementsToLineNumber.put(lineNumber, c4ObjectWithContext);
-		elementsById.computeIfAbsent(c4ObjectWithContext.getObject().getId(), k -> new ArrayList<>()).add(c4ObjectWithContext);
 	}
 
 	public void addView(int lineNumber, C4ObjectWithContext<View> view) {
@@ -382,53 +479,95 @@ public class C4DocumentModel {
 		return referencedModels.stream().filter(r -> r.getUri().endsWith(path)).findFirst().get();
 	}
 
+	// Lenses which need the encoded workspace come without their command, the client
+	// asks for it with codeLens/resolve once the lens is shown. The data of every lens
+	// tells which lens of which version of the model it is.
 	public List<CodeLens> calcCodeLenses() {
-		Workspace currentWorkspace = getWorkspace();
-
-		if (!isValid() || currentWorkspace == null) {
+		if (!isValid() || getWorkspace() == null) {
 			return Collections.emptyList();
 		}
 
-		if(!encodedWorkspace.isEmpty()) {
-			return codeLenses;			
+		List<CodeLens> unresolved = unresolvedCodeLenses;
+		if (unresolved != null) {
+			return unresolved;
 		}
 
+		// lenses collected while parsing are left as they are, the model may be read concurrently
+		List<CodeLens> lenses = new ArrayList<>(codeLenses.size());
+		for (int i = 0; i < codeLenses.size(); i++) {
+			CodeLens cl = codeLenses.get(i);
+			Command command = needsWorkspace(cl.getCommand()) ? null : cl.getCommand();
+			lenses.add(new CodeLens(cl.getRange(), command, codeLensData(i)));
+		}
+		unresolved = Collections.unmodifiableList(lenses);
+		unresolvedCodeLenses = unresolved;
+		return unresolved;
+	}
+
+	// The lens with the given index with its command, null if there is no such lens
+	public CodeLens resolveCodeLens(int index) {
+		Workspace currentWorkspace = getWorkspace();
+		if (!isValid() || currentWorkspace == null || index < 0 || index >= codeLenses.size()) {
+			return null;
+		}
+
+		CodeLens cl = codeLenses.get(index);
+		Command command = cl.getCommand();
+		if (!needsWorkspace(command)) {
+			return new CodeLens(cl.getRange(), command, codeLensData(index));
+		}
 		try {
-			encodedWorkspace = C4Generator.generateEncodedWorkspace(currentWorkspace);
-			codeLenses.forEach(cl -> {
-				Command command = cl.getCommand();
-				CodeLensCommandArgs args = (CodeLensCommandArgs)command.getArguments().get(0);
-				if(command.getCommand().equals("c4.show.diagram")) {
-					String dot = args.diagramAsDot();
-					if(dot == null) {
-						View view = currentWorkspace.getViews().getViewWithKey(args.diagramKey());
-						if (view != null && view instanceof ModelView modelView && modelView.getAutomaticLayout() != null) {
-							dot = C4Utils.export2Dot(modelView);
-						}
+			String encoded = C4Generator.generateEncodedWorkspace(currentWorkspace, version);
+			CodeLensCommandArgs args = (CodeLensCommandArgs)command.getArguments().get(0);
+			if(command.getCommand().equals("c4.show.diagram")) {
+				String dot = args.diagramAsDot();
+				if(dot == null) {
+					View view = currentWorkspace.getViews().getViewWithKey(args.diagramKey());
+					if (view != null && view instanceof ModelView modelView && modelView.getAutomaticLayout() != null) {
+						C4Events.Export event = C4Events.beginExport("dot", modelView.getKey(), getUri());
+						dot = C4Utils.export2Dot(modelView);
+						event.commit();
 					}
-					args = new CodeLensCommandArgs(encodedWorkspace, args.diagramKey(), dot, null, null,null,null);
-					command.setArguments(Arrays.asList(args));
-				} else if(command.getCommand().equals("c4.export.deployment")) {
-					String deploymentEnvironment = args.deploymentEnvironment();
-					args = new CodeLensCommandArgs(encodedWorkspace, null, null, deploymentEnvironment, null,null,null);
-					command.setArguments(Arrays.asList(args));
 				}
-			});
-			return codeLenses;
+				args = new CodeLensCommandArgs(encoded, args.diagramKey(), dot, null, null,null,null);
+			} else {
+				args = new CodeLensCommandArgs(encoded, null, null, args.deploymentEnvironment(), null,null,null);
+			}
+			return new CodeLens(cl.getRange(), new Command(command.getTitle(), command.getCommand(), Arrays.asList(args)), codeLensData(index));
 		} catch (Exception e) {
-			return Collections.emptyList();
+			logger.error("Code lens {} of {} not resolved: {}", index, getUri(), e.getMessage());
+			return null;
 		}
 	}
 
-	public String getSurroundingScope(int lineNumber) {
-		final int adjustedLineNumber = lineNumber + 1;
-		Optional<C4CompletionScope> nearestScope = scopes.parallelStream()
-				.filter(scope -> scope.start() < adjustedLineNumber && (scope.end() > adjustedLineNumber
-						|| scope.end() == C4CompletionScope.SCOPE_NOT_CLOSED))
-				.sorted(Comparator.comparingInt(C4CompletionScope::start).reversed())
-				.findFirst();
+	private static boolean needsWorkspace(Command command) {
+		return command.getCommand().equals("c4.show.diagram") || command.getCommand().equals("c4.export.deployment");
+	}
+
+	private JsonObject codeLensData(int index) {
+		JsonObject data = new JsonObject();
+		data.addProperty("uri", getUri());
+		data.addProperty("version", version);
+		data.addProperty("index", index);
+		return data;
+	}
+
+	private C4ScopeIndex getScopeIndex() {
+		C4ScopeIndex index = scopeIndex;
+		if (index == null) {
+			index = new C4ScopeIndex(List.copyOf(scopes));
+			scopeIndex = index;
+		}
+		return index;
+	}
+
+	public List<C4CompletionScope> getScopes() {
+		return Collections.unmodifiableList(scopes);
+	}
 
-		return nearestScope.map(C4CompletionScope::name).orElse(NO_SCOPE);
+	public String getSurroundingScope(int lineNumber) {
+		C4CompletionScope scope = getScopeIndex().surrounding(lineNumber + 1);
+		return scope != null ? scope.name() : NO_SCOPE;
 	}
 
 	public void openScope(int lineNumber, int contextId, String contextName) {
@@ -445,6 +584,7 @@ public class C4DocumentModel {
 			} else {
 				scope = new C4CompletionScope(scope.id(), scope.name(), scope.start(), lineNumber, scope.depth());
 				scopes.add(scope);
+				scopeIndex = null;
 				Custom.getInstance().closeScope(scope, this);
 			}
 		} else {
@@ -457,20 +597,27 @@ public class C4DocumentModel {
 	}
 	
 	public Optional<C4CompletionScope> getNearestScope(int lineNumber) {
-		final int adjustedLineNumber = lineNumber + 1;
+		return Optional.ofNullable(getScopeIndex().nearest(lineNumber + 1));
+	}
 
-		return scopes.stream()
-				.filter(scope -> !scope.name().equals("CommentDslContext"))
-				.filter(scope -> scope.start() <= adjustedLineNumber
-						&& (scope.end() >= adjustedLineNumber
-								|| scope.end() == C4CompletionScope.SCOPE_NOT_CLOSED))
-				.sorted(Comparator.comparingInt(C4CompletionScope::start).reversed())
-				.findFirst();
+	// Rough estimate of the heap retained by the model itself, its workspace not included:
+	// text, line index, tokens and the objects parsed from every line
+	long estimateSize() {
+		long size = 256 + 2L * rawText.length() + 4L * lines.size();
+		size += 48L * scopes.size() + 64L * tokens.size();
+		EncodedTokens encoded = encodedTokens;
+		if (encoded != null) {
+			size += 4L * (encoded.data().length + encoded.lines().length + encoded.starts().length);
+		}
+		size += 160L * (viewToLineNumber.size() + elementsToLineNumber.size() + relationShipsToLineNumber.size());
+		size += 96L * (includesToLineNumber.size() + colorInformations.size() + properties.size() + decorations.size() + codeLenses.size());
+		return size;
 	}
 
 	public List<String> getRawLines() {
 		if(lines.isEmpty()) {
-			lines = getRawText().lines().toList();
+			String text = getRawText();
+			lines = C4TextBuffer.lines(text, C4TextBuffer.lineStarts(text));
 		}
 		return lines;
 	}
@@ -0,0 +1,55 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.Element;
+
+/**
+ * Result of a successful parse as seen by the providers. A snapshot and the
+ * models it holds are never modified after publishing, a new parse publishes
+ * a new snapshot with a higher version. Workspaces and their elements are kept
+ * per workspace root, parses of different roots do not replace each other's.
+ */
+public record C4DocumentSnapshot(
+		long version,
+		Map<String, C4DocumentModel> models,
+		Map<String, Workspace> workspaces,
+		Map<String, Set<C4ObjectWithContext<Element>>> elements) {
+
+	public static final C4DocumentSnapshot EMPTY = new C4DocumentSnapshot(0, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+	// Elements of the last parse of the root, for completion
+	public Set<C4ObjectWithContext<Element>> getElements(String root) {
+		return elements.getOrDefault(root, Collections.emptySet());
+	}
+
+	public Workspace getWorkspace(String root) {
+		return workspaces.get(root);
+	}
+
+	// Model of the file, an empty (invalid) model if the file has not been parsed yet
+	public C4DocumentModel getDocument(String path) {
+		C4DocumentModel model = models.get(path);
+		return model != null ? model : new C4DocumentModel(path, true);
+	}
+
+}
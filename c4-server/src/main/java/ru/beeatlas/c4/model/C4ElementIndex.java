@@ -0,0 +1,49 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.structurizr.model.Element;
+
+/**
+ * Element id to element locations of one parsed workspace, shared by all
+ * models (files) taking part in the parse. Element ids are only unique
+ * within a workspace, so every parse starts with a new index.
+ */
+public class C4ElementIndex {
+
+	private final Map<String, List<C4ObjectWithContext<Element>>> elementsById = new HashMap<>();
+
+	// Called from the parser thread only, before the models are published
+	void add(C4ObjectWithContext<Element> element) {
+		elementsById.computeIfAbsent(element.getObject().getId(), k -> new ArrayList<>(1)).add(element);
+	}
+
+	public List<C4ObjectWithContext<Element>> get(String id) {
+		return elementsById.getOrDefault(id, Collections.emptyList());
+	}
+
+	public int size() {
+		return elementsById.size();
+	}
+
+}
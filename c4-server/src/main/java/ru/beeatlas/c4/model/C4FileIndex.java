@@ -0,0 +1,181 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.DeploymentNode;
+import com.structurizr.model.Element;
+import com.structurizr.model.Model;
+import com.structurizr.model.SoftwareSystem;
+
+import ru.beeatlas.c4.model.C4DocumentModel.C4CompletionScope;
+
+/**
+ * What completion and semantic highlighting need from a parsed file: scopes,
+ * encoded tokens and the elements declared in the file with their identifiers.
+ * Stored on disk by C4IndexStore together with the fingerprint of the text it
+ * was built from, so a file can be served right after opening while it is parsed.
+ */
+public record C4FileIndex(String fingerprint, List<C4CompletionScope> scopes, int[] tokens, List<C4IndexedElement> elements) {
+
+	private static final Logger logger = LoggerFactory.getLogger(C4FileIndex.class);
+
+	private static final int MAGIC = 0x43344958; // C4IX
+	private static final int FORMAT = 1;
+
+	// type is the simple class name of the structurizr element
+	public record C4IndexedElement(int line, String identifier, String type, String name) {
+	}
+
+	public static String fingerprint(String content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static C4FileIndex of(C4DocumentModel model, String fingerprint) {
+		List<C4IndexedElement> elements = new ArrayList<>();
+		for (Entry<Integer, C4ObjectWithContext<Element>> entry : model.getAllElements()) {
+			Element element = entry.getValue().getObject();
+			elements.add(new C4IndexedElement(entry.getKey(), entry.getValue().getIdentifier(),
+					element.getClass().getSimpleName(), element.getName()));
+		}
+		return new C4FileIndex(fingerprint, List.copyOf(model.getScopes()), model.getEncodedTokens(), elements);
+	}
+
+	// Model serving completion and semantic tokens until the file is parsed. Elements are
+	// recreated in a scratch workspace, only their type, name and identifier are meaningful.
+	C4DocumentModel toModel(C4TextBuffer.Text text, String path) {
+		C4DocumentModel model = new C4DocumentModel(text, path);
+		Model scratch = new Workspace("index", "").getModel();
+		Map<Integer, C4ObjectWithContext<Element>> restored = new HashMap<>();
+		int count = 0;
+		for (C4IndexedElement indexed : elements) {
+			try {
+				Element element = createElement(scratch, indexed, count++);
+				if (element != null) {
+					String line = model.getLineAt(indexed.line() - 1);
+					restored.put(indexed.line(), new C4ObjectWithContext<>(indexed.identifier(), indexed.line(), line, element, model));
+				}
+			} catch (RuntimeException e) {
+				logger.debug("Indexed element {} skipped: {}", indexed.identifier(), e.getMessage());
+			}
+		}
+		model.restore(scopes, tokens, restored);
+		model.setValid(true);
+		return model;
+	}
+
+	// Nested elements get parents of their own, names only have to be unique among siblings
+	private static Element createElement(Model scratch, C4IndexedElement indexed, int count) {
+		String parentName = "#" + count;
+		return switch (indexed.type()) {
+			case "Person" -> scratch.addPerson(indexed.name());
+			case "SoftwareSystem" -> scratch.addSoftwareSystem(indexed.name());
+			case "Container" -> scratch.addSoftwareSystem(parentName).addContainer(indexed.name());
+			case "Component" -> scratch.addSoftwareSystem(parentName).addContainer(parentName).addComponent(indexed.name());
+			case "CustomElement" -> scratch.addCustomElement(indexed.name());
+			case "DeploymentNode" -> scratch.addDeploymentNode(indexed.name());
+			case "InfrastructureNode" -> scratch.addDeploymentNode(parentName).addInfrastructureNode(indexed.name());
+			case "SoftwareSystemInstance" -> scratch.addDeploymentNode(parentName).add(scratch.addSoftwareSystem(parentName));
+			case "ContainerInstance" -> {
+				DeploymentNode node = scratch.addDeploymentNode(parentName);
+				SoftwareSystem system = scratch.addSoftwareSystem(parentName);
+				yield node.add(system.addContainer(indexed.name()));
+			}
+			default -> null;
+		};
+	}
+
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT);
+		out.writeUTF(fingerprint);
+		out.writeInt(scopes.size());
+		for (C4CompletionScope scope : scopes) {
+			out.writeInt(scope.id());
+			out.writeUTF(scope.name());
+			out.writeInt(scope.start());
+			out.writeInt(scope.end());
+			out.writeInt(scope.depth());
+		}
+		out.writeInt(tokens.length);
+		for (int value : tokens) {
+			out.writeInt(value);
+		}
+		out.writeInt(elements.size());
+		for (C4IndexedElement element : elements) {
+			out.writeInt(element.line());
+			writeNullable(out, element.identifier());
+			out.writeUTF(element.type());
+			writeNullable(out, element.name());
+		}
+	}
+
+	static C4FileIndex read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+			throw new IOException("Unknown index format");
+		}
+		String fingerprint = in.readUTF();
+		int scopeCount = in.readInt();
+		List<C4CompletionScope> scopes = new ArrayList<>(scopeCount);
+		for (int i = 0; i < scopeCount; i++) {
+			scopes.add(new C4CompletionScope(in.readInt(), in.readUTF(), in.readInt(), in.readInt(), in.readInt()));
+		}
+		int[] tokens = new int[in.readInt()];
+		for (int i = 0; i < tokens.length; i++) {
+			tokens[i] = in.readInt();
+		}
+		int elementCount = in.readInt();
+		List<C4IndexedElement> elements = new ArrayList<>(elementCount);
+		for (int i = 0; i < elementCount; i++) {
+			elements.add(new C4IndexedElement(in.readInt(), readNullable(in), in.readUTF(), readNullable(in)));
+		}
+		return new C4FileIndex(fingerprint, scopes, tokens, elements);
+	}
+
+	private static void writeNullable(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+}
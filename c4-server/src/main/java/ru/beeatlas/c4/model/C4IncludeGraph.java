@@ -0,0 +1,123 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependency graph of DSL files, built from the !include and extends edges
+ * reported by the parser. Used to find the workspace roots that have to be
+ * reparsed when a single file changes.
+ */
+public class C4IncludeGraph {
+
+	// parent file -> files it includes (or extends)
+	private final Map<String, Set<String>> includes = new HashMap<>();
+	// included file -> files including it
+	private final Map<String, Set<String>> includedBy = new HashMap<>();
+	// files which were parsed as top level documents
+	private final Set<String> roots = new HashSet<>();
+
+	public synchronized void addRoot(String root) {
+		roots.add(root);
+	}
+
+	public synchronized boolean isRoot(String file) {
+		return roots.contains(file);
+	}
+
+	// Forget outgoing edges of a file which is about to be parsed again,
+	// they are reported anew while the file is parsed.
+	public synchronized void startFile(String file) {
+		Set<String> children = includes.remove(file);
+		if (children != null) {
+			children.forEach(child -> {
+				Set<String> parents = includedBy.get(child);
+				if (parents != null) {
+					parents.remove(file);
+					if (parents.isEmpty()) {
+						includedBy.remove(child);
+					}
+				}
+			});
+		}
+	}
+
+	public synchronized void addEdge(String parent, String child) {
+		if (parent.equals(child)) {
+			return;
+		}
+		includes.computeIfAbsent(parent, k -> new LinkedHashSet<>()).add(child);
+		includedBy.computeIfAbsent(child, k -> new LinkedHashSet<>()).add(parent);
+	}
+
+	public synchronized Set<String> getIncludes(String file) {
+		return Set.copyOf(includes.getOrDefault(file, Collections.emptySet()));
+	}
+
+	public synchronized boolean isIncluded(String file) {
+		return includedBy.containsKey(file);
+	}
+
+	// Workspace roots (directly or transitively) depending on the given file.
+	// Returns an empty set if the file is not part of any known include tree.
+	public synchronized Set<String> findRoots(String file) {
+		Set<String> result = new LinkedHashSet<>();
+		Set<String> visited = new HashSet<>();
+		Deque<String> queue = new ArrayDeque<>();
+		queue.add(file);
+		while (!queue.isEmpty()) {
+			String current = queue.poll();
+			if (!visited.add(current)) {
+				continue;
+			}
+			Set<String> parents = includedBy.getOrDefault(current, Collections.emptySet());
+			if (!current.equals(file) && (roots.contains(current) || parents.isEmpty())) {
+				result.add(current);
+			}
+			queue.addAll(parents);
+		}
+		return result;
+	}
+
+	// All files (root included) the given root depends on.
+	public synchronized Set<String> closure(String root) {
+		Set<String> visited = new LinkedHashSet<>();
+		Deque<String> queue = new ArrayDeque<>();
+		queue.add(root);
+		while (!queue.isEmpty()) {
+			String current = queue.poll();
+			if (visited.add(current)) {
+				queue.addAll(includes.getOrDefault(current, Collections.emptySet()));
+			}
+		}
+		return visited;
+	}
+
+	public synchronized void remove(String file) {
+		startFile(file);
+		roots.remove(file);
+	}
+
+}
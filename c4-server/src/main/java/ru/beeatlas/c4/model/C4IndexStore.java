@@ -0,0 +1,127 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Directory of C4FileIndex files, one per source file, named after the
+ * fingerprint of the file path. Indexes are written on a background thread
+ * after every successful parse, reading one is a single small file access.
+ * The directory is kept in the user cache, never in the workspace folder.
+ */
+public class C4IndexStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(C4IndexStore.class);
+
+	// Index directory of a workspace folder: $XDG_CACHE_HOME/c4-dsl/index, ~/.cache/c4-dsl/index
+	// if not set, with a subdirectory named after the fingerprint of the folder path
+	public static File cacheDirectory(File workspaceFolder) {
+		String cacheHome = System.getenv("XDG_CACHE_HOME");
+		File cache = cacheHome != null && !cacheHome.isBlank() ? new File(cacheHome)
+				: new File(System.getProperty("user.home"), ".cache");
+		String folder = C4FileIndex.fingerprint(workspaceFolder.getAbsolutePath()).substring(0, 32);
+		return new File(cache, "c4-dsl" + File.separator + "index" + File.separator + folder);
+	}
+
+	private final File directory;
+	// path -> fingerprint of the last index written, unchanged files are not written again
+	private final Map<String, String> written = new ConcurrentHashMap<>();
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "c4-index-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public C4IndexStore(File directory) {
+		this.directory = directory;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	private File indexFile(String path) {
+		return new File(directory, C4FileIndex.fingerprint(path).substring(0, 32) + ".idx");
+	}
+
+	// Index of the file if it was built from text with the given fingerprint, null otherwise
+	public C4FileIndex read(String path, String fingerprint) {
+		File file = indexFile(path);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+			C4FileIndex index = C4FileIndex.read(in);
+			return index.fingerprint().equals(fingerprint) ? index : null;
+		} catch (IOException e) {
+			logger.debug("Index of {} not readable: {}", path, e.getMessage());
+			return null;
+		}
+	}
+
+	void write(String path, C4FileIndex index) throws IOException {
+		Files.createDirectories(directory.toPath());
+		Path target = indexFile(path).toPath();
+		Path temp = Files.createTempFile(directory.toPath(), "index", ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			index.write(out);
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Committed (frozen) models only, they are read on the writer thread
+	void writeAsync(Collection<C4DocumentModel> models) {
+		writer.execute(() -> models.stream().filter(C4DocumentModel::isValid).forEach(model -> {
+			String path = new File(URI.create(model.getUri())).getAbsolutePath();
+			try {
+				String fingerprint = C4FileIndex.fingerprint(model.getRawText());
+				if (!fingerprint.equals(written.get(path))) {
+					write(path, C4FileIndex.of(model, fingerprint));
+					written.put(path, fingerprint);
+				}
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Index of {} not written: {}", path, e.getMessage());
+			}
+		}));
+	}
+
+	// Completes once all indexes scheduled so far are written
+	public CompletableFuture<Void> flush() {
+		return CompletableFuture.runAsync(() -> {
+		}, writer);
+	}
+
+}
@@ -0,0 +1,466 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.structurizr.model.DeploymentElement;
+import com.structurizr.model.Element;
+import com.structurizr.model.Relationship;
+import com.structurizr.model.StaticStructureElementInstance;
+import com.structurizr.view.Dimensions;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.PaperSize;
+import com.structurizr.view.RelationshipView;
+import com.structurizr.view.Routing;
+import com.structurizr.view.Vertex;
+import com.structurizr.view.View;
+import com.structurizr.view.ViewSet;
+
+/**
+ * Layout information of a workspace.json: element positions, relationship vertices,
+ * routing and the paper size of every view, read in one streaming pass without
+ * building the workspace. Elements are matched by type, environment and the names
+ * of the element and its parents, so layouts survive changes of generated ids.
+ */
+public class C4LayoutTable {
+
+	private static final Set<String> VIEW_TYPES = Set.of("systemLandscapeViews", "systemContextViews", "containerViews",
+			"componentViews", "dynamicViews", "deploymentViews", "customViews");
+
+	// vertices are x, y pairs
+	private record RelationshipLayout(String id, String order, int[] vertices, String routing, Integer position) {
+	}
+
+	private record ViewLayout(String paperSize, int width, int height, Map<String, int[]> elements,
+			Map<String, RelationshipLayout> relationships) {
+	}
+
+	// element of the model section, as far as needed for its key
+	private record ModelElement(String type, String name, String parentId, String environment, String elementId, int instanceId) {
+	}
+
+	private record ModelRelationship(String sourceId, String destinationId, String description) {
+	}
+
+	// element view and relationship view as read, ids are resolved to keys once the model is known
+	private record RawView(String key, String paperSize, int width, int height, Map<String, int[]> elements,
+			List<RelationshipLayout> relationships) {
+	}
+
+	// view key -> layout
+	private final Map<String, ViewLayout> views;
+
+	private C4LayoutTable(Map<String, ViewLayout> views) {
+		this.views = views;
+	}
+
+	public int getViewCount() {
+		return views.size();
+	}
+
+	public static C4LayoutTable read(File file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			return read(reader);
+		}
+	}
+
+	public static C4LayoutTable read(Reader reader) throws IOException {
+		Map<String, ModelElement> elements = new HashMap<>();
+		Map<String, ModelRelationship> relationships = new HashMap<>();
+		List<RawView> rawViews = new ArrayList<>();
+		try (JsonReader in = new JsonReader(reader)) {
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "model" -> readModel(in, elements, relationships);
+					case "views" -> readViews(in, rawViews);
+					default -> in.skipValue();
+				}
+			}
+			in.endObject();
+		}
+		// the model and the views may come in any order, so keys are resolved at the end
+		Map<String, String> keys = new HashMap<>();
+		Map<String, ViewLayout> views = new HashMap<>();
+		for (RawView raw : rawViews) {
+			Map<String, int[]> elementLayouts = new HashMap<>();
+			raw.elements().forEach((id, position) -> {
+				String key = key(id, elements, keys);
+				if (key != null) {
+					elementLayouts.put(key, position);
+				}
+			});
+			Map<String, RelationshipLayout> relationshipLayouts = new HashMap<>();
+			for (RelationshipLayout layout : raw.relationships()) {
+				ModelRelationship relationship = relationships.get(layout.id());
+				if (relationship != null) {
+					String source = key(relationship.sourceId(), elements, keys);
+					String destination = key(relationship.destinationId(), elements, keys);
+					relationshipLayouts.putIfAbsent(relationshipKey(source, destination, relationship.description(), layout.order()), layout);
+				}
+				relationshipLayouts.putIfAbsent(layout.id(), layout);
+			}
+			views.put(raw.key(), new ViewLayout(raw.paperSize(), raw.width(), raw.height(), elementLayouts, relationshipLayouts));
+		}
+		return new C4LayoutTable(views);
+	}
+
+	private static void readModel(JsonReader in, Map<String, ModelElement> elements, Map<String, ModelRelationship> relationships) throws IOException {
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+				case "people" -> readElements(in, "Person", elements, relationships);
+				case "softwareSystems" -> readElements(in, "SoftwareSystem", elements, relationships);
+				case "customElements" -> readElements(in, "CustomElement", elements, relationships);
+				case "deploymentNodes" -> readElements(in, "DeploymentNode", elements, relationships);
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+	}
+
+	// Elements are added without parent, the parent sets itself once its id is read
+	private static void readElements(JsonReader in, String type, Map<String, ModelElement> elements,
+			Map<String, ModelRelationship> relationships) throws IOException {
+		in.beginArray();
+		while (in.hasNext()) {
+			readElement(in, type, elements, relationships);
+		}
+		in.endArray();
+	}
+
+	private static void readElement(JsonReader in, String type, Map<String, ModelElement> elements,
+			Map<String, ModelRelationship> relationships) throws IOException {
+		String id = null;
+		String name = null;
+		String environment = null;
+		String elementId = null;
+		int instanceId = 0;
+		// nested elements may come before the id of this one
+		Map<String, ModelElement> children = new HashMap<>();
+		in.beginObject();
+		while (in.hasNext()) {
+			String field = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.skipValue();
+				continue;
+			}
+			switch (field) {
+				case "id" -> id = in.nextString();
+				case "name" -> name = in.nextString();
+				case "environment" -> environment = in.nextString();
+				case "softwareSystemId", "containerId" -> elementId = in.nextString();
+				case "instanceId" -> instanceId = in.nextInt();
+				case "relationships" -> readRelationships(in, relationships);
+				case "containers" -> readElements(in, "Container", children, relationships);
+				case "components" -> readElements(in, "Component", children, relationships);
+				case "children" -> readElements(in, "DeploymentNode", children, relationships);
+				case "infrastructureNodes" -> readElements(in, "InfrastructureNode", children, relationships);
+				case "softwareSystemInstances" -> readElements(in, "SoftwareSystemInstance", children, relationships);
+				case "containerInstances" -> readElements(in, "ContainerInstance", children, relationships);
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+		if (id == null) {
+			return;
+		}
+		elements.put(id, new ModelElement(type, name, null, environment, elementId, instanceId));
+		for (Map.Entry<String, ModelElement> child : children.entrySet()) {
+			ModelElement element = child.getValue();
+			elements.put(child.getKey(), element.parentId() != null ? element : new ModelElement(element.type(), element.name(),
+					id, element.environment(), element.elementId(), element.instanceId()));
+		}
+	}
+
+	private static void readRelationships(JsonReader in, Map<String, ModelRelationship> relationships) throws IOException {
+		in.beginArray();
+		while (in.hasNext()) {
+			String id = null;
+			String sourceId = null;
+			String destinationId = null;
+			String description = "";
+			in.beginObject();
+			while (in.hasNext()) {
+				String field = in.nextName();
+				if (in.peek() == JsonToken.NULL) {
+					in.skipValue();
+					continue;
+				}
+				switch (field) {
+					case "id" -> id = in.nextString();
+					case "sourceId" -> sourceId = in.nextString();
+					case "destinationId" -> destinationId = in.nextString();
+					case "description" -> description = in.nextString();
+					default -> in.skipValue();
+				}
+			}
+			in.endObject();
+			if (id != null) {
+				relationships.put(id, new ModelRelationship(sourceId, destinationId, description));
+			}
+		}
+		in.endArray();
+	}
+
+	private static void readViews(JsonReader in, List<RawView> rawViews) throws IOException {
+		in.beginObject();
+		while (in.hasNext()) {
+			if (!VIEW_TYPES.contains(in.nextName()) || in.peek() != JsonToken.BEGIN_ARRAY) {
+				in.skipValue();
+				continue;
+			}
+			in.beginArray();
+			while (in.hasNext()) {
+				RawView view = readView(in);
+				if (view.key() != null) {
+					rawViews.add(view);
+				}
+			}
+			in.endArray();
+		}
+		in.endObject();
+	}
+
+	private static RawView readView(JsonReader in) throws IOException {
+		String key = null;
+		String paperSize = null;
+		int[] dimensions = { 0, 0 };
+		Map<String, int[]> elements = new HashMap<>();
+		List<RelationshipLayout> relationships = new ArrayList<>();
+		in.beginObject();
+		while (in.hasNext()) {
+			String field = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.skipValue();
+				continue;
+			}
+			switch (field) {
+				case "key" -> key = in.nextString();
+				case "paperSize" -> paperSize = in.nextString();
+				case "dimensions" -> dimensions = readPoint(in, "width", "height");
+				case "elements" -> {
+					in.beginArray();
+					while (in.hasNext()) {
+						readElementView(in, elements);
+					}
+					in.endArray();
+				}
+				case "relationships" -> {
+					in.beginArray();
+					while (in.hasNext()) {
+						RelationshipLayout relationship = readRelationshipView(in);
+						if (relationship.id() != null) {
+							relationships.add(relationship);
+						}
+					}
+					in.endArray();
+				}
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+		return new RawView(key, paperSize, dimensions[0], dimensions[1], elements, relationships);
+	}
+
+	private static void readElementView(JsonReader in, Map<String, int[]> elements) throws IOException {
+		String id = null;
+		int x = 0;
+		int y = 0;
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+				case "id" -> id = in.nextString();
+				case "x" -> x = in.nextInt();
+				case "y" -> y = in.nextInt();
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+		if (id != null) {
+			elements.put(id, new int[] { x, y });
+		}
+	}
+
+	private static RelationshipLayout readRelationshipView(JsonReader in) throws IOException {
+		String id = null;
+		String order = null;
+		int[] vertices = new int[0];
+		String routing = null;
+		Integer position = null;
+		in.beginObject();
+		while (in.hasNext()) {
+			String field = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.skipValue();
+				continue;
+			}
+			switch (field) {
+				case "id" -> id = in.nextString();
+				case "order" -> order = in.nextString();
+				case "routing" -> routing = in.nextString();
+				case "position" -> position = in.nextInt();
+				case "vertices" -> {
+					List<int[]> points = new ArrayList<>();
+					in.beginArray();
+					while (in.hasNext()) {
+						points.add(readPoint(in, "x", "y"));
+					}
+					in.endArray();
+					vertices = new int[points.size() * 2];
+					for (int i = 0; i < points.size(); i++) {
+						vertices[i * 2] = points.get(i)[0];
+						vertices[i * 2 + 1] = points.get(i)[1];
+					}
+				}
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+		return new RelationshipLayout(id, order, vertices, routing, position);
+	}
+
+	private static int[] readPoint(JsonReader in, String first, String second) throws IOException {
+		int[] point = { 0, 0 };
+		in.beginObject();
+		while (in.hasNext()) {
+			String field = in.nextName();
+			if (field.equals(first)) {
+				point[0] = in.nextInt();
+			} else if (field.equals(second)) {
+				point[1] = in.nextInt();
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return point;
+	}
+
+	private static String key(String id, Map<String, ModelElement> elements, Map<String, String> keys) {
+		if (id == null) {
+			return null;
+		}
+		String cached = keys.get(id);
+		if (cached != null) {
+			return cached;
+		}
+		ModelElement element = elements.get(id);
+		if (element == null) {
+			return null;
+		}
+		String parent = element.parentId() != null ? key(element.parentId(), elements, keys) : "";
+		String name = element.elementId() != null
+				? key(element.elementId(), elements, keys) + "[" + element.instanceId() + "]"
+				: element.name();
+		String key = key(element.type(), element.environment(), parent, name);
+		keys.put(id, key);
+		return key;
+	}
+
+	private static String key(String type, String environment, String parent, String name) {
+		return type + "|" + (environment != null ? environment : "") + "|" + parent + "/" + name;
+	}
+
+	// Same key as read from the json for an element of a parsed workspace
+	static String key(Element element) {
+		if (element == null) {
+			return null;
+		}
+		String parent = element.getParent() != null ? key(element.getParent()) : "";
+		String environment = element instanceof DeploymentElement deploymentElement ? deploymentElement.getEnvironment() : null;
+		String name = element instanceof StaticStructureElementInstance instance
+				? key(instance.getElement()) + "[" + instance.getInstanceId() + "]"
+				: element.getName();
+		return key(element.getClass().getSimpleName(), environment, parent, name);
+	}
+
+	private static String relationshipKey(String source, String destination, String description, String order) {
+		return source + "->" + destination + "|" + description + "|" + (order != null ? order : "");
+	}
+
+	// Copy the layouts to the views of a parsed workspace, like ViewSet.copyLayoutInformationFrom
+	public void apply(ViewSet viewSet) {
+		for (View view : viewSet.getViews()) {
+			if (!(view instanceof ModelView modelView)) {
+				continue;
+			}
+			ViewLayout layout = views.get(view.getKey());
+			if (layout == null) {
+				continue;
+			}
+			if (modelView.getPaperSize() == null && layout.paperSize() != null) {
+				try {
+					modelView.setPaperSize(PaperSize.valueOf(layout.paperSize()));
+				} catch (IllegalArgumentException e) {
+				}
+			}
+			if (modelView.getDimensions() == null && layout.width() > 0 && layout.height() > 0) {
+				modelView.setDimensions(new Dimensions(layout.width(), layout.height()));
+			}
+			for (ElementView elementView : modelView.getElements()) {
+				int[] position = layout.elements().get(key(elementView.getElement()));
+				if (position != null) {
+					elementView.setX(position[0]);
+					elementView.setY(position[1]);
+				}
+			}
+			for (RelationshipView relationshipView : modelView.getRelationships()) {
+				Relationship relationship = relationshipView.getRelationship();
+				String description = relationship.getDescription() != null ? relationship.getDescription() : "";
+				RelationshipLayout relationshipLayout = layout.relationships().get(relationshipKey(key(relationship.getSource()),
+						key(relationship.getDestination()), description, relationshipView.getOrder()));
+				if (relationshipLayout == null) {
+					relationshipLayout = layout.relationships().get(relationship.getId());
+				}
+				if (relationshipLayout != null) {
+					apply(relationshipView, relationshipLayout);
+				}
+			}
+		}
+	}
+
+	private static void apply(RelationshipView relationshipView, RelationshipLayout layout) {
+		List<Vertex> vertices = new ArrayList<>(layout.vertices().length / 2);
+		for (int i = 0; i + 1 < layout.vertices().length; i += 2) {
+			vertices.add(new Vertex(layout.vertices()[i], layout.vertices()[i + 1]));
+		}
+		relationshipView.setVertices(vertices);
+		if (layout.routing() != null) {
+			try {
+				relationshipView.setRouting(Routing.valueOf(layout.routing()));
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		relationshipView.setPosition(layout.position());
+	}
+
+}
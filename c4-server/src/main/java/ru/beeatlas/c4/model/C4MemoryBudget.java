@@ -0,0 +1,110 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.structurizr.Workspace;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.View;
+
+/**
+ * Memory budget of the parsed models. Sizes are estimated from the text, tokens and
+ * parsed objects of a model, the workspace of a root is counted once with the root.
+ * Workspace roots are kept in the order they were last used, C4DocumentManager
+ * evicts the least recently used ones without open documents once over budget.
+ */
+public class C4MemoryBudget {
+
+	public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+	// estimated bytes retained by the model of path, parsed with root
+	public record ModelSize(String path, String root, long bytes, boolean open) {
+	}
+
+	private volatile long budget = DEFAULT_BUDGET;
+	// workspace root -> last use, least recently used first
+	private final Map<String, Long> roots = new LinkedHashMap<>(16, 0.75f, true);
+	private final Set<String> openFiles = ConcurrentHashMap.newKeySet();
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public void setBudget(long budget) {
+		this.budget = Math.max(0, budget);
+	}
+
+	public synchronized void touch(String root) {
+		roots.put(root, System.nanoTime());
+	}
+
+	synchronized void forget(String root) {
+		roots.remove(root);
+		evictedCount.incrementAndGet();
+	}
+
+	// Least recently used first
+	synchronized List<String> getRoots() {
+		return new ArrayList<>(roots.keySet());
+	}
+
+	public void opened(String path) {
+		openFiles.add(path);
+	}
+
+	public void closed(String path) {
+		openFiles.remove(path);
+	}
+
+	public boolean isOpen(String path) {
+		return openFiles.contains(path);
+	}
+
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	// Included models share the workspace of their root, it is counted with the root only
+	static long estimate(C4DocumentModel model, boolean root) {
+		return model.estimateSize() + (root ? estimate(model.getWorkspace()) : 0);
+	}
+
+	private static long estimate(Workspace workspace) {
+		if (workspace == null) {
+			return 0;
+		}
+		long size = 4096;
+		size += 512L * workspace.getModel().getElements().size();
+		size += 384L * workspace.getModel().getRelationships().size();
+		for (View view : workspace.getViews().getViews()) {
+			size += 512;
+			if (view instanceof ModelView modelView) {
+				size += 64L * modelView.getElements().size() + 96L * modelView.getRelationships().size();
+			}
+		}
+		return size;
+	}
+
+}
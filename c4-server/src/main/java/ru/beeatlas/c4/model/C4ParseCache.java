@@ -0,0 +1,190 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.Element;
+
+/**
+ * Results of recent parses, least recently used first out. An entry is found by
+ * the SHA-256 fingerprint of the edited text and the text of its workspace root,
+ * and is only valid while the files included by that parse are unchanged on disk.
+ * Undo, redo or switching back to an earlier state is served without parsing.
+ */
+public class C4ParseCache {
+
+	public static final int DEFAULT_SIZE = 8;
+
+	// root: the file parsed, includes: edges (file -> included files) of every file taking
+	// part in the parse, files: those read from disk by the parser, filesFingerprint: their fingerprint
+	public record Entry(
+			PublishDiagnosticsParams diagnostics,
+			String root,
+			Map<String, C4DocumentModel> models,
+			Set<C4ObjectWithContext<Element>> elements,
+			Workspace workspace,
+			Map<String, Set<String>> includes,
+			Set<String> files,
+			String filesFingerprint) {
+	}
+
+	private record FileDigest(long modified, long length, String digest) {
+	}
+
+	private final int size;
+	private final Map<String, Entry> entries;
+	// path -> digest of the file on disk, computed again once the file is modified
+	private final Map<String, FileDigest> fileDigests = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public C4ParseCache(int size) {
+		this.size = size;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > C4ParseCache.this.size;
+			}
+		};
+	}
+
+	// Fingerprint of the edited file and the workspace it is parsed with (null if the
+	// file is parsed on its own), the included files are checked per entry.
+	public static String key(String file, String content, String root, String rootContent) {
+		MessageDigest digest = sha256();
+		update(digest, file);
+		update(digest, content);
+		if (root != null) {
+			update(digest, root);
+			update(digest, rootContent != null ? rootContent : "");
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	public synchronized Entry get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && !entry.filesFingerprint().equals(fingerprint(entry.files()))) {
+			// an included file was changed on disk
+			entries.remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return entry;
+	}
+
+	public synchronized void put(String key, Entry entry) {
+		entries.put(key, entry);
+	}
+
+	// Drop the entries holding a model of one of the files
+	public synchronized void evict(Collection<String> files) {
+		entries.values().removeIf(entry -> files.stream().anyMatch(entry.models()::containsKey));
+	}
+
+	public synchronized void remove(Entry entry) {
+		entries.values().removeIf(cached -> cached == entry);
+	}
+
+	// Least recently used first
+	public synchronized List<Entry> entries() {
+		return new ArrayList<>(entries.values());
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		fileDigests.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	// Fingerprint of the files as they are on disk, in path order
+	public String fingerprint(Collection<String> files) {
+		MessageDigest digest = sha256();
+		for (String file : new TreeSet<>(files)) {
+			update(digest, file);
+			update(digest, fileDigest(file));
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private String fileDigest(String path) {
+		File file = new File(path);
+		long modified = file.lastModified();
+		long length = file.length();
+		FileDigest cached = fileDigests.get(path);
+		if (cached != null && cached.modified() == modified && cached.length() == length) {
+			return cached.digest();
+		}
+		String digest;
+		try {
+			digest = HexFormat.of().formatHex(sha256().digest(Files.readAllBytes(file.toPath())));
+		} catch (IOException e) {
+			digest = "";
+		}
+		fileDigests.put(path, new FileDigest(modified, length, digest));
+		return digest;
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		// length prefix, so that ("ab", "c") and ("a", "bc") differ
+		digest.update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length });
+		digest.update(bytes);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
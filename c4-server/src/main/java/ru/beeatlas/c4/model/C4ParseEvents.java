@@ -0,0 +1,147 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.structurizr.dsl.DslPackage.Line;
+import com.structurizr.model.Element;
+import com.structurizr.model.Relationship;
+import com.structurizr.view.View;
+
+import ru.beeatlas.c4.model.C4ParseSession.ParseContext;
+
+/**
+ * Callbacks of the parser recorded during one parse and applied to the models once the
+ * parser is done. Recording keeps the kind of the event, the file and the line index it
+ * happened on and the parsed objects in flat arrays, the lines, scopes, tokens and
+ * decorations of the models are built in one pass afterwards, and not at all for a
+ * parse that got canceled.
+ */
+class C4ParseEvents {
+
+	private static final Logger logger = LoggerFactory.getLogger(C4ParseEvents.class);
+
+	static final int START_FILE = 0;
+	static final int EXTENDS_BY = 1;
+	static final int ELEMENT = 2;
+	static final int RELATIONSHIP = 3;
+	static final int VIEW = 4;
+	static final int COLOR = 5;
+	static final int INCLUDE = 6;
+	static final int START_CONTEXT = 7;
+	static final int END_CONTEXT = 8;
+	static final int PROPERTY = 9;
+
+	private static final int INTS = 4;
+	private static final int OBJECTS = 2;
+
+	// kind, file, line index and an int argument of every event
+	private int[] ints = new int[INTS * 256];
+	// up to two objects of every event
+	private Object[] objects = new Object[OBJECTS * 256];
+	private int size = 0;
+	// files the events refer to by their index
+	private final List<ParseContext> files = new ArrayList<>();
+
+	int addFile(ParseContext context) {
+		files.add(context);
+		return files.size() - 1;
+	}
+
+	void add(int kind, ParseContext context, int argument, Object first, Object second) {
+		if (INTS * size == ints.length) {
+			ints = Arrays.copyOf(ints, 2 * ints.length);
+			objects = Arrays.copyOf(objects, 2 * objects.length);
+		}
+		int i = INTS * size;
+		ints[i] = kind;
+		ints[i + 1] = context.index;
+		ints[i + 2] = context.lineIndex - 1;
+		ints[i + 3] = argument;
+		int o = OBJECTS * size;
+		objects[o] = first;
+		objects[o + 1] = second;
+		size++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(objects, 0, OBJECTS * size, null);
+		size = 0;
+		files.clear();
+	}
+
+	// Build the models of the session from the events, in the order they were reported
+	void apply(C4ParseSession session) {
+		for (int e = 0; e < size; e++) {
+			int i = INTS * e;
+			int o = OBJECTS * e;
+			int kind = ints[i];
+			ParseContext context = files.get(ints[i + 1]);
+			C4DocumentModel model = context.model;
+			if (kind == START_FILE) {
+				model.clear();
+				model.setElementIndex(session.elementIndex);
+				continue;
+			}
+			if (kind == EXTENDS_BY) {
+				model.setExtendsBy((C4DocumentModel) objects[o]);
+				continue;
+			}
+			Line line = context.line(ints[i + 2]);
+			if (line == null) {
+				logger.error("Event {} of {} before its first line", kind, context.file);
+				continue;
+			}
+			switch (kind) {
+			case ELEMENT -> {
+				C4ObjectWithContext<Element> element = new C4ObjectWithContext<>((String) objects[o + 1],
+						line.number(), line.source(), (Element) objects[o], model);
+				session.elementIndex.add(element);
+				model.addElement(line.number(), element);
+				session.pendingElements.add(element);
+			}
+			case RELATIONSHIP -> model.addRelationship(line.number(), new C4ObjectWithContext<>((String) objects[o + 1],
+					line.number(), line.source(), (Relationship) objects[o], model));
+			case VIEW -> model.addView(line.number(),
+					new C4ObjectWithContext<>(null, line.number(), line.source(), (View) objects[o], null));
+			case COLOR -> model.addColor(line.number(), line.source());
+			case INCLUDE -> {
+				C4DocumentModel referenced = (C4DocumentModel) objects[o];
+				referenced.setExtendsBy(model.getExtendsBy());
+				model.addReferencedModel(referenced, line.number(), (String) objects[o + 1]);
+			}
+			case START_CONTEXT -> model.openScope(line.number(), ints[i + 3], (String) objects[o]);
+			case END_CONTEXT -> model.closeScope(line.number(), ints[i + 3], (String) objects[o]);
+			case PROPERTY -> model.addProperty(new C4Property(line.number(), line.source(),
+					(String) objects[o], (String) objects[o + 1]));
+			default -> logger.error("Unknown parse event {}", kind);
+			}
+		}
+		clear();
+	}
+
+}
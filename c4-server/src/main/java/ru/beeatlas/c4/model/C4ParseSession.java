@@ -0,0 +1,140 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+import com.structurizr.Workspace;
+import com.structurizr.dsl.DslPackage.Line;
+import com.structurizr.model.Element;
+
+/**
+ * State of one diagnostics request: the models being parsed, the parser position
+ * in the file being parsed and the files it was included from. The parser reports
+ * to the listener on the thread it runs on, so C4DocumentManager keeps the session
+ * of every parsing thread, and parses of different workspaces do not interfere.
+ */
+class C4ParseSession {
+
+	static class ParseContext {
+		public File file;
+		public C4DocumentModel model;
+		public String currentIdentifier;
+		public List<Line> lines;
+		// lines the parser has read so far, the current line is the one before
+		int lineIndex;
+		int leadingSpace = 0;
+		// index of the file in the events of the session
+		int index;
+		// lines of an included fragment without its leading space, built when first used
+		private Line[] trimmed;
+
+		public void newLine() {
+			if(lines != null && lineIndex < lines.size()) {
+				lineIndex++;
+			}
+		}
+
+		Line line(int index) {
+			if(lines == null || index < 0 || index >= lines.size()) {
+				return null;
+			}
+			Line line = lines.get(index);
+			if(leadingSpace == 0 || line.source().length() < leadingSpace) {
+				return line;
+			}
+			if(trimmed == null) {
+				trimmed = new Line[lines.size()];
+			}
+			if(trimmed[index] == null) {
+				trimmed[index] = new Line(line.number(), line.source().substring(leadingSpace));
+			}
+			return trimmed[index];
+		}
+	}
+
+	// Checked for every parsed line, aborts a parse which became obsolete
+	final CancelChecker cancelChecker;
+	// text of the document being parsed, when it comes from an open buffer
+	final C4TextBuffer.Text editedText;
+	// told about the workspace of every committed parse
+	private final Consumer<Workspace> committed;
+
+	// For double buffering: parse new models into a separate map
+	// so hover/definition see the old valid one during parsing
+	final Map<String, C4DocumentModel> pendingModels = new HashMap<>();
+	Set<C4ObjectWithContext<Element>> pendingElements = new HashSet<>();
+	// callbacks of the running parse, applied to the pending models once it is done
+	final C4ParseEvents events = new C4ParseEvents();
+	// id -> elements of the workspace being parsed, shared by all its models
+	C4ElementIndex elementIndex = new C4ElementIndex();
+	// Include and extends edges of the parsed files, and the files parsed as roots.
+	// Applied to the include graph on commit, a canceled parse leaves it untouched.
+	final Map<String, Set<String>> includes = new LinkedHashMap<>();
+	final Set<String> roots = new HashSet<>();
+
+	ParseContext context = null;
+	final LinkedList<ParseContext> contextStack = new LinkedList<>();
+	int nextLeadingSpace = 0;
+	// workspace of the current parsing cycle, null until a parse creates one
+	Workspace workspace = null;
+
+	C4ParseSession(CancelChecker cancelChecker, C4TextBuffer.Text editedText, Consumer<Workspace> committed) {
+		this.cancelChecker = cancelChecker;
+		this.editedText = editedText;
+		this.committed = committed;
+	}
+
+	// Clear staging area and parser state before starting a new parsing cycle
+	void startParsing() {
+		pendingModels.clear();
+		context = null;
+		pendingElements = new HashSet<>();
+		contextStack.clear();
+		events.clear();
+		includes.clear();
+		roots.clear();
+		workspace = null;
+	}
+
+	void committed(Workspace workspace) {
+		if (workspace != null) {
+			committed.accept(workspace);
+		}
+	}
+
+	// The file is parsed again, forget the edges found before
+	void startFile(File file) {
+		includes.put(file.getAbsolutePath(), new LinkedHashSet<>());
+	}
+
+	void addInclude(File file, File included) {
+		includes.computeIfAbsent(file.getAbsolutePath(), k -> new LinkedHashSet<>()).add(included.getAbsolutePath());
+	}
+
+}
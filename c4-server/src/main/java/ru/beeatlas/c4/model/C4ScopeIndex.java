@@ -0,0 +1,123 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import ru.beeatlas.c4.model.C4DocumentModel.C4CompletionScope;
+
+/**
+ * Line to scope tables of a document, built once from the closed scopes.
+ * For every line the innermost scope (the one starting last) is stored,
+ * for scopes starting at the same line the first one in the list wins.
+ */
+final class C4ScopeIndex {
+
+	private static final int NONE = -1;
+	private static final String COMMENT_SCOPE = "CommentDslContext";
+
+	private final List<C4CompletionScope> scopes;
+	// 1-based line -> index in scopes, lines strictly inside a scope
+	private final int[] surrounding;
+	// 1-based line -> index in scopes, lines inside a scope including start and end, comments excluded
+	private final int[] nearest;
+	// scopes which have not been closed extend beyond the tables
+	private final List<Integer> unclosed = new ArrayList<>();
+
+	C4ScopeIndex(List<C4CompletionScope> scopes) {
+		this.scopes = scopes;
+		int lastLine = 0;
+		for (int i = 0; i < scopes.size(); i++) {
+			C4CompletionScope scope = scopes.get(i);
+			if (scope.end() == C4CompletionScope.SCOPE_NOT_CLOSED) {
+				unclosed.add(i);
+				lastLine = Math.max(lastLine, scope.start());
+			} else {
+				lastLine = Math.max(lastLine, scope.end());
+			}
+		}
+		surrounding = new int[lastLine + 2];
+		nearest = new int[lastLine + 2];
+		Arrays.fill(surrounding, NONE);
+		Arrays.fill(nearest, NONE);
+
+		// later starts overwrite earlier ones; with equal starts the scope listed first is written last
+		int[] order = IntStream.range(0, scopes.size()).boxed()
+				.sorted(Comparator.<Integer>comparingInt(i -> scopes.get(i).start()).thenComparing(Comparator.reverseOrder()))
+				.mapToInt(Integer::intValue).toArray();
+		for (int i : order) {
+			C4CompletionScope scope = scopes.get(i);
+			boolean closed = scope.end() != C4CompletionScope.SCOPE_NOT_CLOSED;
+			int end = closed ? scope.end() : surrounding.length;
+			for (int line = Math.max(0, scope.start() + 1); line < end; line++) {
+				surrounding[line] = i;
+			}
+			if (!scope.name().equals(COMMENT_SCOPE)) {
+				end = closed ? scope.end() : nearest.length - 1;
+				for (int line = Math.max(0, scope.start()); line <= end; line++) {
+					nearest[line] = i;
+				}
+			}
+		}
+	}
+
+	// Innermost scope strictly containing the 1-based line
+	C4CompletionScope surrounding(int line) {
+		if (line < 0) {
+			return null;
+		}
+		if (line < surrounding.length) {
+			return scopeAt(surrounding[line]);
+		}
+		return lastUnclosed(line, false);
+	}
+
+	// Innermost non comment scope containing the 1-based line, start and end line included
+	C4CompletionScope nearest(int line) {
+		if (line < 0) {
+			return null;
+		}
+		if (line < nearest.length) {
+			return scopeAt(nearest[line]);
+		}
+		return lastUnclosed(line, true);
+	}
+
+	private C4CompletionScope scopeAt(int index) {
+		return index == NONE ? null : scopes.get(index);
+	}
+
+	private C4CompletionScope lastUnclosed(int line, boolean inclusive) {
+		C4CompletionScope result = null;
+		for (int i : unclosed) {
+			C4CompletionScope scope = scopes.get(i);
+			if (inclusive && scope.name().equals(COMMENT_SCOPE)) {
+				continue;
+			}
+			boolean starts = inclusive ? scope.start() <= line : scope.start() < line;
+			if (starts && (result == null || scope.start() > result.start())) {
+				result = scope;
+			}
+		}
+		return result;
+	}
+
+}
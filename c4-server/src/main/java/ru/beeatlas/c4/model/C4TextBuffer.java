@@ -0,0 +1,297 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+
+/**
+ * Text of an open document as a piece table: the text the document was opened with,
+ * an append-only buffer of inserted text and the list of pieces referring to both.
+ * Line starts are kept up to date on every change, only the lines around the
+ * changed range are scanned again.
+ */
+public class C4TextBuffer {
+
+	// compact the piece table once it gets that fragmented
+	private static final int MAX_PIECES = 512;
+
+	private record Piece(boolean added, int start, int length) {
+	}
+
+	public record Text(String text, int[] lineStarts) {
+	}
+
+	private String original;
+	private final StringBuilder added = new StringBuilder();
+	private final List<Piece> pieces = new ArrayList<>();
+	private int length;
+	// offset of the first character of every line, \n, \r\n and \r end a line
+	private int[] lineStarts;
+	// text of the current state, null after a change until requested again
+	private String text;
+
+	public C4TextBuffer(String text) {
+		reset(text);
+	}
+
+	private void reset(String newText) {
+		original = newText;
+		added.setLength(0);
+		pieces.clear();
+		if (!newText.isEmpty()) {
+			pieces.add(new Piece(false, 0, newText.length()));
+		}
+		length = newText.length();
+		lineStarts = lineStarts(newText);
+		text = newText;
+	}
+
+	public synchronized void apply(TextDocumentContentChangeEvent change) {
+		Range range = change.getRange();
+		if (range == null) {
+			reset(change.getText());
+		} else {
+			replace(offsetAt(range.getStart()), offsetAt(range.getEnd()), change.getText());
+		}
+	}
+
+	public synchronized void apply(List<TextDocumentContentChangeEvent> changes) {
+		changes.forEach(this::apply);
+	}
+
+	// Offset of an LSP position (UTF-16 code units), clamped to the text
+	public synchronized int offsetAt(Position position) {
+		if (position.getLine() < 0) {
+			return 0;
+		}
+		if (position.getLine() >= lineStarts.length) {
+			return length;
+		}
+		int lineStart = lineStarts[position.getLine()];
+		int lineEnd = position.getLine() + 1 < lineStarts.length ? lineStarts[position.getLine() + 1] : length;
+		return Math.min(lineStart + Math.max(0, position.getCharacter()), lineEnd);
+	}
+
+	public synchronized void replace(int start, int end, String newText) {
+		start = Math.max(0, Math.min(start, length));
+		end = Math.max(start, Math.min(end, length));
+
+		// lines to scan again: one before the change (a \r may now be followed by \n)
+		// up to one after it (a \n may now follow an inserted \r)
+		int lineFrom = Math.max(0, lineOf(start) - 1);
+		int lineAfter = Math.min(lineStarts.length, lineOf(end) + 2);
+		int regionStart = lineStarts[lineFrom];
+		int regionEnd = lineAfter < lineStarts.length ? lineStarts[lineAfter] : length;
+
+		delete(start, end);
+		insert(start, newText);
+		int delta = newText.length() - (end - start);
+		length += delta;
+		text = null;
+
+		String region = substring(regionStart, regionEnd + delta);
+		int[] scanned = lineStarts(region);
+		boolean lastRegion = lineAfter >= lineStarts.length;
+		int[] starts = new int[lineFrom + scanned.length + lineStarts.length - lineAfter];
+		System.arraycopy(lineStarts, 0, starts, 0, lineFrom + 1);
+		int count = lineFrom + 1;
+		// scanned[0] is the region start itself
+		for (int i = 1; i < scanned.length; i++) {
+			if (scanned[i] < region.length() || lastRegion) {
+				starts[count++] = regionStart + scanned[i];
+			}
+		}
+		for (int i = lineAfter; i < lineStarts.length; i++) {
+			starts[count++] = lineStarts[i] + delta;
+		}
+		lineStarts = count == starts.length ? starts : Arrays.copyOf(starts, count);
+
+		if (pieces.size() > MAX_PIECES) {
+			reset(getText());
+		}
+	}
+
+	private void delete(int start, int end) {
+		if (start == end) {
+			return;
+		}
+		int offset = 0;
+		for (int i = 0; i < pieces.size() && offset < end; i++) {
+			Piece piece = pieces.get(i);
+			int pieceStart = offset;
+			int pieceEnd = offset + piece.length();
+			offset = pieceEnd;
+			if (pieceEnd <= start) {
+				continue;
+			}
+			int cutFrom = Math.max(start, pieceStart) - pieceStart;
+			int cutTo = Math.min(end, pieceEnd) - pieceStart;
+			List<Piece> replacement = new ArrayList<>(2);
+			if (cutFrom > 0) {
+				replacement.add(new Piece(piece.added(), piece.start(), cutFrom));
+			}
+			if (cutTo < piece.length()) {
+				replacement.add(new Piece(piece.added(), piece.start() + cutTo, piece.length() - cutTo));
+			}
+			pieces.remove(i);
+			pieces.addAll(i, replacement);
+			i += replacement.size() - 1;
+			// offsets of the following pieces moved by the removed part
+			offset -= cutTo - cutFrom;
+			end -= cutTo - cutFrom;
+		}
+	}
+
+	private void insert(int at, String newText) {
+		if (newText.isEmpty()) {
+			return;
+		}
+		Piece inserted = new Piece(true, added.length(), newText.length());
+		added.append(newText);
+		int offset = 0;
+		for (int i = 0; i < pieces.size(); i++) {
+			Piece piece = pieces.get(i);
+			if (at == offset) {
+				pieces.add(i, inserted);
+				return;
+			}
+			if (at < offset + piece.length()) {
+				int split = at - offset;
+				pieces.set(i, new Piece(piece.added(), piece.start(), split));
+				pieces.add(i + 1, inserted);
+				pieces.add(i + 2, new Piece(piece.added(), piece.start() + split, piece.length() - split));
+				return;
+			}
+			offset += piece.length();
+		}
+		pieces.add(inserted);
+	}
+
+	private String substring(int start, int end) {
+		if (text != null) {
+			return text.substring(start, end);
+		}
+		StringBuilder sb = new StringBuilder(end - start);
+		int offset = 0;
+		for (Piece piece : pieces) {
+			int pieceEnd = offset + piece.length();
+			if (pieceEnd > start && offset < end) {
+				int from = Math.max(start, offset) - offset + piece.start();
+				int to = Math.min(end, pieceEnd) - offset + piece.start();
+				if (piece.added()) {
+					sb.append(added, from, to);
+				} else {
+					sb.append(original, from, to);
+				}
+			}
+			if (pieceEnd >= end) {
+				break;
+			}
+			offset = pieceEnd;
+		}
+		return sb.toString();
+	}
+
+	private int lineOf(int offset) {
+		int index = Arrays.binarySearch(lineStarts, offset);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	public synchronized String getText() {
+		if (text == null) {
+			text = substring(0, length);
+		}
+		return text;
+	}
+
+	public synchronized int[] getLineStarts() {
+		return lineStarts;
+	}
+
+	// Text and line starts of the same state
+	public synchronized Text snapshot() {
+		return new Text(getText(), lineStarts);
+	}
+
+	public synchronized int getLength() {
+		return length;
+	}
+
+	static int[] lineStarts(CharSequence text) {
+		int[] starts = new int[16];
+		int count = 1;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\n' || (c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n'))) {
+				if (count == starts.length) {
+					starts = Arrays.copyOf(starts, count * 2);
+				}
+				starts[count++] = i + 1;
+			}
+		}
+		return Arrays.copyOf(starts, count);
+	}
+
+	// Lines of the text without terminators, same as String.lines() but without copying
+	// the text up front: a line is only cut out when it is read.
+	public static List<String> lines(String text, int[] lineStarts) {
+		return new Lines(text, lineStarts);
+	}
+
+	private static class Lines extends AbstractList<String> implements RandomAccess {
+
+		private final String text;
+		private final int[] lineStarts;
+		private final int size;
+
+		Lines(String text, int[] lineStarts) {
+			this.text = text;
+			this.lineStarts = lineStarts;
+			// like String.lines(), there is no empty line after a trailing line break
+			this.size = lineStarts[lineStarts.length - 1] == text.length() ? lineStarts.length - 1 : lineStarts.length;
+		}
+
+		@Override
+		public String get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException(index);
+			}
+			int end = index + 1 < lineStarts.length ? lineStarts[index + 1] : text.length();
+			if (end > lineStarts[index] && text.charAt(end - 1) == '\n') {
+				end--;
+			}
+			if (end > lineStarts[index] && text.charAt(end - 1) == '\r') {
+				end--;
+			}
+			return text.substring(lineStarts[index], end);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+}
@@ -16,8 +16,15 @@
 
 package ru.beeatlas.c4.provider;
 
+import java.util.AbstractList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.RandomAccess;
+
+import org.eclipse.lsp4j.SemanticTokensEdit;
 
 public class C4SemanticTokenProvider {
 
@@ -31,4 +38,81 @@ public class C4SemanticTokenProvider {
         "abstract", "async", "modification", "documentation", "defaultLibrary");
     
     public static final int MODEL_ELEMENT = TOKEN_TYPES.indexOf("member");
-}
\ No newline at end of file
+
+    // A token at its absolute position, line and start are 0-based
+    public record Token(int line, int start, int length, int type, int modifier) {
+    }
+
+    // Tokens in LSP relative encoding, together with the absolute position of every token
+    public record EncodedTokens(int[] data, int[] lines, int[] starts) {
+    }
+
+    // Read only List view of encoded tokens, values are boxed only while serialized
+    private static class IntArrayList extends AbstractList<Integer> implements RandomAccess {
+
+        private final int[] data;
+
+        IntArrayList(int[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return data[index];
+        }
+
+        @Override
+        public int size() {
+            return data.length;
+        }
+    }
+
+    public static List<Integer> asList(int[] data) {
+        return new IntArrayList(data);
+    }
+
+    // Tokens sorted by position, every one relative to the token before
+    public static EncodedTokens encode(Collection<Token> tokens) {
+        List<Token> sorted = tokens.stream()
+                .sorted(Comparator.comparingInt(Token::line).thenComparingInt(Token::start))
+                .toList();
+
+        int[] data = new int[sorted.size() * 5];
+        int[] lines = new int[sorted.size()];
+        int[] starts = new int[sorted.size()];
+        int previousLine = 0;
+        int previousStart = 0;
+        for (int index = 0; index < sorted.size(); index++) {
+            Token token = sorted.get(index);
+            final int deltaLine = token.line() - previousLine;
+            final int deltaChar = deltaLine == 0 ? token.start() - previousStart : token.start();
+            int offset = index * 5;
+            data[offset] = deltaLine;
+            data[offset + 1] = deltaChar;
+            data[offset + 2] = token.length();
+            data[offset + 3] = token.type();
+            data[offset + 4] = token.modifier();
+            lines[index] = token.line();
+            starts[index] = token.start();
+            previousLine = token.line();
+            previousStart = token.start();
+        }
+        return new EncodedTokens(data, lines, starts);
+    }
+
+    // A single edit replacing everything between the common prefix and suffix of both arrays.
+    // No edits if both are equal.
+    public static List<SemanticTokensEdit> calcDelta(int[] previous, int[] current) {
+        int prefix = Arrays.mismatch(previous, current);
+        if (prefix == -1) {
+            return Collections.emptyList();
+        }
+        int maxSuffix = Math.min(previous.length, current.length) - prefix;
+        int suffix = 0;
+        while (suffix < maxSuffix && previous[previous.length - 1 - suffix] == current[current.length - 1 - suffix]) {
+            suffix++;
+        }
+        int[] inserted = Arrays.copyOfRange(current, prefix, current.length - suffix);
+        return Collections.singletonList(new SemanticTokensEdit(prefix, previous.length - prefix - suffix, asList(inserted)));
+    }
+}
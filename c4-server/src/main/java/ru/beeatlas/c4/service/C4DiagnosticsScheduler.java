@@ -0,0 +1,256 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.beeatlas.c4.utils.C4Metrics;
+
+/**
+ * Debounces diagnostics requests per workspace root. Only the latest version
+ * of every document is parsed, older queued versions are dropped and a running
+ * parse of an older version is asked to stop via its CancelChecker.
+ * Parses of different roots run in parallel on a pool sized to the available
+ * cores, parses of the same root run one after another.
+ */
+public class C4DiagnosticsScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(C4DiagnosticsScheduler.class);
+
+	public static final long DEFAULT_DEBOUNCE = 200;
+
+	// version of a request for the text on disk, an open document is parsed with its buffer
+	public static final int DISK_VERSION = -1;
+
+	// The text is read by the handler when the parse runs, not when the change arrives
+	public record Request(String uri, int version) {
+	}
+
+	private class Batch {
+		// document uri -> latest request
+		final Map<String, Request> requests = new LinkedHashMap<>();
+		ScheduledFuture<?> future;
+	}
+
+	private record Running(String root, Request request, AtomicBoolean canceled) implements CancelChecker {
+		@Override
+		public void checkCanceled() {
+			if (canceled.get()) {
+				throw new CancellationException();
+			}
+		}
+	}
+
+	// only waits for the debounce window, parses run on the pool
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private final ExecutorService pool;
+	private final int parallelism;
+	private final BiConsumer<Request, CancelChecker> handler;
+
+	// workspace root -> requests waiting for the debounce window to pass
+	private final Map<String, Batch> pending = new HashMap<>();
+	// workspace root -> last parse queued on the pool, the next batch of the root runs after it
+	private final Map<String, CompletableFuture<Void>> tails = new HashMap<>();
+	// workspace root -> parse running right now
+	private final Map<String, Running> running = new HashMap<>();
+	// document uri -> latest version scheduled, a batch queued before it is not parsed for older ones
+	private final Map<String, Integer> latest = new HashMap<>();
+
+	private final AtomicLong scheduledCount = new AtomicLong();
+	private final AtomicLong skippedCount = new AtomicLong();
+	private final AtomicLong parsedCount = new AtomicLong();
+	private final AtomicLong canceledCount = new AtomicLong();
+
+	private volatile long debounce = DEFAULT_DEBOUNCE;
+
+	public C4DiagnosticsScheduler(BiConsumer<Request, CancelChecker> handler) {
+		this(handler, Runtime.getRuntime().availableProcessors());
+	}
+
+	public C4DiagnosticsScheduler(BiConsumer<Request, CancelChecker> handler, int parallelism) {
+		this.handler = handler;
+		this.parallelism = Math.max(1, parallelism);
+		AtomicInteger threadCount = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(this.parallelism, r -> {
+			Thread thread = new Thread(r, "c4-parse-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setDebounce(long debounce) {
+		this.debounce = Math.max(0, debounce);
+	}
+
+	public long getDebounce() {
+		return debounce;
+	}
+
+	public synchronized void schedule(String root, Request request) {
+		scheduledCount.incrementAndGet();
+		Batch batch = pending.computeIfAbsent(root, k -> new Batch());
+		Request queued = batch.requests.get(request.uri());
+		if (queued != null) {
+			if (queued.version() > request.version()) {
+				// out of order, keep the newer one
+				skippedCount.incrementAndGet();
+				return;
+			}
+			skippedCount.incrementAndGet();
+		}
+		batch.requests.put(request.uri(), request);
+		latest.merge(request.uri(), request.version(), Math::max);
+		Running current = running.get(root);
+		if (current != null && current.request().uri().equals(request.uri())
+				&& current.request().version() <= request.version() && !current.canceled().getAndSet(true)) {
+			canceledCount.incrementAndGet();
+		}
+		if (batch.future != null) {
+			batch.future.cancel(false);
+		}
+		batch.future = executor.schedule(() -> dispatch(root, batch), debounce, TimeUnit.MILLISECONDS);
+		C4Metrics.getInstance().recordQueueDepth(getQueueDepth() + running.size());
+	}
+
+	// Run a short task on the scheduler thread, ahead of the parses of requests scheduled later
+	public void execute(Runnable task) {
+		executor.execute(() -> {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				logger.error("Scheduled task failed {}", e.getMessage());
+			}
+		});
+	}
+
+	// Run all queued requests right away and wait for them (and the running parses) to complete
+	public CompletableFuture<Void> flush() {
+		synchronized (this) {
+			new ArrayList<>(pending.entrySet()).forEach(e -> {
+				e.getValue().future.cancel(false);
+				dispatch(e.getKey(), e.getValue());
+			});
+			return CompletableFuture.allOf(tails.values().toArray(CompletableFuture[]::new));
+		}
+	}
+
+	// Run the queued requests of the root right away and wait for its parses to complete
+	public CompletableFuture<Void> flush(String root) {
+		synchronized (this) {
+			Batch batch = pending.get(root);
+			if (batch != null) {
+				batch.future.cancel(false);
+				dispatch(root, batch);
+			}
+			return tails.getOrDefault(root, CompletableFuture.completedFuture(null));
+		}
+	}
+
+	// Queue the batch on the pool behind the parses of its root queued before
+	private synchronized void dispatch(String root, Batch batch) {
+		// the batch may have been replaced or already dispatched by flush()
+		if (pending.get(root) != batch) {
+			return;
+		}
+		pending.remove(root);
+		List<Request> requests = new ArrayList<>(batch.requests.values());
+		CompletableFuture<Void> previous = tails.getOrDefault(root, CompletableFuture.completedFuture(null));
+		CompletableFuture<Void> tail = previous.thenRunAsync(() -> run(root, requests), pool);
+		tails.put(root, tail);
+		tail.whenComplete((result, e) -> {
+			synchronized (this) {
+				tails.remove(root, tail);
+			}
+		});
+	}
+
+	private void run(String root, List<Request> requests) {
+		requests.forEach(request -> {
+			Running current = new Running(root, request, new AtomicBoolean());
+			synchronized (this) {
+				if (latest.getOrDefault(request.uri(), request.version()) > request.version()) {
+					// a newer version was scheduled since the batch was dispatched
+					skippedCount.incrementAndGet();
+					return;
+				}
+				running.put(root, current);
+			}
+			parsedCount.incrementAndGet();
+			try {
+				handler.accept(request, current);
+			} catch (CancellationException e) {
+				logger.info("Diagnostics for {} version {} canceled", request.uri(), request.version());
+			} catch (RuntimeException e) {
+				logger.error("Diagnostics for {} failed {}", request.uri(), e.getMessage());
+			} finally {
+				synchronized (this) {
+					running.remove(root, current);
+					latest.remove(request.uri(), request.version());
+				}
+			}
+		});
+	}
+
+	public synchronized int getQueueDepth() {
+		return pending.values().stream().mapToInt(batch -> batch.requests.size()).sum();
+	}
+
+	public long getScheduledCount() {
+		return scheduledCount.get();
+	}
+
+	public long getSkippedCount() {
+		return skippedCount.get();
+	}
+
+	public long getParsedCount() {
+		return parsedCount.get();
+	}
+
+	public long getCanceledCount() {
+		return canceledCount.get();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+		pool.shutdownNow();
+	}
+
+}
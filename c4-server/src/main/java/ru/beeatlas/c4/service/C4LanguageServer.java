@@ -16,13 +16,17 @@
 
 package ru.beeatlas.c4.service;
 
+import java.io.File;
+import java.net.URI;
 import java.util.concurrent.CompletableFuture;
+import org.eclipse.lsp4j.ClientCapabilities;
 import org.eclipse.lsp4j.CodeLensOptions;
 import org.eclipse.lsp4j.CompletionOptions;
 import org.eclipse.lsp4j.ExecuteCommandOptions;
 import org.eclipse.lsp4j.InitializeParams;
 import org.eclipse.lsp4j.InitializeResult;
 import org.eclipse.lsp4j.SemanticTokensLegend;
+import org.eclipse.lsp4j.SemanticTokensServerFull;
 import org.eclipse.lsp4j.SemanticTokensWithRegistrationOptions;
 import org.eclipse.lsp4j.ServerCapabilities;
 import org.eclipse.lsp4j.SetTraceParams;
@@ -53,14 +57,16 @@ public class C4LanguageServer implements LanguageServer, LanguageClientAware {
 		this.workspaceService = new C4WorkspaceService(this.documentService);
 
 		res.getCapabilities().setCompletionProvider(new CompletionOptions());
-		res.getCapabilities().setTextDocumentSync(TextDocumentSyncKind.Full);
-		res.getCapabilities().setCodeLensProvider(new CodeLensOptions());
+		res.getCapabilities().setTextDocumentSync(TextDocumentSyncKind.Incremental);
+		res.getCapabilities().setCodeLensProvider(new CodeLensOptions(true));
 		res.getCapabilities().setHoverProvider(Boolean.TRUE);
 		res.getCapabilities().setColorProvider(Boolean.TRUE);
 		res.getCapabilities().setDefinitionProvider(Boolean.TRUE);
 		res.getCapabilities().setDocumentFormattingProvider(Boolean.TRUE);
 		SemanticTokensWithRegistrationOptions semanticTokenOptions = new SemanticTokensWithRegistrationOptions();
-		semanticTokenOptions.setFull(true);
+		// full documents with deltas against the last result, and visible ranges only
+		semanticTokenOptions.setFull(new SemanticTokensServerFull(true));
+		semanticTokenOptions.setRange(true);
 		SemanticTokensLegend legend = new SemanticTokensLegend(C4SemanticTokenProvider.TOKEN_TYPES, C4SemanticTokenProvider.TOKEN_MODIFIERS);
 		semanticTokenOptions.setLegend(legend);
 		res.getCapabilities().setSemanticTokensProvider(semanticTokenOptions);
@@ -76,6 +82,20 @@ public class C4LanguageServer implements LanguageServer, LanguageClientAware {
 	@Override
 	public CompletableFuture<InitializeResult> initialize(InitializeParams params) {
 		logger.info("initialize");
+		String folder = params.getWorkspaceFolders() != null && !params.getWorkspaceFolders().isEmpty()
+				? params.getWorkspaceFolders().get(0).getUri()
+				: params.getRootUri();
+		if (folder != null) {
+			try {
+				documentService.setWorkspaceFolder(new File(new URI(folder)));
+			} catch (Exception e) {
+				logger.error("initialize {}", e.getMessage());
+			}
+		}
+		// the client reports file changes on disk, lookups of workspace files can be cached
+		ClientCapabilities capabilities = params.getCapabilities();
+		documentService.setFileWatching(capabilities != null && capabilities.getWorkspace() != null
+				&& capabilities.getWorkspace().getDidChangeWatchedFiles() != null);
 		return CompletableFuture.completedFuture(res);
 	}
 
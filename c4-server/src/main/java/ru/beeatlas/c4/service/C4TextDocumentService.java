@@ -17,14 +17,18 @@
 package ru.beeatlas.c4.service;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.lsp4j.CodeLens;
 import org.eclipse.lsp4j.CodeLensParams;
 import org.eclipse.lsp4j.Color;
@@ -39,6 +43,7 @@ import org.eclipse.lsp4j.DidChangeTextDocumentParams;
 import org.eclipse.lsp4j.DidCloseTextDocumentParams;
 import org.eclipse.lsp4j.DidOpenTextDocumentParams;
 import org.eclipse.lsp4j.DidSaveTextDocumentParams;
+import org.eclipse.lsp4j.FileEvent;
 import org.eclipse.lsp4j.DocumentColorParams;
 import org.eclipse.lsp4j.DocumentFormattingParams;
 import org.eclipse.lsp4j.Hover;
@@ -47,9 +52,13 @@ import org.eclipse.lsp4j.Location;
 import org.eclipse.lsp4j.LocationLink;
 import org.eclipse.lsp4j.PublishDiagnosticsParams;
 import org.eclipse.lsp4j.SemanticTokens;
+import org.eclipse.lsp4j.SemanticTokensDelta;
+import org.eclipse.lsp4j.SemanticTokensDeltaParams;
 import org.eclipse.lsp4j.SemanticTokensParams;
+import org.eclipse.lsp4j.SemanticTokensRangeParams;
 import org.eclipse.lsp4j.TextDocumentIdentifier;
 import org.eclipse.lsp4j.TextEdit;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.TextDocumentService;
 import org.slf4j.Logger;
@@ -62,17 +71,22 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Module;
 import com.structurizr.Workspace;
-import com.structurizr.model.Element;
 
 import ru.beeatlas.c4.custom.Custom;
 import ru.beeatlas.c4.intercept.StructurizrDslParserListener;
 import ru.beeatlas.c4.model.C4DocumentModel;
-import ru.beeatlas.c4.model.C4ObjectWithContext;
+import ru.beeatlas.c4.model.C4DocumentSnapshot;
+import ru.beeatlas.c4.model.C4IndexStore;
+import ru.beeatlas.c4.model.C4MemoryBudget;
+import ru.beeatlas.c4.model.C4TextBuffer;
 import ru.beeatlas.c4.model.C4TokensLoader;
 import ru.beeatlas.c4.provider.C4CompletionProvider;
 import ru.beeatlas.c4.provider.C4DefinitionProvider;
 import ru.beeatlas.c4.provider.C4FormatterProvider;
 import ru.beeatlas.c4.provider.C4HoverProvider;
+import ru.beeatlas.c4.provider.C4SemanticTokenProvider;
+import ru.beeatlas.c4.utils.C4Events;
+import ru.beeatlas.c4.utils.C4Metrics;
 import ru.beeatlas.c4.intercept.InterceptParserAspect;
 import ru.beeatlas.c4.model.C4DocumentManager;
 
@@ -92,11 +106,23 @@ public class C4TextDocumentService implements TextDocumentService {
 	private C4FormatterProvider formatterProvider;
 	private C4HoverProvider hoverProvider;
 
-	private int changeCount = 0;
+	private final AtomicInteger changeCount = new AtomicInteger();
 
 	private Gson gson = new Gson();
-	private CompletableFuture<Void> currentFuture = new CompletableFuture<>();
-	private ExecutorService diagnosticService = Executors.newSingleThreadScheduledExecutor(); 
+	private C4DiagnosticsScheduler diagnosticsScheduler = new C4DiagnosticsScheduler(this::publishDiagnostics);
+
+	private record SentTokens(String resultId, int[] data) {
+	}
+
+	// document uri -> semantic tokens last sent to the client
+	private Map<String, SentTokens> sentTokens = new ConcurrentHashMap<>();
+	// uri -> text of the open document, kept up to date by incremental changes
+	private Map<String, C4TextBuffer> openDocuments = new ConcurrentHashMap<>();
+	// path of an open document -> workspace root its diagnostics are batched with
+	private Map<String, String> documentRoots = new ConcurrentHashMap<>();
+	// uri of an open document -> version of its buffer last scheduled for diagnostics
+	private Map<String, Integer> documentVersions = new ConcurrentHashMap<>();
+	private File workspaceFolder = null;
 
 	public C4TextDocumentService(C4LanguageServer c4LanguageServer) {
 		definitionProvider = new C4DefinitionProvider();
@@ -105,12 +131,17 @@ public class C4TextDocumentService implements TextDocumentService {
 		hoverProvider = new C4HoverProvider();
 		this.ls = c4LanguageServer;
 		setUpDependencies();
+		C4Events.setSnapshotVersion(() -> documentManager.getSnapshot().version());
 	}
 
 	public C4LanguageServer getServer() {
 		return ls;
 	}
 
+	public C4DiagnosticsScheduler getDiagnosticsScheduler() {
+		return diagnosticsScheduler;
+	}
+
 	private void setUpDependencies() {
         Module testModule = new AbstractModule() {
 
@@ -151,13 +182,16 @@ public class C4TextDocumentService implements TextDocumentService {
 			if(uri.substring(uri.length() - 3).equalsIgnoreCase(".md")) {
 				return Either.forLeft(Custom.getInstance().calcCompletionsAdr(uri, params.getPosition()));
 			}			
-			C4DocumentModel model = getDocument(params.getTextDocument());
+			// model and elements have to come from the same parse
+			C4DocumentSnapshot snapshot = documentManager.getSnapshot();
+			C4DocumentModel model = getIndexedDocument(snapshot, params.getTextDocument());
 			if(model == null || !model.isValid()) {
 				return Either.forLeft(Collections.emptyList());	
 			}
 			try {
-				return Either.forLeft(completionProvider.calcCompletions(model, params.getPosition(), getElements()));
-			} catch (RuntimeException rte) {
+				String root = documentManager.getWorkspaceRoot(uriToFile(params.getTextDocument().getUri()));
+				return Either.forLeft(completionProvider.calcCompletions(model, params.getPosition(), snapshot.getElements(root)));
+			} catch (RuntimeException | URISyntaxException e) {
 				return Either.forLeft(Collections.emptyList());
 			}
 		});
@@ -243,18 +277,80 @@ public class C4TextDocumentService implements TextDocumentService {
 		logger.info("semanticTokensFull");
 
 		return CompletableFuture.supplyAsync(() -> {
-			C4DocumentModel model = getDocument(params.getTextDocument());
+			C4DocumentModel model = getIndexedDocument(documentManager.getSnapshot(), params.getTextDocument());
 			if (model == null || !model.isValid()) {
 				return new SemanticTokens(Collections.emptyList());
 			}
 			try {
-				return new SemanticTokens(model.calculateTokens());
+				return fullSemanticTokens(uri, model);
 			} catch (RuntimeException rte) {
 				return new SemanticTokens(Collections.emptyList());
 			}
 		});
 	}
 
+	@Override
+	public CompletableFuture<Either<SemanticTokens, SemanticTokensDelta>> semanticTokensFullDelta(SemanticTokensDeltaParams params) {
+		String uri = params.getTextDocument().getUri();
+
+		if (uri.length() < 3 || uri.substring(uri.length() - 3).equalsIgnoreCase(".md")) {
+			return CompletableFuture.completedFuture(Either.forLeft(new SemanticTokens(Collections.emptyList())));
+		}
+
+		logger.info("semanticTokensFullDelta");
+
+		return CompletableFuture.supplyAsync(() -> {
+			C4DocumentModel model = getIndexedDocument(documentManager.getSnapshot(), params.getTextDocument());
+			if (model == null || !model.isValid()) {
+				return Either.forLeft(new SemanticTokens(Collections.emptyList()));
+			}
+			try {
+				SentTokens previous = sentTokens.get(uri);
+				if (previous == null || !previous.resultId().equals(params.getPreviousResultId())) {
+					return Either.forLeft(fullSemanticTokens(uri, model));
+				}
+				int[] data = model.getEncodedTokens();
+				String resultId = String.valueOf(model.getVersion());
+				sentTokens.put(uri, new SentTokens(resultId, data));
+				return Either.forRight(new SemanticTokensDelta(C4SemanticTokenProvider.calcDelta(previous.data(), data), resultId));
+			} catch (RuntimeException rte) {
+				return Either.forLeft(new SemanticTokens(Collections.emptyList()));
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<SemanticTokens> semanticTokensRange(SemanticTokensRangeParams params) {
+		String uri = params.getTextDocument().getUri();
+
+		if (uri.length() < 3 || uri.substring(uri.length() - 3).equalsIgnoreCase(".md")) {
+			return CompletableFuture.completedFuture(new SemanticTokens(Collections.emptyList()));
+		}
+
+		logger.info("semanticTokensRange");
+
+		return CompletableFuture.supplyAsync(() -> {
+			C4DocumentModel model = getIndexedDocument(documentManager.getSnapshot(), params.getTextDocument());
+			if (model == null || !model.isValid()) {
+				return new SemanticTokens(Collections.emptyList());
+			}
+			try {
+				return new SemanticTokens(String.valueOf(model.getVersion()),
+						model.calculateTokens(params.getRange().getStart().getLine(), params.getRange().getEnd().getLine()));
+			} catch (RuntimeException rte) {
+				return new SemanticTokens(Collections.emptyList());
+			}
+		});
+	}
+
+	// Remember what was sent last, a following delta request is answered relative to it
+	private SemanticTokens fullSemanticTokens(String uri, C4DocumentModel model) {
+		int[] data = model.getEncodedTokens();
+		String resultId = String.valueOf(model.getVersion());
+		sentTokens.put(uri, new SentTokens(resultId, data));
+		return new SemanticTokens(resultId, C4SemanticTokenProvider.asList(data));
+	}
+
 	@Override
 	public CompletableFuture<List<? extends CodeLens>> codeLens(CodeLensParams params) {
 		return params.getTextDocument().getUri().toLowerCase().endsWith(".dsl") ? CompletableFuture.supplyAsync(() -> {
@@ -270,6 +366,27 @@ public class C4TextDocumentService implements TextDocumentService {
 		}) : CompletableFuture.completedFuture(Collections.emptyList());
 	}
 
+	// Lenses are resolved from the model they were calculated from. A lens of an older
+	// version of the model is returned as it is, the client asks for new lenses anyway.
+	@Override
+	public CompletableFuture<CodeLens> resolveCodeLens(CodeLens unresolved) {
+		if (!(unresolved.getData() instanceof JsonObject data) || !data.has("uri") || !data.has("version") || !data.has("index")) {
+			return CompletableFuture.completedFuture(unresolved);
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			C4DocumentModel model = getDocument(new TextDocumentIdentifier(data.get("uri").getAsString()));
+			if (model == null || model.getVersion() != data.get("version").getAsLong()) {
+				return unresolved;
+			}
+			try {
+				CodeLens resolved = model.resolveCodeLens(data.get("index").getAsInt());
+				return resolved != null ? resolved : unresolved;
+			} catch (RuntimeException rte) {
+				return unresolved;
+			}
+		});
+	}
+
 	@Override
 	public CompletableFuture<List<? extends TextEdit>> formatting(DocumentFormattingParams params) {
 
@@ -305,8 +422,11 @@ public class C4TextDocumentService implements TextDocumentService {
 		}
 
 		try {
-			TextDocumentIdentifier documentId = new TextDocumentIdentifier(new File(uri).toURI().toURL().toString());
-			currentFuture.join();
+			File file = new File(uri);
+			TextDocumentIdentifier documentId = new TextDocumentIdentifier(file.toURI().toURL().toString());
+			// only the parse of this document's workspace is waited for
+			String root = documentRoots.get(file.getAbsolutePath());
+			diagnosticsScheduler.flush(root != null ? root : documentManager.findWorkspaceRoot(file)).join();
 			C4DocumentModel model = getDocument(documentId);
 			return (model != null && model.isValid()) ? gson.toJsonTree(model.calculateDecorations()) : null;
 		} catch (Exception e) {
@@ -315,30 +435,45 @@ public class C4TextDocumentService implements TextDocumentService {
 	}
 
 	public Workspace getWorkspace(String document) {
+		C4DocumentModel model = getValidModel(document);
+		return model != null ? model.getWorkspace() : null;
+	}
+
+	// Model of the document at the given path, null if it was not parsed successfully
+	public C4DocumentModel getValidModel(String document) {
 		try {
 			TextDocumentIdentifier documentId = new TextDocumentIdentifier(new File(document).toURI().toURL().toString());
 			C4DocumentModel model = getDocument(documentId);
-			return (model != null && model.isValid()) ? model.getWorkspace() : null;
+			return (model != null && model.isValid() && model.getWorkspace() != null) ? model : null;
 		} catch (Exception e) {
 			return null;
 		}
-	}	
+	}
 
 	@Override
 	public void didOpen(DidOpenTextDocumentParams params) {
 
 		String uri = params.getTextDocument().getUri();
 
-		logger.info("didOpen " + uri);
+		logger.info("didOpen {}", uri);
+
+		C4TextBuffer buffer = new C4TextBuffer(params.getTextDocument().getText());
+		openDocuments.put(uri, buffer);
 
 		if (uri.length() > 3 && uri.substring(uri.length() - 4).equalsIgnoreCase(".dsl")) {
-			currentFuture.cancel(false);
-			currentFuture = CompletableFuture.runAsync(() -> {
-				List<PublishDiagnosticsParams> diagnostics = getDiagnostics(uri, params.getTextDocument().getText());
-				diagnostics.forEach(d -> ls.getClient().publishDiagnostics(d));
-			}, diagnosticService);
+			// serve completion and tokens from the index until the file is parsed
+			try {
+				File file = uriToFile(uri);
+				documentManager.documentOpened(file);
+				// the index is read on the scheduler thread, before the debounced parse starts
+				C4TextBuffer.Text text = buffer.snapshot();
+				diagnosticsScheduler.execute(() -> documentManager.warmUp(file, text));
+			} catch (URISyntaxException e) {
+				logger.error("didOpen {}", e.getMessage());
+			}
+			scheduleDiagnostics(uri, params.getTextDocument().getVersion());
 		} else {
-			Custom.getInstance().didChange(uri, params.getTextDocument().getText());
+			Custom.getInstance().didChange(uri, buffer.getText());
 		}
 	}
 
@@ -346,70 +481,218 @@ public class C4TextDocumentService implements TextDocumentService {
 	public void didChange(DidChangeTextDocumentParams params) {
 		String uri = params.getTextDocument().getUri();
 
-		logger.info("didChange " + uri);
+		logger.info("didChange {}", uri);
+
+		// Incremental sync, the changes are applied to the buffer in the order they were made
+		C4TextBuffer buffer = openDocuments.get(uri);
+		if (buffer == null) {
+			// never opened or already closed, there is no text to apply the edits to
+			logger.warn("didChange {} ignored, document is not open", uri);
+			return;
+		}
+		buffer.apply(params.getContentChanges());
 
 		if (uri.length() > 3 && uri.substring(uri.length() - 4).equalsIgnoreCase(".dsl")) {
-			currentFuture.cancel(false);
-			currentFuture = CompletableFuture.runAsync(() -> {
-				getDiagnostics(uri, params.getContentChanges().get(0).getText())
-						.forEach(d -> ls.getClient().publishDiagnostics(d));
-			}, diagnosticService);
+			Integer version = params.getTextDocument().getVersion();
+			scheduleDiagnostics(uri, version != null ? version : 0);
 		} else {
-			Custom.getInstance().didChange(uri, params.getContentChanges().get(0).getText());
+			Custom.getInstance().didChange(uri, buffer.getText());
+		}
+	}
+
+	// Parses of the same workspace are coalesced, only the latest version of a document is parsed
+	private void scheduleDiagnostics(String uri, int version) {
+		documentVersions.put(uri, version);
+		String root = uri;
+		try {
+			// the same root for every edit of an open document, before and after its first parse
+			File file = uriToFile(uri);
+			root = documentRoots.computeIfAbsent(file.getAbsolutePath(), path -> documentManager.findWorkspaceRoot(file));
+		} catch (URISyntaxException e) {
+			logger.error("scheduleDiagnostics {}", e.getMessage());
+		}
+		diagnosticsScheduler.schedule(root, new C4DiagnosticsScheduler.Request(uri, version));
+	}
+
+	// Files changed on disk: cached texts are dropped and the workspaces depending on the
+	// files are parsed again in the background, before the user opens any of them
+	public void didChangeWatchedFiles(List<FileEvent> changes) {
+		Set<String> roots = new LinkedHashSet<>();
+		for (FileEvent change : changes) {
+			try {
+				roots.addAll(documentManager.fileChanged(uriToFile(change.getUri()), change.getType()));
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				logger.error("didChangeWatchedFiles {}", e.getMessage());
+			}
+		}
+		roots.forEach(this::reparse);
+	}
+
+	// A root with open documents is parsed through them, with their buffers: parsed from disk,
+	// it would replace their models with the text on disk and leave their diagnostics stale
+	private void reparse(String root) {
+		List<String> open = openDocuments.keySet().stream().filter(uri -> isPartOf(uri, root)).toList();
+		if (open.isEmpty()) {
+			diagnosticsScheduler.schedule(root, new C4DiagnosticsScheduler.Request(new File(root).toURI().toString(),
+					C4DiagnosticsScheduler.DISK_VERSION));
+		} else {
+			open.forEach(uri -> scheduleDiagnostics(uri, documentVersions.getOrDefault(uri, 0)));
+		}
+	}
+
+	private boolean isPartOf(String uri, String root) {
+		try {
+			File file = uriToFile(uri);
+			return root.equals(documentRoots.get(file.getAbsolutePath())) || documentManager.isPartOf(file, root);
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	public void setMemoryBudget(long bytes) {
+		documentManager.setMemoryBudget(bytes);
+	}
+
+	public List<C4MemoryBudget.ModelSize> getMemoryReport() {
+		return documentManager.getMemoryReport();
+	}
+
+	public C4MemoryBudget getMemoryBudget() {
+		return documentManager.getMemoryBudget();
+	}
+
+	// Recorded metrics with the current state of the diagnostics queue and the caches
+	public JsonObject metrics() {
+		JsonObject metrics = C4Metrics.getInstance().toJson();
+		JsonObject queue = metrics.getAsJsonObject("diagnosticsQueue");
+		queue.addProperty("pending", diagnosticsScheduler.getQueueDepth());
+		queue.addProperty("scheduled", diagnosticsScheduler.getScheduledCount());
+		queue.addProperty("skipped", diagnosticsScheduler.getSkippedCount());
+		queue.addProperty("parsed", diagnosticsScheduler.getParsedCount());
+		queue.addProperty("canceled", diagnosticsScheduler.getCanceledCount());
+		JsonObject parseCache = new JsonObject();
+		parseCache.addProperty("hits", documentManager.getParseCache().getHits());
+		parseCache.addProperty("misses", documentManager.getParseCache().getMisses());
+		parseCache.addProperty("size", documentManager.getParseCache().size());
+		metrics.add("parseCache", parseCache);
+		JsonObject sizes = new JsonObject();
+		sizes.addProperty("models", documentManager.getModelCount());
+		sizes.addProperty("fileContent", documentManager.getFileContentCount());
+		sizes.addProperty("fileContentChars", documentManager.getFileContentLength());
+		metrics.add("sizes", sizes);
+		return metrics;
+	}
+
+	public void setFileWatching(boolean fileWatching) {
+		documentManager.setFileWatching(fileWatching);
+	}
+
+	private void publishDiagnostics(C4DiagnosticsScheduler.Request request, CancelChecker cancelChecker) {
+		C4TextBuffer buffer = openDocuments.get(request.uri());
+		if (buffer == null) {
+			if (request.version() == C4DiagnosticsScheduler.DISK_VERSION) {
+				prewarm(request.uri(), cancelChecker);
+			}
+			// closed before its parse started
+			return;
 		}
+		getDiagnostics(request.uri(), buffer.snapshot(), cancelChecker).forEach(d -> ls.getClient().publishDiagnostics(d));
 	}
 
-	private List<PublishDiagnosticsParams> getDiagnostics(String uri, String content) {
+	// Parse a closed root as it is on disk, nothing is published for it. If one of its
+	// documents was opened since the change, that document is parsed with its buffer instead.
+	private void prewarm(String uri, CancelChecker cancelChecker) {
+		try {
+			File file = uriToFile(uri);
+			String root = file.getAbsolutePath();
+			if (openDocuments.keySet().stream().anyMatch(openUri -> isPartOf(openUri, root))) {
+				reparse(root);
+			} else if (file.isFile()) {
+				logger.info("Prewarm {}", uri);
+				documentManager.calcDiagnostics(file, Files.readString(file.toPath()), cancelChecker);
+			}
+		} catch (URISyntaxException | IOException e) {
+			logger.error("prewarm {}", e.getMessage());
+		}
+	}
+
+	private List<PublishDiagnosticsParams> getDiagnostics(String uri, C4TextBuffer.Text text, CancelChecker cancelChecker) {
 		
-		logger.info("--> getDiagnostics {}", changeCount++);
+		logger.info("--> getDiagnostics {}", changeCount.getAndIncrement());
 		try {
-			List<PublishDiagnosticsParams> diagnostics = documentManager.calcDiagnostics(uriToFile(uri), content);
-			Custom.getInstance().processWorkspace(documentManager.getLastParsedWorkspace());
+			List<PublishDiagnosticsParams> diagnostics = documentManager.calcDiagnostics(uriToFile(uri), text, cancelChecker,
+					Custom.getInstance()::processWorkspace);
+			// a canceled parse throws before, the code lenses only change with a committed parse
+			ls.getClient().refreshCodeLenses();
 			return diagnostics;
 		} catch (URISyntaxException e) {
 			logger.error("getDiagnostics {}", e.getMessage());
 			return Collections.emptyList();
 		}
 		finally {
-			ls.getClient().refreshCodeLenses();
 			logger.info("<-- getDiagnostics");
 		}
 	}
 
-	private Set<C4ObjectWithContext<Element>> getElements() {
-
-		logger.info("--> getElements");
+	private C4DocumentModel getDocument(TextDocumentIdentifier documentId) {
+		return getDocument(documentManager.getSnapshot(), documentId);
+	}
 
+	// Completion and semantic tokens may be served from the index of a file not parsed yet
+	private C4DocumentModel getIndexedDocument(C4DocumentSnapshot snapshot, TextDocumentIdentifier documentId) {
 		try {
-			return documentManager.getElements();
-		} catch (Exception e) {
-			return Collections.emptySet();
-		} finally {
-			logger.info("<-- getElements");
+			return documentManager.getDocumentOrIndexed(snapshot, documentId);
+		} catch (URISyntaxException e) {
+			return null;
 		}
 	}
 
-	private C4DocumentModel getDocument(TextDocumentIdentifier documentId) {
+	public void setWorkspaceFolder(File workspaceFolder) {
+		this.workspaceFolder = workspaceFolder;
+		setIndexEnabled(true);
+	}
+
+	// Index files are kept in the user cache, apart for every workspace folder, see C4IndexStore
+	public void setIndexEnabled(boolean enabled) {
+		if (!enabled || workspaceFolder == null) {
+			documentManager.setIndexStore(null);
+		} else if (documentManager.getIndexStore() == null) {
+			documentManager.setIndexStore(new C4IndexStore(C4IndexStore.cacheDirectory(workspaceFolder)));
+		}
+	}
 
-		logger.info("--> getDocument");
+	private C4DocumentModel getDocument(C4DocumentSnapshot snapshot, TextDocumentIdentifier documentId) {
+
+		logger.debug("--> getDocument");
 
 		try {
-			return documentManager.getDocument(documentId);
+			C4DocumentModel model = C4DocumentManager.getDocument(snapshot, documentId);
+			logger.debug("{} from snapshot {}", documentId.getUri(), snapshot.version());
+			return model;
 		} catch (URISyntaxException e) {
 			return null;
 		} finally {
-			logger.info("<-- getDocument");
+			logger.debug("<-- getDocument");
 		}
 	}
 
 	@Override
 	public void didClose(DidCloseTextDocumentParams params) {
-		logger.info("didClose " + params.getTextDocument().getUri());
+		logger.info("didClose {}", params.getTextDocument().getUri());
+		sentTokens.remove(params.getTextDocument().getUri());
+		openDocuments.remove(params.getTextDocument().getUri());
+		documentVersions.remove(params.getTextDocument().getUri());
+		try {
+			documentRoots.remove(uriToFile(params.getTextDocument().getUri()).getAbsolutePath());
+			documentManager.documentClosed(uriToFile(params.getTextDocument().getUri()));
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			logger.error("didClose {}", e.getMessage());
+		}
 	}
 
 	@Override
 	public void didSave(DidSaveTextDocumentParams params) {
-		logger.info("didSave " + params.getTextDocument().getUri());
+		logger.info("didSave {}", params.getTextDocument().getUri());
 	}
 
 	private File uriToFile(String uri) throws URISyntaxException {
@@ -20,11 +20,14 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import com.structurizr.Workspace;
-import com.structurizr.util.WorkspaceUtils;
 import com.structurizr.view.ModelView;
 import com.structurizr.view.ThemeUtils;
 import com.structurizr.view.View;
@@ -35,8 +38,13 @@ import ch.qos.logback.classic.PatternLayout;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
 import ru.beeatlas.c4.dto.RefreshOptions;
+import ru.beeatlas.c4.generator.C4Generator;
+import ru.beeatlas.c4.model.C4DocumentModel;
+import ru.beeatlas.c4.model.C4MemoryBudget;
+import ru.beeatlas.c4.utils.C4Events;
 import ru.beeatlas.c4.utils.C4Utils;
 import ru.beeatlas.c4.utils.ClientAppender;
+import ru.beeatlas.c4.utils.LayoutOverlay;
 import ru.beeatlas.c4.utils.MxReader;
 import ru.beeatlas.c4.utils.SVGReader;
 import ru.beeatlas.c4.commands.C4ExecuteCommandProvider;
@@ -109,12 +117,49 @@ public class C4WorkspaceService implements WorkspaceService {
         } else {
             if(log.isAttached(clientAppender)) {
                 logger.info("Stop logging...");
-                log.setLevel(Level.OFF);
                 log.detachAndStopAllAppenders();
             }
+            // disabled logging statements return before formatting anything
+            log.setLevel(Level.OFF);
         }
 	}
 
+	// Settings of the parse pipeline, all read from the client in one round trip
+	void updateSettings() {
+		List<ConfigurationItem> items = Stream.of("c4.languageserver.diagnostics.debounce",
+				"c4.languageserver.index.enabled", "c4.languageserver.memory.budget").map(section -> {
+					ConfigurationItem item = new ConfigurationItem();
+					item.setSection(section);
+					return item;
+				}).toList();
+		LanguageClient client = documentService.getServer().getClient();
+
+		List<Object> values = List.of();
+		try {
+			values = client.configuration(new ConfigurationParams(items)).get();
+		} catch (Exception e) {
+			logger.debug(e.getMessage());
+		}
+		documentService.getDiagnosticsScheduler().setDebounce(
+				setting(values, 0, C4DiagnosticsScheduler.DEFAULT_DEBOUNCE, JsonPrimitive::getAsLong));
+		documentService.setIndexEnabled(setting(values, 1, true, JsonPrimitive::getAsBoolean));
+		// megabytes
+		documentService.setMemoryBudget(
+				setting(values, 2, C4MemoryBudget.DEFAULT_BUDGET / (1024 * 1024), JsonPrimitive::getAsLong) * 1024 * 1024);
+	}
+
+	// Value of the setting at the index, the default if the client has none or a malformed one
+	private static <T> T setting(List<Object> values, int index, T defaultValue, Function<JsonPrimitive, T> converter) {
+		if (values != null && index < values.size() && values.get(index) instanceof JsonPrimitive value) {
+			try {
+				return converter.apply(value);
+			} catch (RuntimeException e) {
+				logger.debug(e.getMessage());
+			}
+		}
+		return defaultValue;
+	}
+
 	@Override
 	public void didChangeConfiguration(DidChangeConfigurationParams params) {
 		logger.info("didChangeConfiguration");
@@ -123,6 +168,7 @@ public class C4WorkspaceService implements WorkspaceService {
 	@Override
 	public void didChangeWatchedFiles(DidChangeWatchedFilesParams params) {
 		logger.info("didChangeWatchedFiles");
+		documentService.didChangeWatchedFiles(params.getChanges());
 	}
 
 	@Override
@@ -138,6 +184,7 @@ public class C4WorkspaceService implements WorkspaceService {
 			switch (params.getCommand()) {
 				case C4ExecuteCommandProvider.UPDATE_CONFIGURATION : {
 					toggleLog();
+					updateSettings();
 					String version = ((JsonObject) params.getArguments().get(0)).get("version").getAsJsonPrimitive().getAsString();
 					Custom.getInstance().setVersion(version);
 					Custom.getInstance().reinit();
@@ -149,13 +196,15 @@ public class C4WorkspaceService implements WorkspaceService {
 					return C4ExecuteCommandResult.TEXT_DECORATIONS.setResultData(decorations).toJson();
 				case C4ExecuteCommandProvider.REFRESH_PREVIEW: {
 					RefreshOptions refreshOptions = RefreshOptions.fromJson((JsonObject) params.getArguments().get(0));
-					Workspace workspace = documentService.getWorkspace(refreshOptions.document());
-					if(workspace == null) {
+					C4DocumentModel model = documentService.getValidModel(refreshOptions.document());
+					if(model == null) {
 						return C4ExecuteCommandResult.OK;
 					}
 					try {
-						String jsonContent = WorkspaceUtils.toJson(workspace, false);
-						return C4ExecuteCommandResult.OK.setMessage(jsonContent).toJson();
+						C4Generator.Payload payload = refreshOptions.scoped()
+								? C4Generator.viewPayload(model.getWorkspace(), model.getVersion(), refreshOptions.viewKey())
+								: C4Generator.payload(model.getWorkspace(), model.getVersion());
+						return reply(payload, refreshOptions);
 					} catch (Exception e) {
 						logger.error(e.getMessage());
 					}
@@ -184,61 +233,56 @@ public class C4WorkspaceService implements WorkspaceService {
 					}				
 					View view = workspace.getViews().getViewWithKey(refreshOptions.viewKey());
 					if (view != null && view instanceof ModelView modelView && modelView.getAutomaticLayout() != null) {
+						C4Events.Export event = C4Events.beginExport("dot", modelView.getKey(), C4Events.fileUri(refreshOptions.document()));
 						String dot = C4Utils.export2Dot(modelView);
+						event.commit();
 						return C4ExecuteCommandResult.OK.setMessage(dot).toJson();
 					}
 					return C4ExecuteCommandResult.OK;
 				}
 				case C4ExecuteCommandProvider.GET_JSON: {
 					RefreshOptions refreshOptions = RefreshOptions.fromJson((JsonObject) params.getArguments().get(0));
-					Workspace workspace = documentService.getWorkspace(refreshOptions.document());
-					if(workspace == null) {
+					C4DocumentModel model = documentService.getValidModel(refreshOptions.document());
+					if(model == null) {
 						return C4ExecuteCommandResult.OK;
 					}
-					String originalWorkspaceJson = "";
-					String renderedWorkspaceJson = "";
+					Workspace workspace = model.getWorkspace();
 					String viewKey = refreshOptions.viewKey();
 					try {
-						if (viewKey == null) {
-							// no view key - return workspace json as is
-							renderedWorkspaceJson = WorkspaceUtils.toJson(workspace, false);
-						} else {
-							View view = workspace.getViews().getViewWithKey(viewKey);
-							if(view != null && view instanceof ModelView modelView) {
-								if (refreshOptions.svg() != null) {
-									// autolayout from svg
-									// keep original workspace as json before applying
-									originalWorkspaceJson = WorkspaceUtils.toJson(workspace, false);
-									svgReader.parseAndApplyLayout(modelView, refreshOptions.svg());
-									renderedWorkspaceJson = WorkspaceUtils.toJson(workspace, false);
-								} else if (refreshOptions.mx() != null) {
-									// layout from drawio
-									// apply and return json
-									mxReader.parseAndApplyLayout(modelView, refreshOptions.mx());
-									renderedWorkspaceJson = WorkspaceUtils.toJson(workspace, false);
-								} else {
-									// no autolayout, no import layout from drawio
-									// return json
-									renderedWorkspaceJson = WorkspaceUtils.toJson(workspace, false);
-								}								
-							} else {
-								// no view to render - return workspace json as is
-								renderedWorkspaceJson = WorkspaceUtils.toJson(workspace, false);								
+						// layout from svg (autolayout) or drawio, applied to the JSON sent only
+						LayoutOverlay layout = null;
+						if (viewKey != null && workspace.getViews().getViewWithKey(viewKey) instanceof ModelView modelView) {
+							if (refreshOptions.svg() != null) {
+								C4Events.Layout event = C4Events.beginLayout("svg", viewKey, C4Events.fileUri(refreshOptions.document()));
+								layout = svgReader.parseLayout(modelView, refreshOptions.svg());
+								event.commit();
+							} else if (refreshOptions.mx() != null) {
+								C4Events.Layout event = C4Events.beginLayout("mx", viewKey, C4Events.fileUri(refreshOptions.document()));
+								layout = mxReader.parseLayout(modelView, refreshOptions.mx());
+								event.commit();
 							}
 						}
+						if (layout == null) {
+							// no layout to apply - workspace json as is
+							if (refreshOptions.scoped()) {
+								return reply(C4Generator.viewPayload(workspace, model.getVersion(), viewKey), refreshOptions);
+							}
+							if (refreshOptions.version() != null) {
+								return reply(C4Generator.payload(workspace, model.getVersion()), refreshOptions);
+							}
+							return C4ExecuteCommandResult.OK.setMessage(C4Generator.json(workspace, model.getVersion())).toJson();
+						}
+						JsonObject json = JsonParser.parseString(C4Generator.json(workspace, model.getVersion())).getAsJsonObject();
+						layout.applyTo(json);
+						if (refreshOptions.version() != null || refreshOptions.scoped()) {
+							return reply(refreshOptions.scoped() ? C4Generator.viewPayload(workspace, json, viewKey) : C4Generator.payload(json),
+									refreshOptions);
+						}
+						return C4ExecuteCommandResult.OK.setMessage(json.toString()).toJson();
 					} catch (Exception e) {
 						logger.error(e.getMessage());
-						return C4ExecuteCommandResult.OK;
 					}
-					if(!originalWorkspaceJson.isEmpty()) {
-						try {
-							// try to restore workspace to its original state (before applying autolayout)
-							Workspace originalWorkspace = WorkspaceUtils.fromJson(originalWorkspaceJson);
-							workspace.getViews().copyLayoutInformationFrom(originalWorkspace.getViews());	
-						} catch (Exception e) {
-						}
-					}
-					return C4ExecuteCommandResult.OK.setMessage(renderedWorkspaceJson).toJson();
+					return C4ExecuteCommandResult.OK;
 				}
 				case C4ExecuteCommandProvider.VIEW_2_MX: {
 					RefreshOptions refreshOptions = RefreshOptions.fromJson((JsonObject) params.getArguments().get(0));
@@ -246,6 +290,7 @@ public class C4WorkspaceService implements WorkspaceService {
 					if(workspace == null) {
 						return C4ExecuteCommandResult.OK;
 					}
+					C4Generator.invalidate(workspace);
 					try {
 						ThemeUtils.loadThemes(workspace);
 					} catch (Exception e) {
@@ -255,7 +300,9 @@ public class C4WorkspaceService implements WorkspaceService {
 					View view = workspace.getViews().getViewWithKey(refreshOptions.viewKey());
 					try {
 						if (view != null && view instanceof ModelView modelView) {
+							C4Events.Export event = C4Events.beginExport("mx", modelView.getKey(), C4Events.fileUri(refreshOptions.document()));
 							String content = C4Utils.export2Mx(modelView);
+							event.commit();
 							return C4ExecuteCommandResult.OK.setMessage(content).toJson();	
 						}
 					} catch (Exception e) {
@@ -271,10 +318,32 @@ public class C4WorkspaceService implements WorkspaceService {
 					Custom.getInstance().patternTelemetry(patternId, action);
 					return C4ExecuteCommandResult.OK;
 				}
+				case C4ExecuteCommandProvider.MEMORY_REPORT: {
+					// estimated bytes retained by every model, largest first
+					JsonObject report = new JsonObject();
+					report.addProperty("budget", documentService.getMemoryBudget().getBudget());
+					report.addProperty("evicted", documentService.getMemoryBudget().getEvictedCount());
+					report.add("models", new Gson().toJsonTree(documentService.getMemoryReport()));
+					return C4ExecuteCommandResult.OK.setMessage(report.toString()).toJson();
+				}
+				case C4ExecuteCommandProvider.METRICS:
+					// durations in milliseconds
+					return C4ExecuteCommandResult.OK.setMessage(documentService.metrics().toString()).toJson();
 				default:
 					return C4ExecuteCommandProvider.execute(params.getCommand(), params.getArguments(), null).toJson();
 			}
 		});
 
 	}
+
+	// The payload tagged with its version, or the version only if the client has the payload already.
+	// Built afresh, setMessage on the shared OK constant would race with the other commands.
+	private static JsonObject reply(C4Generator.Payload payload, RefreshOptions refreshOptions) {
+		boolean modified = !payload.version().equals(refreshOptions.version());
+		JsonObject reply = new JsonObject();
+		reply.addProperty("resultcode", (modified ? C4ExecuteCommandResult.OK : C4ExecuteCommandResult.NOT_MODIFIED).getResultCode());
+		reply.addProperty("message", modified ? payload.json() : "");
+		reply.addProperty("version", payload.version());
+		return reply;
+	}
 }
@@ -0,0 +1,186 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.utils;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import org.eclipse.lsp4j.CodeLensParams;
+import org.eclipse.lsp4j.ColorPresentationParams;
+import org.eclipse.lsp4j.DocumentColorParams;
+import org.eclipse.lsp4j.DocumentFormattingParams;
+import org.eclipse.lsp4j.ExecuteCommandParams;
+import org.eclipse.lsp4j.SemanticTokensDeltaParams;
+import org.eclipse.lsp4j.SemanticTokensParams;
+import org.eclipse.lsp4j.SemanticTokensRangeParams;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentPositionParams;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events of the server, recorded with
+ * -XX:StartFlightRecording or jcmd JFR.start. Every event carries the URI of the
+ * document and the version of the snapshot of parsed models it was based on, so
+ * that stalls can be matched with garbage collections and with each other.
+ * An event not enabled in the recording costs no more than its allocation.
+ */
+public class C4Events {
+
+    private static volatile LongSupplier snapshotVersion = () -> -1;
+
+    // the version of the models requests are served from
+    public static void setSnapshotVersion(LongSupplier supplier) {
+        snapshotVersion = supplier;
+    }
+
+    public static long snapshotVersion() {
+        return snapshotVersion.getAsLong();
+    }
+
+    @Category({ "C4", "Language Server" })
+    @StackTrace(false)
+    public abstract static class DocumentEvent extends Event {
+        @Label("Document URI")
+        public String uri;
+
+        @Label("Snapshot Version")
+        public long snapshotVersion;
+    }
+
+    @Name("ru.beeatlas.c4.Parse")
+    @Label("Document Parse")
+    @Description("Parse of a document by the Structurizr DSL parser, snapshot version it started from")
+    public static class Parse extends DocumentEvent {
+        @Label("Lines")
+        public int lines;
+
+        @Label("Elements")
+        public int elements;
+
+        @Label("Outcome")
+        public String outcome;
+    }
+
+    @Name("ru.beeatlas.c4.Request")
+    @Label("Request")
+    @Description("Request of the client from its arrival until its response is written")
+    public static class Request extends DocumentEvent {
+        @Label("Method")
+        public String method;
+    }
+
+    @Name("ru.beeatlas.c4.Export")
+    @Label("View Export")
+    @Description("Export of a view to DOT or draw.io")
+    public static class Export extends DocumentEvent {
+        @Label("Format")
+        public String format;
+
+        @Label("View Key")
+        public String viewKey;
+    }
+
+    @Name("ru.beeatlas.c4.Layout")
+    @Label("Layout Import")
+    @Description("Layout of a view read from SVG rendered by graphviz or from draw.io")
+    public static class Layout extends DocumentEvent {
+        @Label("Format")
+        public String format;
+
+        @Label("View Key")
+        public String viewKey;
+    }
+
+    public static Export beginExport(String format, String viewKey, String uri) {
+        Export event = new Export();
+        if (event.isEnabled()) {
+            event.format = format;
+            event.viewKey = viewKey;
+            event.uri = uri;
+            event.snapshotVersion = snapshotVersion();
+        }
+        event.begin();
+        return event;
+    }
+
+    public static Layout beginLayout(String format, String viewKey, String uri) {
+        Layout event = new Layout();
+        if (event.isEnabled()) {
+            event.format = format;
+            event.viewKey = viewKey;
+            event.uri = uri;
+            event.snapshotVersion = snapshotVersion();
+        }
+        event.begin();
+        return event;
+    }
+
+    public static Request beginRequest(String method, Object params) {
+        Request event = new Request();
+        if (event.isEnabled()) {
+            event.method = method;
+            event.uri = documentUri(params);
+            event.snapshotVersion = snapshotVersion();
+        }
+        event.begin();
+        return event;
+    }
+
+    // commands of the extension pass the path of the document in their options
+    public static String documentUri(Object params) {
+        TextDocumentIdentifier document = null;
+        if (params instanceof TextDocumentPositionParams p) {
+            document = p.getTextDocument();
+        } else if (params instanceof CodeLensParams p) {
+            document = p.getTextDocument();
+        } else if (params instanceof SemanticTokensParams p) {
+            document = p.getTextDocument();
+        } else if (params instanceof SemanticTokensDeltaParams p) {
+            document = p.getTextDocument();
+        } else if (params instanceof SemanticTokensRangeParams p) {
+            document = p.getTextDocument();
+        } else if (params instanceof DocumentFormattingParams p) {
+            document = p.getTextDocument();
+        } else if (params instanceof DocumentColorParams p) {
+            document = p.getTextDocument();
+        } else if (params instanceof ColorPresentationParams p) {
+            document = p.getTextDocument();
+        } else if (params instanceof ExecuteCommandParams p) {
+            List<Object> arguments = p.getArguments();
+            if (arguments != null && !arguments.isEmpty() && arguments.get(0) instanceof JsonObject options) {
+                JsonElement path = options.get("document");
+                return path != null && path.isJsonPrimitive() ? fileUri(path.getAsString()) : null;
+            }
+        }
+        return document != null ? document.getUri() : null;
+    }
+
+    public static String fileUri(String path) {
+        return path != null ? new File(path).toURI().toString() : null;
+    }
+
+}
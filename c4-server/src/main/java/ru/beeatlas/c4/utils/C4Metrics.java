@@ -0,0 +1,200 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.lsp4j.ExecuteCommandParams;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Live metrics of the server: parse durations, latencies of the requests of the
+ * client per method, depth of the diagnostics queue and hits of the layout cache.
+ * Recording is a few atomic increments, so it stays on in production.
+ */
+public class C4Metrics {
+
+    private static final C4Metrics INSTANCE = new C4Metrics();
+
+    /**
+     * Counts of values in power of two buckets: 0, 1, 2-3, 4-7 and so on. Percentiles
+     * are the upper bound of the bucket they fall into, at most twice the real value.
+     */
+    public static class Histogram {
+
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            value = Math.max(0, value);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public long percentile(double percentile) {
+            long rank = (long) Math.ceil(percentile / 100 * count.get());
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket == 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+
+        // values multiplied by scale, e.g. 0.001 to report microseconds as milliseconds
+        public JsonObject toJson(double scale) {
+            JsonObject json = new JsonObject();
+            long total = count.get();
+            json.addProperty("count", total);
+            json.addProperty("mean", total == 0 ? 0 : sum.get() * scale / total);
+            json.addProperty("p50", percentile(50) * scale);
+            json.addProperty("p95", percentile(95) * scale);
+            json.addProperty("p99", percentile(99) * scale);
+            json.addProperty("max", max.get() * scale);
+            JsonArray counts = new JsonArray();
+            for (int i = 0; i < BUCKETS; i++) {
+                long bucketCount = buckets.get(i);
+                if (bucketCount > 0) {
+                    JsonObject bucket = new JsonObject();
+                    bucket.addProperty("le", upperBound(i) * scale);
+                    bucket.addProperty("count", bucketCount);
+                    counts.add(bucket);
+                }
+            }
+            json.add("buckets", counts);
+            return json;
+        }
+    }
+
+    private record Started(String method, long nanos, C4Events.Request event) {
+    }
+
+    // durations in microseconds
+    private final Histogram parseTime = new Histogram();
+    private final Map<String, Histogram> requestTimes = new ConcurrentHashMap<>();
+    // requests waiting or being parsed whenever diagnostics are scheduled
+    private final Histogram diagnosticsQueue = new Histogram();
+    private final AtomicLong layoutHits = new AtomicLong();
+    private final AtomicLong layoutMisses = new AtomicLong();
+    // id of a request of the client -> when it arrived
+    private final Map<String, Started> started = new ConcurrentHashMap<>();
+
+    public static C4Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    public void recordParse(long nanos) {
+        parseTime.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordRequest(String method, long nanos) {
+        requestTimes.computeIfAbsent(method, m -> new Histogram()).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordQueueDepth(int depth) {
+        diagnosticsQueue.record(depth);
+    }
+
+    public void layoutHit() {
+        layoutHits.incrementAndGet();
+    }
+
+    public void layoutMiss() {
+        layoutMisses.incrementAndGet();
+    }
+
+    public Histogram getParseTime() {
+        return parseTime;
+    }
+
+    public Histogram getRequestTime(String method) {
+        return requestTimes.get(method);
+    }
+
+    /**
+     * Wraps the message consumers of a launcher: requests coming from the client are
+     * timed until their response is written, including the time spent queued.
+     */
+    public MessageConsumer timeRequests(MessageConsumer consumer) {
+        // incoming messages are consumed by the endpoint, outgoing ones by the stream
+        boolean incoming = consumer instanceof RemoteEndpoint;
+        return message -> {
+            if (incoming && message instanceof RequestMessage request) {
+                // commands differ too much to share a histogram
+                String method = request.getParams() instanceof ExecuteCommandParams command
+                        ? request.getMethod() + " " + command.getCommand()
+                        : request.getMethod();
+                started.put(request.getId(), new Started(method, System.nanoTime(),
+                        C4Events.beginRequest(method, request.getParams())));
+            } else if (!incoming && message instanceof ResponseMessage response && response.getId() != null) {
+                Started request = started.remove(response.getId());
+                if (request != null) {
+                    recordRequest(request.method(), System.nanoTime() - request.nanos());
+                    request.event().commit();
+                }
+            }
+            consumer.consume(message);
+        };
+    }
+
+    // durations in milliseconds
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.add("parse", parseTime.toJson(0.001));
+        JsonObject requests = new JsonObject();
+        new TreeMap<>(requestTimes).forEach((method, histogram) -> requests.add(method, histogram.toJson(0.001)));
+        json.add("requests", requests);
+        json.add("diagnosticsQueue", diagnosticsQueue.toJson(1));
+        JsonObject layouts = new JsonObject();
+        layouts.addProperty("hits", layoutHits.get());
+        layouts.addProperty("misses", layoutMisses.get());
+        json.add("layoutCache", layouts);
+        return json;
+    }
+
+}
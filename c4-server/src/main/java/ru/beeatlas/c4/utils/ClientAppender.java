@@ -16,14 +16,126 @@
 
 package ru.beeatlas.c4.utils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.MessageType;
 import org.eclipse.lsp4j.services.LanguageClient;
 
-import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+
+/**
+ * Sends the server log to the client. Logging threads only put the formatted line
+ * into a bounded ring buffer, lines are sent in batches as one logMessage notification
+ * per flush interval, so logging does not compete with responses on the connection.
+ * Once the buffer is full new lines are dropped and counted, the count is reported
+ * with the next batch. Detached from the logger the appender costs nothing.
+ */
+public class ClientAppender<E> extends UnsynchronizedAppenderBase<E> {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL = 250;
 
-public class ClientAppender<E> extends OutputStreamAppender<E> {
+    private Encoder<E> encoder;
+    private LanguageClient client;
+    private int capacity = DEFAULT_CAPACITY;
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    private BlockingQueue<String> lines;
+    private ScheduledExecutorService flusher;
+    private final AtomicLong droppedCount = new AtomicLong();
+    // dropped lines reported to the client so far
+    private long reportedDrops = 0;
 
     public void setClient(LanguageClient client) {
-        ClientOutputStream cos = new ClientOutputStream(client);
-        setOutputStream(cos);
+        this.client = client;
+    }
+
+    public void setEncoder(Encoder<E> encoder) {
+        this.encoder = encoder;
     }
+
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = Math.max(1, flushInterval);
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public void start() {
+        if (encoder == null || client == null) {
+            addError("No encoder or client set for the appender named \"" + name + "\".");
+            return;
+        }
+        if (!encoder.isStarted()) {
+            encoder.start();
+        }
+        lines = new ArrayBlockingQueue<>(capacity);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "c4-client-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(flushInterval, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // lines logged until the appender was stopped
+        flush();
+    }
+
+    @Override
+    protected void append(E event) {
+        String line = new String(encoder.encode(event), StandardCharsets.UTF_8);
+        if (!lines.offer(line)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    // Called by the flusher thread only, and once more after it is stopped
+    synchronized void flush() {
+        List<String> batch = new ArrayList<>();
+        lines.drainTo(batch);
+        long dropped = droppedCount.get();
+        if (dropped > reportedDrops) {
+            batch.add((dropped - reportedDrops) + " log lines dropped");
+            reportedDrops = dropped;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            client.logMessage(new MessageParams(MessageType.Log, String.join("\n", batch)));
+        } catch (RuntimeException e) {
+            // the connection is closing, nothing to log to
+        }
+    }
+
 }
@@ -0,0 +1,204 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.structurizr.view.Dimensions;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.PaperSize;
+import com.structurizr.view.RelationshipView;
+import com.structurizr.view.Vertex;
+
+/**
+ * Layout of one view as read from a graphviz SVG or a draw.io diagram, kept apart from
+ * the view. The readers start from the layout the view has and change the copy only, so
+ * the workspace shared by all requests is never changed. The layout is applied either
+ * to the view, or to the JSON of the workspace sent to the client.
+ */
+public class LayoutOverlay {
+
+    private final String viewKey;
+    // element id -> x, y
+    private final Map<String, int[]> elements = new HashMap<>();
+    // relationship id -> vertices as x, y pairs
+    private final Map<String, int[]> vertices = new HashMap<>();
+    private boolean pageChanged = false;
+    private PaperSize paperSize;
+    private Dimensions dimensions;
+
+    public LayoutOverlay(ModelView view) {
+        viewKey = view.getKey();
+        for (ElementView elementView : view.getElements()) {
+            elements.put(elementView.getId(), new int[] { elementView.getX(), elementView.getY() });
+        }
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            vertices.put(relationshipView.getId(), pairs(relationshipView.getVertices()));
+        }
+    }
+
+    public String getViewKey() {
+        return viewKey;
+    }
+
+    public int getX(String elementId) {
+        return elements.get(elementId)[0];
+    }
+
+    public int getY(String elementId) {
+        return elements.get(elementId)[1];
+    }
+
+    public void setPosition(String elementId, int x, int y) {
+        elements.put(elementId, new int[] { x, y });
+    }
+
+    public void setVertices(String relationshipId, Collection<Vertex> vertices) {
+        this.vertices.put(relationshipId, pairs(vertices));
+    }
+
+    public void setPage(PaperSize paperSize, Dimensions dimensions) {
+        this.pageChanged = true;
+        this.paperSize = paperSize;
+        this.dimensions = dimensions;
+    }
+
+    // Move every element and vertex
+    public void translate(int deltaX, int deltaY) {
+        for (int[] position : elements.values()) {
+            position[0] += deltaX;
+            position[1] += deltaY;
+        }
+        for (int[] pairs : vertices.values()) {
+            for (int i = 0; i < pairs.length; i += 2) {
+                pairs[i] += deltaX;
+                pairs[i + 1] += deltaY;
+            }
+        }
+    }
+
+    public void applyTo(ModelView view) {
+        for (ElementView elementView : view.getElements()) {
+            int[] position = elements.get(elementView.getId());
+            if (position != null) {
+                elementView.setX(position[0]);
+                elementView.setY(position[1]);
+            }
+        }
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            int[] pairs = vertices.get(relationshipView.getId());
+            if (pairs != null) {
+                List<Vertex> list = new ArrayList<>(pairs.length / 2);
+                for (int i = 0; i < pairs.length; i += 2) {
+                    list.add(new Vertex(pairs[i], pairs[i + 1]));
+                }
+                relationshipView.setVertices(list);
+            }
+        }
+        if (pageChanged) {
+            view.setPaperSize(paperSize);
+            view.setDimensions(dimensions);
+        }
+    }
+
+    // Apply to the view of the same key in the JSON of a workspace, as the workspace would be written
+    public void applyTo(JsonObject workspace) {
+        if (!(workspace.get("views") instanceof JsonObject views)) {
+            return;
+        }
+        for (Map.Entry<String, JsonElement> entry : views.entrySet()) {
+            if (!(entry.getValue() instanceof JsonArray array)) {
+                continue;
+            }
+            for (JsonElement element : array) {
+                if (element instanceof JsonObject view && view.has("key")
+                        && viewKey.equals(view.get("key").getAsString())) {
+                    applyToView(view);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void applyToView(JsonObject view) {
+        if (view.get("elements") instanceof JsonArray array) {
+            for (JsonElement element : array) {
+                JsonObject elementView = element.getAsJsonObject();
+                int[] position = elements.get(elementView.get("id").getAsString());
+                if (position != null) {
+                    elementView.addProperty("x", position[0]);
+                    elementView.addProperty("y", position[1]);
+                }
+            }
+        }
+        if (view.get("relationships") instanceof JsonArray array) {
+            for (JsonElement element : array) {
+                JsonObject relationshipView = element.getAsJsonObject();
+                int[] pairs = vertices.get(relationshipView.get("id").getAsString());
+                if (pairs == null) {
+                    continue;
+                }
+                if (pairs.length == 0) {
+                    relationshipView.remove("vertices");
+                    continue;
+                }
+                JsonArray list = new JsonArray(pairs.length / 2);
+                for (int i = 0; i < pairs.length; i += 2) {
+                    JsonObject vertex = new JsonObject();
+                    vertex.addProperty("x", pairs[i]);
+                    vertex.addProperty("y", pairs[i + 1]);
+                    list.add(vertex);
+                }
+                relationshipView.add("vertices", list);
+            }
+        }
+        if (pageChanged) {
+            if (paperSize != null) {
+                view.addProperty("paperSize", paperSize.name());
+            } else {
+                view.remove("paperSize");
+            }
+            if (dimensions != null) {
+                JsonObject size = new JsonObject();
+                size.addProperty("width", dimensions.getWidth());
+                size.addProperty("height", dimensions.getHeight());
+                view.add("dimensions", size);
+            } else {
+                view.remove("dimensions");
+            }
+        }
+    }
+
+    private static int[] pairs(Collection<Vertex> vertices) {
+        int[] pairs = new int[2 * vertices.size()];
+        int i = 0;
+        for (Vertex vertex : vertices) {
+            pairs[i++] = vertex.getX();
+            pairs[i++] = vertex.getY();
+        }
+        return pairs;
+    }
+
+}
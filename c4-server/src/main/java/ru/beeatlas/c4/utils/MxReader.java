@@ -48,7 +48,13 @@ public class MxReader {
     }
 
     public void parseAndApplyLayout(ModelView view, String mx) throws Exception {
+        parseLayout(view, mx).applyTo(view);
+    }
+
+    // The layout of the view with the positions from the diagram, the view is left as it is
+    public LayoutOverlay parseLayout(ModelView view, String mx) throws Exception {
 
+        LayoutOverlay layout = new LayoutOverlay(view);
         InputStream inputStream = new ByteArrayInputStream(mx.getBytes());
         DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
         builderFactory.setNamespaceAware(false);
@@ -85,18 +91,19 @@ public class MxReader {
                 double x = Double.parseDouble(xs) + transformX;
                 double y = Double.parseDouble(ys) + transformY;
 
-                elementView.setX((int) (x));
-                elementView.setY((int) (y));
+                layout.setPosition(elementView.getId(), (int) (x), (int) (y));
             }
 
-            minimumX = Math.min(elementView.getX(), minimumX);
-            minimumY = Math.min(elementView.getY(), minimumY);
+            int elementX = layout.getX(elementView.getId());
+            int elementY = layout.getY(elementView.getId());
+            minimumX = Math.min(elementX, minimumX);
+            minimumY = Math.min(elementY, minimumY);
 
             ElementStyle style = view.getViewSet().getConfiguration().getStyles()
                      .findElementStyle(view.getModel().getElement(elementView.getId()));
 
-            maximumX = Math.max(elementView.getX() + style.getWidth(), maximumX);
-            maximumY = Math.max(elementView.getY() + style.getHeight(), maximumY);
+            maximumX = Math.max(elementX + style.getWidth(), maximumX);
+            maximumY = Math.max(elementY + style.getHeight(), maximumY);
         }
 
         for (RelationshipView relationshipView : view.getRelationships()) {
@@ -115,53 +122,31 @@ public class MxReader {
                 Vertex vertex = new Vertex((int) (x), (int) (y));
                 vertices.add(vertex);
             }
-            relationshipView.setVertices(vertices);
+            layout.setVertices(relationshipView.getId(), vertices);
         }
 
         int pageWidth = Math.max(margin, maximumX + margin);
         int pageHeight = Math.max(margin, maximumY + margin);
 
         if (changePaperSize) {
-            view.setPaperSize(null);
-            view.setDimensions(new Dimensions(pageWidth, pageHeight));
-
+            PaperSize pagePaperSize = null;
             PaperSize.Orientation orientation = (pageWidth > pageHeight) ? PaperSize.Orientation.Landscape
                     : PaperSize.Orientation.Portrait;
             for (PaperSize paperSize : PaperSize.getOrderedPaperSizes(orientation)) {
                 if (paperSize.getWidth() > (pageWidth) && paperSize.getHeight() > (pageHeight)) {
-                    view.setPaperSize(paperSize);
+                    pagePaperSize = paperSize;
                     break;
                 }
             }
+            layout.setPage(pagePaperSize, new Dimensions(pageWidth, pageHeight));
         }
 
         int deltaX = (pageWidth - maximumX + minimumX) / 2;
         int deltaY = (pageHeight - maximumY + minimumY) / 2;
 
-        // move everything relative to 0,0
-        for (ElementView elementView : view.getElements()) {
-            elementView.setX(elementView.getX() - minimumX);
-            elementView.setY(elementView.getY() - minimumY);
-        }
-        for (RelationshipView relationshipView : view.getRelationships()) {
-            for (Vertex vertex : relationshipView.getVertices()) {
-                vertex.setX(vertex.getX() - minimumX);
-                vertex.setY(vertex.getY() - minimumY);
-            }
-        }
-
-        // and now centre everything
-        for (ElementView elementView : view.getElements()) {
-            elementView.setX(elementView.getX() + deltaX);
-            elementView.setY(elementView.getY() + deltaY);
-        }
-        for (RelationshipView relationshipView : view.getRelationships()) {
-            for (Vertex vertex : relationshipView.getVertices()) {
-                vertex.setX(vertex.getX() + deltaX);
-                vertex.setY(vertex.getY() + deltaY);
-            }
-        }
-
+        // move everything relative to 0,0 and centre it
+        layout.translate(deltaX - minimumX, deltaY - minimumY);
+        return layout;
     }
 
     private int getElementWidth(ModelView view, String elementId) {
@@ -17,27 +17,35 @@
 package ru.beeatlas.c4.utils;
 
 import com.structurizr.model.DeploymentNode;
-import com.structurizr.model.Element;
 import com.structurizr.view.*;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Parses an SVG file created by graphviz, extracts the layout information, and applies it to a Structurizr view.
+ * The SVG is read in one streaming pass, the shapes of the nodes and edges are collected by the id of their
+ * group and looked up for every element and relationship of the view afterwards.
  */
 public class SVGReader {
 
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    // /svg/g[@class="graph"]/@transform, and the first polygon and path of every /svg/g/g by its id
+    private record Shapes(String transform, Map<String, String> polygons, Map<String, String> paths,
+            List<String> clusters) {
+    }
+
     private final int margin;
     private final boolean changePaperSize;
 
@@ -47,22 +55,18 @@ public class SVGReader {
     }
 
     public void parseAndApplyLayout(ModelView view, String svg) throws Exception {
+        parseLayout(view, svg).applyTo(view);
+    }
+
+    // The layout of the view with the positions from the SVG, the view is left as it is
+    public LayoutOverlay parseLayout(ModelView view, String svg) throws Exception {
 
-        InputStream inputStream = new ByteArrayInputStream(svg.getBytes());
-        DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-        builderFactory.setNamespaceAware(false);
-        builderFactory.setValidating(false);
-        builderFactory.setFeature("http://xml.org/sax/features/namespaces", false);
-        builderFactory.setFeature("http://xml.org/sax/features/validation", false);
-        builderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
-        builderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-
-        DocumentBuilder builder = builderFactory.newDocumentBuilder();
-        Document xmlDocument = builder.parse(inputStream);
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        NodeList nodeList = (NodeList) xPath.compile("/svg/g[@class=\"graph\"]").evaluate(xmlDocument,
-                XPathConstants.NODESET);
-        String transform = nodeList.item(0).getAttributes().getNamedItem("transform").getNodeValue();
+        LayoutOverlay layout = new LayoutOverlay(view);
+        Shapes shapes = read(svg);
+        String transform = shapes.transform();
+        if (transform == null) {
+            throw new IllegalArgumentException("No graph with a transform in the SVG");
+        }
         String translate = transform.substring(transform.indexOf("translate"));
         String numbers = translate.substring(translate.indexOf("(") + 1, translate.indexOf(")"));
         int transformX = (int) Double.parseDouble(numbers.split(" ")[0]);
@@ -79,46 +83,43 @@ public class SVGReader {
                 continue;
             }
 
-            String expression = String.format("/svg/g/g[@id=\"%s\"]/polygon", elementView.getId());
-            nodeList = (NodeList) xPath.compile(expression).evaluate(xmlDocument, XPathConstants.NODESET);
-            if (nodeList.getLength() == 0) {
+            String pointsAsString = shapes.polygons().get(elementView.getId());
+            if (pointsAsString == null) {
                 continue;
             }
 
-            String pointsAsString = nodeList.item(0).getAttributes().getNamedItem("points").getNodeValue();
             String[] points = pointsAsString.split(" ");
             String[] coordinates = points[1].split(",");
 
             double x = Double.parseDouble(coordinates[0]) + transformX;
             double y = Double.parseDouble(coordinates[1]) + transformY;
 
-            elementView.setX((int) (x * Constants.DPI_RATIO));
-            elementView.setY((int) (y * Constants.DPI_RATIO));
+            int elementX = (int) (x * Constants.DPI_RATIO);
+            int elementY = (int) (y * Constants.DPI_RATIO);
+            layout.setPosition(elementView.getId(), elementX, elementY);
 
-            minimumX = Math.min(elementView.getX(), minimumX);
-            minimumY = Math.min(elementView.getY(), minimumY);
+            minimumX = Math.min(elementX, minimumX);
+            minimumY = Math.min(elementY, minimumY);
 
             ElementStyle style = view.getViewSet().getConfiguration().getStyles()
                     .findElementStyle(view.getModel().getElement(elementView.getId()));
 
-            maximumX = Math.max(elementView.getX() + style.getWidth(), maximumX);
-            maximumY = Math.max(elementView.getY() + style.getHeight(), maximumY);
+            maximumX = Math.max(elementX + style.getWidth(), maximumX);
+            maximumY = Math.max(elementY + style.getHeight(), maximumY);
         }
 
         for (RelationshipView relationshipView : view.getRelationships()) {
-            String expression = String.format("/svg/g/g[@id=\"%s\"]/path", relationshipView.getId());
-            nodeList = (NodeList) xPath.compile(expression).evaluate(xmlDocument, XPathConstants.NODESET);
-            if (nodeList.getLength() == 0) {
+            String dAsString = shapes.paths().get(relationshipView.getId());
+            if (dAsString == null) {
                 continue;
             }
 
-            String dAsString = nodeList.item(0).getAttributes().getNamedItem("d").getNodeValue();
             String[] d = dAsString.split(" ");
 
             Set<Vertex> vertices = new LinkedHashSet<>();
 
             if (d.length == 3) {
-                relationshipView.setVertices(vertices);
+                layout.setVertices(relationshipView.getId(), vertices);
             } else {
                 for (int i = 1; i < d.length - 2; i++) {
                     double x = Double.parseDouble(d[i].split(",")[0]) + transformX;
@@ -131,15 +132,13 @@ public class SVGReader {
                     maximumX = Math.max(vertex.getX(), maximumX);
                     maximumY = Math.max(vertex.getY(), maximumY);
                 }
-                relationshipView.setVertices(vertices);
+                layout.setVertices(relationshipView.getId(), vertices);
             }
         }
 
         // also take into account any clusters that might be rendered outside the nodes
-        String expression = "/svg/g/g[@class=\"cluster\"]/polygon";
-        nodeList = (NodeList) xPath.compile(expression).evaluate(xmlDocument, XPathConstants.NODESET);
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            String[] points = nodeList.item(i).getAttributes().getNamedItem("points").getNodeValue().split(" ");
+        for (String cluster : shapes.clusters()) {
+            String[] points = cluster.split(" ");
             for (String point : points) {
                 int x = (int) ((Double.parseDouble(point.split(",")[0]) + transformX) * Constants.DPI_RATIO);
                 int y = (int) ((Double.parseDouble(point.split(",")[1]) + transformY) * Constants.DPI_RATIO);
@@ -155,56 +154,98 @@ public class SVGReader {
         int pageHeight = Math.max(margin, maximumY + margin);
 
         if (changePaperSize) {
-            view.setPaperSize(null);
-            view.setDimensions(new Dimensions(pageWidth, pageHeight));
-
+            PaperSize pagePaperSize = null;
             PaperSize.Orientation orientation = (pageWidth > pageHeight) ? PaperSize.Orientation.Landscape
                     : PaperSize.Orientation.Portrait;
             for (PaperSize paperSize : PaperSize.getOrderedPaperSizes(orientation)) {
                 if (paperSize.getWidth() > (pageWidth) && paperSize.getHeight() > (pageHeight)) {
-                    view.setPaperSize(paperSize);
+                    pagePaperSize = paperSize;
                     break;
                 }
             }
+            layout.setPage(pagePaperSize, new Dimensions(pageWidth, pageHeight));
         }
 
         int deltaX = (pageWidth - maximumX + minimumX) / 2;
         int deltaY = (pageHeight - maximumY + minimumY) / 2;
 
-        // move everything relative to 0,0
-        for (ElementView elementView : view.getElements()) {
-            elementView.setX(elementView.getX() - minimumX);
-            elementView.setY(elementView.getY() - minimumY);
-        }
-        for (RelationshipView relationshipView : view.getRelationships()) {
-            for (Vertex vertex : relationshipView.getVertices()) {
-                vertex.setX(vertex.getX() - minimumX);
-                vertex.setY(vertex.getY() - minimumY);
-            }
-        }
+        // move everything relative to 0,0 and centre it
+        layout.translate(deltaX - minimumX, deltaY - minimumY);
+        return layout;
+    }
 
-        // and now centre everything
-        for (ElementView elementView : view.getElements()) {
-            elementView.setX(elementView.getX() + deltaX);
-            elementView.setY(elementView.getY() + deltaY);
-        }
-        for (RelationshipView relationshipView : view.getRelationships()) {
-            for (Vertex vertex : relationshipView.getVertices()) {
-                vertex.setX(vertex.getX() + deltaX);
-                vertex.setY(vertex.getY() + deltaY);
+    // One pass over the SVG, keeping the attributes the layout is read from
+    private static Shapes read(String svg) throws XMLStreamException {
+        String transform = null;
+        Map<String, String> polygons = new HashMap<>();
+        Map<String, String> paths = new HashMap<>();
+        List<String> clusters = new ArrayList<>();
+        // names of the open elements down to the shapes of a group
+        String[] open = new String[4];
+        int depth = 0;
+        String groupId = null;
+        boolean cluster = false;
+
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(svg));
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                depth++;
+                if (depth > open.length) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                open[depth - 1] = name;
+                if (depth == 1 || !"svg".equals(open[0])) {
+                    continue;
+                }
+                if (depth == 2) {
+                    if ("g".equals(name) && transform == null && "graph".equals(reader.getAttributeValue(null, "class"))) {
+                        transform = reader.getAttributeValue(null, "transform");
+                    }
+                } else if (depth == 3) {
+                    boolean group = "g".equals(name) && "g".equals(open[1]);
+                    groupId = group ? reader.getAttributeValue(null, "id") : null;
+                    cluster = group && "cluster".equals(reader.getAttributeValue(null, "class"));
+                } else if (groupId != null || cluster) {
+                    if ("polygon".equals(name)) {
+                        String points = reader.getAttributeValue(null, "points");
+                        if (points != null) {
+                            if (groupId != null) {
+                                polygons.putIfAbsent(groupId, points);
+                            }
+                            if (cluster) {
+                                clusters.add(points);
+                            }
+                        }
+                    } else if ("path".equals(name) && groupId != null) {
+                        String d = reader.getAttributeValue(null, "d");
+                        if (d != null) {
+                            paths.putIfAbsent(groupId, d);
+                        }
+                    }
+                }
             }
+        } finally {
+            reader.close();
         }
-
-    }
-
-    private int getElementWidth(ModelView view, String elementId) {
-        Element element = view.getModel().getElement(elementId);
-        return view.getViewSet().getConfiguration().getStyles().findElementStyle(element).getWidth();
+        return new Shapes(transform, polygons, paths, clusters);
     }
 
-    private int getElementHeight(ModelView view, String elementId) {
-        Element element = view.getModel().getElement(elementId);
-        return view.getViewSet().getConfiguration().getStyles().findElementStyle(element).getHeight();
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // graphviz declares the SVG 1.1 DTD, it is neither loaded nor validated against
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+        return factory;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.CompletionItem;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextEdit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.structurizr.view.ModelView;
+
+import ru.beeatlas.c4.model.C4DocumentManager;
+import ru.beeatlas.c4.model.C4DocumentModel;
+import ru.beeatlas.c4.model.C4TokensLoader;
+import ru.beeatlas.c4.provider.C4CompletionProvider;
+import ru.beeatlas.c4.provider.C4FormatterProvider;
+import ru.beeatlas.c4.provider.C4SemanticTokenProvider;
+import ru.beeatlas.c4.utils.C4Utils;
+import ru.beeatlas.c4.utils.MxReader;
+import ru.beeatlas.c4.utils.SVGReader;
+
+/**
+ * The requests a client sends while editing, on a seeded synthetic workspace: diagnostics
+ * after an edit of a fragment, completion, semantic tokens and formatting of that fragment,
+ * and export and layout of the system landscape view. Run with -p to change the shape.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotPathsBenchmark {
+
+    @Param({ "42" })
+    long seed;
+
+    @Param({ "1000" })
+    int elements;
+
+    @Param({ "2000" })
+    int relationships;
+
+    @Param({ "20" })
+    int includes;
+
+    @Param({ "10" })
+    int views;
+
+    SyntheticWorkspace workspace;
+    C4DocumentManager documentManager;
+    File fragment;
+    String fragmentContent;
+    int revision = 0;
+    C4DocumentModel model;
+    List<C4SemanticTokenProvider.Token> tokens;
+    // cursor on the first container line, inside a software system
+    Position position = new Position(1, 4);
+    C4CompletionProvider completionProvider;
+    C4FormatterProvider formatterProvider;
+    ModelView view;
+    String svg;
+    String mx;
+    SVGReader svgReader = new SVGReader(400, true);
+    MxReader mxReader = new MxReader(400, true);
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        SyntheticWorkspace.quietLogging();
+        workspace = SyntheticWorkspace.createSeeded(seed, elements, relationships, includes, views);
+        documentManager = IncludeGraphBenchmark.bind(new C4DocumentManager());
+        documentManager.calcDiagnostics(workspace.root(), workspace.read(workspace.root()));
+        fragment = workspace.fragments().isEmpty() ? workspace.root() : workspace.fragments().get(0);
+        fragmentContent = workspace.read(fragment);
+        model = documentManager.getDocument(new TextDocumentIdentifier(fragment.toURI().toString()));
+        tokens = model.getSemanticTokens();
+        completionProvider = new C4CompletionProvider(new C4TokensLoader());
+        formatterProvider = new C4FormatterProvider(4);
+        view = (ModelView) model.getWorkspace().getViews().getViewWithKey("landscape");
+        svg = SyntheticWorkspace.svg(view, seed);
+        // the view is exported to draw.io once laid out, with its dimensions set
+        svgReader.parseAndApplyLayout(view, svg);
+        mx = C4Utils.export2Mx(view);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        workspace.delete();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<PublishDiagnosticsParams> calcDiagnostics() {
+        return documentManager.calcDiagnostics(fragment, fragmentContent + "// revision " + (revision++) + "\n");
+    }
+
+    @Benchmark
+    public List<CompletionItem> calcCompletions() {
+        return completionProvider.calcCompletions(model, position, documentManager.getElements(fragment));
+    }
+
+    // the tokens of a parse encoded anew, the model itself keeps the encoding of its snapshot
+    @Benchmark
+    public C4SemanticTokenProvider.EncodedTokens encodeTokens() {
+        return C4SemanticTokenProvider.encode(tokens);
+    }
+
+    @Benchmark
+    public List<TextEdit> format() {
+        return formatterProvider.calculateFormattedTextEdits(model);
+    }
+
+    @Benchmark
+    public String export2Dot() {
+        return C4Utils.export2Dot(view);
+    }
+
+    @Benchmark
+    public String export2Mx() {
+        return C4Utils.export2Mx(view);
+    }
+
+    @Benchmark
+    public ModelView svgLayout() throws Exception {
+        svgReader.parseAndApplyLayout(view, svg);
+        return view;
+    }
+
+    @Benchmark
+    public ModelView mxLayout() throws Exception {
+        mxReader.parseAndApplyLayout(view, mx);
+        return view;
+    }
+
+}
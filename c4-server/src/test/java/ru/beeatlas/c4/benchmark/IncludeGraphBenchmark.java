@@ -0,0 +1,146 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+
+import ru.beeatlas.c4.intercept.InterceptParserAspect;
+import ru.beeatlas.c4.intercept.StructurizrDslParserListener;
+import ru.beeatlas.c4.model.C4DocumentManager;
+
+import static org.aspectj.lang.Aspects.*;
+
+/**
+ * Editing a leaf fragment of a large include tree: a manager which already knows the
+ * include graph against a fresh one, which has to discover the workspace on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IncludeGraphBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Tree {
+
+        @Param({ "50", "300" })
+        int files;
+
+        SyntheticWorkspace workspace;
+        File leaf;
+        String leafContent;
+        String edited;
+        int revision = 0;
+
+        @Setup(Level.Trial)
+        public void generate() throws IOException {
+            SyntheticWorkspace.quietLogging();
+            workspace = SyntheticWorkspace.create(files, 20);
+            leaf = workspace.fragments().get(0);
+            leafContent = workspace.read(leaf);
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            workspace.delete();
+        }
+
+        // The edit is saved as well, the parser reads the included leaf from disk
+        @Setup(Level.Invocation)
+        public void edit() throws IOException {
+            edited = leafContent + "// revision " + (revision++) + "\n";
+            Files.writeString(leaf.toPath(), edited);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class KnownGraph {
+
+        C4DocumentManager documentManager;
+
+        @Setup(Level.Trial)
+        public void prime(Tree tree) throws IOException {
+            documentManager = bind(new C4DocumentManager());
+            documentManager.calcDiagnostics(tree.workspace.root(), tree.workspace.read(tree.workspace.root()));
+        }
+
+        @Setup(Level.Invocation)
+        public void rebind() {
+            bind(documentManager);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class UnknownGraph {
+
+        C4DocumentManager documentManager;
+
+        @Setup(Level.Invocation)
+        public void create() {
+            documentManager = bind(new C4DocumentManager());
+        }
+    }
+
+    static C4DocumentManager bind(C4DocumentManager documentManager) {
+        Module module = new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                bind(StructurizrDslParserListener.class).toInstance(documentManager);
+                requestInjection(aspectOf(InterceptParserAspect.class));
+            }
+
+        };
+        Guice.createInjector(module);
+        return documentManager;
+    }
+
+    @Benchmark
+    public List<PublishDiagnosticsParams> editWithIncludeGraph(Tree tree, KnownGraph state) {
+        return state.documentManager.calcDiagnostics(tree.leaf, tree.edited);
+    }
+
+    @Benchmark
+    public List<PublishDiagnosticsParams> editWithoutIncludeGraph(Tree tree, UnknownGraph state) {
+        return state.documentManager.calcDiagnostics(tree.leaf, tree.edited);
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.benchmark;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.beeatlas.c4.model.C4DocumentManager;
+import ru.beeatlas.c4.model.C4DocumentModel;
+import ru.beeatlas.c4.model.C4DocumentModel.C4CompletionScope;
+
+/**
+ * Scope lookups on a parsed document: scanning and sorting the scope list on every
+ * call (as done before the line to scope tables) against the tables of the model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScopeLookupBenchmark {
+
+    @Param({ "10000" })
+    int lines;
+
+    SyntheticWorkspace workspace;
+    C4DocumentModel model;
+    List<C4CompletionScope> scopes;
+    int lineCount;
+    int line = 0;
+
+    @Setup
+    public void parse() throws IOException, URISyntaxException {
+        SyntheticWorkspace.quietLogging();
+        workspace = SyntheticWorkspace.createDocument(lines);
+        C4DocumentManager documentManager = IncludeGraphBenchmark.bind(new C4DocumentManager());
+        documentManager.calcDiagnostics(workspace.root(), workspace.read(workspace.root()));
+        model = documentManager.getDocument(new TextDocumentIdentifier(workspace.root().toURI().toString()));
+        scopes = model.getScopes();
+        lineCount = model.getRawLines().size();
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        workspace.delete();
+    }
+
+    private int nextLine() {
+        line = (line + 7919) % lineCount;
+        return line;
+    }
+
+    @Benchmark
+    public String surroundingScan() {
+        return scanSurroundingScope(scopes, nextLine());
+    }
+
+    @Benchmark
+    public String surroundingTable() {
+        return model.getSurroundingScope(nextLine());
+    }
+
+    @Benchmark
+    public Optional<C4CompletionScope> nearestScan() {
+        return scanNearestScope(scopes, nextLine());
+    }
+
+    @Benchmark
+    public Optional<C4CompletionScope> nearestTable() {
+        return model.getNearestScope(nextLine());
+    }
+
+    // Former C4DocumentModel.getSurroundingScope
+    static String scanSurroundingScope(List<C4CompletionScope> scopes, int lineNumber) {
+        final int adjustedLineNumber = lineNumber + 1;
+        Optional<C4CompletionScope> nearestScope = scopes.parallelStream()
+                .filter(scope -> scope.start() < adjustedLineNumber && (scope.end() > adjustedLineNumber
+                        || scope.end() == C4CompletionScope.SCOPE_NOT_CLOSED))
+                .sorted(Comparator.comparingInt(C4CompletionScope::start).reversed())
+                .findFirst();
+
+        return nearestScope.map(C4CompletionScope::name).orElse(C4DocumentModel.NO_SCOPE);
+    }
+
+    // Former C4DocumentModel.getNearestScope
+    static Optional<C4CompletionScope> scanNearestScope(List<C4CompletionScope> scopes, int lineNumber) {
+        final int adjustedLineNumber = lineNumber + 1;
+
+        return scopes.stream()
+                .filter(scope -> !scope.name().equals("CommentDslContext"))
+                .filter(scope -> scope.start() <= adjustedLineNumber
+                        && (scope.end() >= adjustedLineNumber
+                                || scope.end() == C4CompletionScope.SCOPE_NOT_CLOSED))
+                .sorted(Comparator.comparingInt(C4CompletionScope::start).reversed())
+                .findFirst();
+    }
+
+}
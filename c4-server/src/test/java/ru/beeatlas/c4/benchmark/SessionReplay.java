@@ -0,0 +1,450 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.lsp4j.ConfigurationItem;
+import org.eclipse.lsp4j.ConfigurationParams;
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.RegistrationParams;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.UnregistrationParams;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.launch.LSPLauncher;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.eclipse.lsp4j.services.LanguageServer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import ru.beeatlas.c4.C4LanguageServerLauncher;
+import ru.beeatlas.c4.service.C4LanguageServer;
+
+/**
+ * Replays an editing session against the language server connected through pipes, as the
+ * extension talks to it over stdin/stdout, and reports latency percentiles per method,
+ * throughput and garbage collection. A session is a JSON line per message sent by the client,
+ * at its time in milliseconds from the start, with an id for requests:
+ *
+ * <pre>{"time":1200,"id":7,"method":"textDocument/hover","params":{...}}</pre>
+ *
+ * ${root} in a session stands for the URI of the workspace directory. Without a session a
+ * seeded one is generated: bursts of typing into a fragment of a synthetic workspace, with
+ * completions while typing and code lenses and hovers in the pauses between bursts.
+ *
+ * <pre>mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=ru.beeatlas.c4.benchmark.SessionReplay
+ *     -Dexec.args="--bursts 20 --save session.jsonl"</pre>
+ */
+public class SessionReplay {
+
+    public record Step(long time, boolean request, String method, JsonElement params) {
+    }
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final String ROOT = "${root}";
+    // time from the last change of a document to its diagnostics
+    private static final String DIAGNOSTICS = "diagnostics after change";
+
+    // Answers configuration requests of the server like the extension with default settings,
+    // without the settings which make the server connect to external services
+    static class ReplayClient implements LanguageClient {
+
+        final Map<String, JsonElement> configuration = new HashMap<>();
+        // diagnostics of an included file are published for its workspace, so a change is
+        // matched with the next diagnostics of any document
+        final AtomicLong lastChange = new AtomicLong();
+        final Latencies latencies;
+
+        ReplayClient(Latencies latencies) {
+            this.latencies = latencies;
+            configuration.put("c4.languageserver.logs.enabled", new JsonPrimitive(false));
+            configuration.put("c4.languageserver.diagnostics.debounce", new JsonPrimitive(200));
+            configuration.put("c4.languageserver.index.enabled", new JsonPrimitive(true));
+            configuration.put("c4.languageserver.memory.budget", new JsonPrimitive(256));
+            configuration.put("c4.beeline.telemetry.enabled", new JsonPrimitive(false));
+            configuration.put("c4.beeline.cert.verification.enabled", new JsonPrimitive(false));
+        }
+
+        @Override
+        public CompletableFuture<List<Object>> configuration(ConfigurationParams params) {
+            List<Object> values = new ArrayList<>();
+            for (ConfigurationItem item : params.getItems()) {
+                values.add(configuration.getOrDefault(item.getSection(), JsonNull.INSTANCE));
+            }
+            return CompletableFuture.completedFuture(values);
+        }
+
+        @Override
+        public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+            long changed = lastChange.getAndSet(0);
+            if (changed != 0) {
+                latencies.add(DIAGNOSTICS, System.nanoTime() - changed);
+            }
+        }
+
+        @Override
+        public void telemetryEvent(Object object) {
+        }
+
+        @Override
+        public void showMessage(MessageParams messageParams) {
+        }
+
+        @Override
+        public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void logMessage(MessageParams message) {
+        }
+
+        @Override
+        public CompletableFuture<Void> registerCapability(RegistrationParams params) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> unregisterCapability(UnregistrationParams params) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> refreshCodeLenses() {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    // Latencies in nanoseconds per method
+    static class Latencies {
+
+        private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+        private final Map<String, Integer> errors = new ConcurrentHashMap<>();
+
+        void add(String method, long nanos) {
+            List<Long> values = latencies.computeIfAbsent(method, m -> Collections.synchronizedList(new ArrayList<>()));
+            values.add(nanos);
+        }
+
+        void error(String method) {
+            errors.merge(method, 1, Integer::sum);
+        }
+
+        // nearest rank
+        static double percentile(List<Long> sorted, double percentile) {
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+            return sorted.get(Math.max(0, rank - 1)) / 1e6;
+        }
+
+        void print(PrintWriter out) {
+            out.printf("%-32s %7s %7s %10s %10s %10s %10s%n", "method", "count", "errors", "p50 ms", "p95 ms", "p99 ms", "max ms");
+            Map<String, List<Long>> methods = new TreeMap<>(latencies);
+            errors.keySet().forEach(method -> methods.putIfAbsent(method, List.of()));
+            methods.forEach((method, values) -> {
+                List<Long> sorted;
+                synchronized (values) {
+                    sorted = new ArrayList<>(values);
+                }
+                if (sorted.isEmpty()) {
+                    out.printf("%-32s %7d %7d%n", method, 0, errors.get(method));
+                    return;
+                }
+                Collections.sort(sorted);
+                out.printf("%-32s %7d %7d %10.2f %10.2f %10.2f %10.2f%n", method, sorted.size(), errors.getOrDefault(method, 0),
+                        percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99), percentile(sorted, 100));
+            });
+        }
+    }
+
+    public static List<Step> read(File session, String rootUri) throws IOException {
+        List<Step> steps = new ArrayList<>();
+        for (String line : Files.readAllLines(session.toPath())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonObject message = JsonParser.parseString(rootUri != null ? line.replace(ROOT, rootUri) : line).getAsJsonObject();
+            steps.add(new Step(message.get("time").getAsLong(), message.has("id"), message.get("method").getAsString(),
+                    message.get("params")));
+        }
+        return steps;
+    }
+
+    public static void write(List<Step> steps, File session, String rootUri) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int id = 0;
+        for (Step step : steps) {
+            JsonObject message = new JsonObject();
+            message.addProperty("time", step.time());
+            if (step.request()) {
+                message.addProperty("id", id++);
+            }
+            message.addProperty("method", step.method());
+            message.add("params", step.params());
+            sb.append(GSON.toJson(message).replace(rootUri, ROOT)).append('\n');
+        }
+        Files.writeString(session.toPath(), sb.toString());
+    }
+
+    // Typing a relationship between two software systems of the fragment, character by character,
+    // at the end of the fragment in every burst
+    public static List<Step> synthetic(SyntheticWorkspace workspace, Map<String, String> options) throws IOException {
+        Random random = new Random(Long.parseLong(options.getOrDefault("seed", "42")));
+        int bursts = Integer.parseInt(options.getOrDefault("bursts", "10"));
+        int keystrokes = Integer.parseInt(options.getOrDefault("keystrokes", "30"));
+        long keystroke = Long.parseLong(options.getOrDefault("keystroke", "40"));
+        long pause = Long.parseLong(options.getOrDefault("pause", "1000"));
+        File file = workspace.fragments().isEmpty() ? workspace.root() : workspace.fragments().get(0);
+        String text = workspace.read(file);
+        String uri = file.toURI().toString();
+        List<String> systems = new ArrayList<>();
+        List<Integer> systemLines = new ArrayList<>();
+        Matcher matcher = Pattern.compile("(?m)^(e\\d+) = softwareSystem").matcher(text);
+        while (matcher.find()) {
+            systems.add(matcher.group(1));
+            systemLines.add((int) text.substring(0, matcher.start()).lines().count());
+        }
+
+        List<Step> steps = new ArrayList<>();
+        long time = 0;
+        JsonObject initialize = new JsonObject();
+        initialize.addProperty("processId", ProcessHandle.current().pid());
+        initialize.addProperty("rootUri", workspace.root().getParentFile().toURI().toString());
+        initialize.add("capabilities", new JsonObject());
+        steps.add(new Step(time, true, "initialize", initialize));
+        steps.add(new Step(time, false, "initialized", new JsonObject()));
+        JsonObject configuration = new JsonObject();
+        configuration.addProperty("command", "c4-server.configuration");
+        JsonArray arguments = new JsonArray();
+        JsonObject configurationOptions = new JsonObject();
+        configurationOptions.addProperty("version", "replay");
+        arguments.add(configurationOptions);
+        configuration.add("arguments", arguments);
+        steps.add(new Step(time, true, "workspace/executeCommand", configuration));
+
+        JsonObject open = new JsonObject();
+        JsonObject document = new JsonObject();
+        document.addProperty("uri", uri);
+        document.addProperty("languageId", "c4");
+        document.addProperty("version", 0);
+        document.addProperty("text", text);
+        open.add("textDocument", document);
+        steps.add(new Step(time, false, "textDocument/didOpen", open));
+        time += pause;
+
+        int version = 0;
+        int line = (int) text.lines().count();
+        for (int burst = 0; burst < bursts; burst++) {
+            String source = systems.isEmpty() ? "e0" : systems.get(random.nextInt(systems.size()));
+            String destination = systems.isEmpty() ? "e0" : systems.get(random.nextInt(systems.size()));
+            String typed = source + " -> " + destination + " \"Typed " + burst + "\" \"HTTPS\"";
+            typed = typed.substring(0, Math.min(typed.length(), keystrokes - 1)) + "\n";
+            for (int character = 0; character < typed.length(); character++) {
+                steps.add(new Step(time, false, "textDocument/didChange", change(uri, ++version, line, character, typed.charAt(character))));
+                if (character % 4 == 3) {
+                    steps.add(new Step(time, true, "textDocument/completion", position(uri, line, character + 1)));
+                }
+                time += keystroke;
+            }
+            line++;
+            time += pause / 4;
+            steps.add(new Step(time, true, "textDocument/codeLens", document(uri)));
+            if (!systemLines.isEmpty()) {
+                steps.add(new Step(time, true, "textDocument/hover", position(uri, systemLines.get(random.nextInt(systemLines.size())), 1)));
+            }
+            time += pause - pause / 4;
+        }
+        return steps;
+    }
+
+    private static JsonObject document(String uri) {
+        JsonObject params = new JsonObject();
+        JsonObject document = new JsonObject();
+        document.addProperty("uri", uri);
+        params.add("textDocument", document);
+        return params;
+    }
+
+    private static JsonObject position(String uri, int line, int character) {
+        JsonObject params = document(uri);
+        JsonObject position = new JsonObject();
+        position.addProperty("line", line);
+        position.addProperty("character", character);
+        params.add("position", position);
+        return params;
+    }
+
+    private static JsonObject change(String uri, int version, int line, int character, char typed) {
+        JsonObject params = document(uri);
+        params.getAsJsonObject("textDocument").addProperty("version", version);
+        JsonObject range = new JsonObject();
+        range.add("start", position(uri, line, character).get("position"));
+        range.add("end", position(uri, line, character).get("position"));
+        JsonObject change = new JsonObject();
+        change.add("range", range);
+        change.addProperty("text", String.valueOf(typed));
+        JsonArray changes = new JsonArray();
+        changes.add(change);
+        params.add("contentChanges", changes);
+        return params;
+    }
+
+    // --name value pairs
+    static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        SyntheticWorkspace.quietLogging();
+        SyntheticWorkspace workspace = null;
+        File directory;
+        List<Step> steps;
+        if (options.containsKey("session")) {
+            directory = new File(options.getOrDefault("workspace", "."));
+            steps = read(new File(options.get("session")), rootUri(directory));
+        } else {
+            workspace = SyntheticWorkspace.createSeeded(Long.parseLong(options.getOrDefault("seed", "42")),
+                    Integer.parseInt(options.getOrDefault("elements", "1000")),
+                    Integer.parseInt(options.getOrDefault("relationships", "2000")),
+                    Integer.parseInt(options.getOrDefault("includes", "20")),
+                    Integer.parseInt(options.getOrDefault("views", "10")));
+            directory = workspace.root().getParentFile();
+            steps = synthetic(workspace, options);
+            if (options.containsKey("save")) {
+                write(steps, new File(options.get("save")), rootUri(directory));
+            }
+        }
+
+        Latencies latencies = new Latencies();
+        ReplayClient client = new ReplayClient(latencies);
+        options.forEach((key, value) -> {
+            if (key.startsWith("c4.")) {
+                client.configuration.put(key, JsonParser.parseString(value));
+            }
+        });
+
+        Pipe toServer = Pipe.open();
+        Pipe toClient = Pipe.open();
+        InputStream serverIn = Channels.newInputStream(toServer.source());
+        OutputStream clientOut = Channels.newOutputStream(toServer.sink());
+        Launcher<LanguageClient> serverLauncher = C4LanguageServerLauncher.launch(new C4LanguageServer(), serverIn,
+                Channels.newOutputStream(toClient.sink()));
+        serverLauncher.startListening();
+        Launcher<LanguageServer> clientLauncher = LSPLauncher.createClientLauncher(client,
+                Channels.newInputStream(toClient.source()), clientOut);
+        clientLauncher.startListening();
+        RemoteEndpoint endpoint = clientLauncher.getRemoteEndpoint();
+
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        long start = System.nanoTime();
+        for (Step step : steps) {
+            long wait = start + TimeUnit.MILLISECONDS.toNanos(step.time()) - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (step.request()) {
+                long sent = System.nanoTime();
+                pending.add(endpoint.request(step.method(), step.params()).whenComplete((result, error) -> {
+                    if (error != null) {
+                        latencies.error(step.method());
+                    } else {
+                        latencies.add(step.method(), System.nanoTime() - sent);
+                    }
+                }));
+            } else {
+                if (step.method().equals("textDocument/didOpen") || step.method().equals("textDocument/didChange")) {
+                    client.lastChange.set(System.nanoTime());
+                }
+                endpoint.notify(step.method(), step.params());
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).handle((r, e) -> r).get(5, TimeUnit.MINUTES);
+        // the last diagnostics after the debounce
+        long debounce = client.configuration.get("c4.languageserver.diagnostics.debounce").getAsLong();
+        Thread.sleep(debounce + 1000);
+        long elapsed = System.nanoTime() - start;
+        gcCount = gcCount() - gcCount;
+        gcTime = gcTime() - gcTime;
+
+        endpoint.request("shutdown", null).get(1, TimeUnit.MINUTES);
+        clientOut.close();
+
+        PrintWriter out = new PrintWriter(System.out, true);
+        double seconds = elapsed / 1e9;
+        out.printf("%d messages in %.1f s, %d requests, %.1f requests/s%n", steps.size(), seconds, pending.size(),
+                pending.size() / seconds);
+        out.printf("GC: %d collections, %d ms (%.1f%% of the session)%n", gcCount, gcTime, gcTime / 10.0 / seconds);
+        latencies.print(out);
+        if (workspace != null) {
+            workspace.delete();
+        }
+        System.exit(0);
+    }
+
+    private static String rootUri(File directory) {
+        String uri = directory.getAbsoluteFile().toURI().toString();
+        return uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+}
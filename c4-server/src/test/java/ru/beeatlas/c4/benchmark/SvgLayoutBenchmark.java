@@ -0,0 +1,85 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.view.SystemLandscapeView;
+
+import ru.beeatlas.c4.utils.LayoutOverlay;
+import ru.beeatlas.c4.utils.SVGReader;
+
+/**
+ * Reading the layout of a view from the SVG graphviz renders for it: a landscape of
+ * a chain of software systems, one node per system and one edge between neighbours.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SvgLayoutBenchmark {
+
+    @Param({ "42" })
+    long seed;
+
+    @Param({ "2000" })
+    int nodes;
+
+    SystemLandscapeView view;
+    String svg;
+    SVGReader svgReader = new SVGReader(400, true);
+
+    @Setup(Level.Trial)
+    public void generate() {
+        SyntheticWorkspace.quietLogging();
+        Workspace workspace = new Workspace("Layout", "Generated landscape");
+        SoftwareSystem previous = null;
+        for (int i = 0; i < nodes; i++) {
+            SoftwareSystem system = workspace.getModel().addSoftwareSystem("System " + i, "Generated software system");
+            if (previous != null) {
+                previous.uses(system, "Uses", "HTTPS");
+            }
+            previous = system;
+        }
+        view = workspace.getViews().createSystemLandscapeView("landscape", "Generated landscape");
+        view.addAllElements();
+        svg = SyntheticWorkspace.svg(view, seed);
+    }
+
+    @Benchmark
+    public LayoutOverlay svgLayout() throws Exception {
+        return svgReader.parseLayout(view, svg);
+    }
+
+}
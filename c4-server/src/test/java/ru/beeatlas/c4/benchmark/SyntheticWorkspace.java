@@ -0,0 +1,304 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.structurizr.model.Element;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.RelationshipView;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+
+/**
+ * Generates a workspace.dsl with a tree of !include fragments on disk.
+ * Every fragment defines its own software systems and relationships between them.
+ */
+public class SyntheticWorkspace {
+
+    private final Path directory;
+    private final File root;
+    private final List<File> fragments = new ArrayList<>();
+
+    private SyntheticWorkspace(Path directory) {
+        this.directory = directory;
+        this.root = directory.resolve("workspace.dsl").toFile();
+    }
+
+    public static SyntheticWorkspace create(int fragmentCount, int elementsPerFragment) throws IOException {
+        SyntheticWorkspace workspace = new SyntheticWorkspace(Files.createTempDirectory("c4-synthetic"));
+        workspace.generate(fragmentCount, elementsPerFragment);
+        return workspace;
+    }
+
+    private void generate(int fragmentCount, int elementsPerFragment) throws IOException {
+        // two level tree: workspace.dsl -> model/part-N.dsl -> model/part-N/leaf-M.dsl
+        int parts = Math.max(1, (int) Math.sqrt(fragmentCount));
+        List<String> rootIncludes = new ArrayList<>();
+        String firstSystem = "part_0_s0";
+        int created = 0;
+        for (int part = 0; part < parts && created < fragmentCount; part++) {
+            String partName = "part-" + part;
+            List<String> partIncludes = new ArrayList<>();
+            int leaves = (fragmentCount - parts) / parts;
+            for (int leaf = 0; leaf < leaves && created + 1 < fragmentCount; leaf++) {
+                String leafName = "leaf-" + leaf;
+                File leafFile = directory.resolve("model").resolve(partName).resolve(leafName + ".dsl").toFile();
+                write(leafFile, fragment(partName + "_" + leafName, elementsPerFragment, List.of()));
+                fragments.add(leafFile);
+                partIncludes.add(partName + "/" + leafName + ".dsl");
+                created++;
+            }
+            File partFile = directory.resolve("model").resolve(partName + ".dsl").toFile();
+            write(partFile, fragment(partName, elementsPerFragment, partIncludes));
+            fragments.add(partFile);
+            rootIncludes.add("model/" + partName + ".dsl");
+            created++;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("workspace \"Synthetic\" \"Generated workspace\" {\n\n");
+        sb.append("    model {\n");
+        rootIncludes.forEach(include -> sb.append("        !include ").append(include).append('\n'));
+        sb.append("    }\n\n");
+        sb.append("    views {\n");
+        sb.append("        systemContext ").append(firstSystem).append(" \"Context\" {\n");
+        sb.append("            include *\n");
+        sb.append("            autoLayout\n");
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+        sb.append("}\n");
+        write(root, sb.toString());
+    }
+
+    // Single workspace.dsl of roughly the given number of lines: nested systems, containers,
+    // components and properties blocks, so that most lines are a few scopes deep.
+    public static SyntheticWorkspace createDocument(int lineCount) throws IOException {
+        SyntheticWorkspace workspace = new SyntheticWorkspace(Files.createTempDirectory("c4-synthetic"));
+        StringBuilder sb = new StringBuilder();
+        sb.append("workspace \"Synthetic\" \"Generated workspace\" {\n\n");
+        sb.append("    model {\n");
+        int lines = 3;
+        for (int system = 0; lines < lineCount - 10; system++) {
+            sb.append("        s").append(system).append(" = softwareSystem \"System ").append(system).append("\" {\n");
+            for (int container = 0; container < 5; container++) {
+                String id = "s" + system + "c" + container;
+                sb.append("            ").append(id).append(" = container \"Container ").append(id).append("\" {\n");
+                sb.append("                properties {\n");
+                sb.append("                    \"owner\" \"team ").append(system).append("\"\n");
+                sb.append("                }\n");
+                for (int component = 0; component < 3; component++) {
+                    sb.append("                ").append(id).append("x").append(component)
+                            .append(" = component \"Component ").append(component).append("\"\n");
+                }
+                sb.append("            }\n");
+                lines += 8;
+            }
+            sb.append("        }\n");
+            lines += 2;
+        }
+        sb.append("    }\n\n");
+        sb.append("    views {\n");
+        sb.append("        systemContext s0 \"Context\" {\n");
+        sb.append("            include *\n");
+        sb.append("            autoLayout\n");
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+        sb.append("}\n");
+        write(workspace.root, sb.toString());
+        return workspace;
+    }
+
+    // Workspace of the given shape, the same for the same seed: elements are software systems
+    // with up to four containers each, spread over the included fragments. Relationships join
+    // random elements, a fragment only refers to elements of itself and the fragments before it.
+    // The first view is a system landscape, the others are system context and container views.
+    public static SyntheticWorkspace createSeeded(long seed, int elementCount, int relationshipCount,
+            int includeCount, int viewCount) throws IOException {
+        SyntheticWorkspace workspace = new SyntheticWorkspace(Files.createTempDirectory("c4-synthetic"));
+        Random random = new Random(seed);
+        int files = Math.max(1, includeCount);
+        String[] ids = new String[elementCount];
+        int[] parents = new int[elementCount];
+        int[] fileOf = new int[elementCount];
+        List<Integer> systems = new ArrayList<>();
+        List<StringBuilder> contents = new ArrayList<>();
+        for (int file = 0; file < files; file++) {
+            contents.add(new StringBuilder());
+        }
+        for (int i = 0; i < elementCount;) {
+            int file = (int) ((long) i * files / elementCount);
+            StringBuilder sb = contents.get(file);
+            int system = i++;
+            ids[system] = "e" + system;
+            parents[system] = -1;
+            fileOf[system] = file;
+            systems.add(system);
+            sb.append(ids[system]).append(" = softwareSystem \"System ").append(system)
+                    .append("\" \"Generated software system\" {\n");
+            for (int containers = random.nextInt(5); containers > 0 && i < elementCount; containers--, i++) {
+                ids[i] = "e" + i;
+                parents[i] = system;
+                fileOf[i] = file;
+                sb.append("    ").append(ids[i]).append(" = container \"Container ").append(i)
+                        .append("\" \"Generated container\" \"Java\"\n");
+            }
+            sb.append("}\n");
+        }
+        for (int r = 0; r < relationshipCount && systems.size() > 1; r++) {
+            int source = random.nextInt(elementCount);
+            int destination = random.nextInt(elementCount);
+            // declared in the later fragment of the two, parent and child cannot be related
+            if (fileOf[destination] > fileOf[source]) {
+                int swap = source;
+                source = destination;
+                destination = swap;
+            }
+            if (source == destination || parents[source] == destination || parents[destination] == source) {
+                r--;
+                continue;
+            }
+            contents.get(fileOf[source]).append(ids[source]).append(" -> ").append(ids[destination])
+                    .append(" \"Uses ").append(r).append("\" \"HTTPS\"\n");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("workspace \"Synthetic\" \"Generated workspace\" {\n\n");
+        sb.append("    model {\n");
+        if (includeCount == 0) {
+            contents.get(0).toString().lines().forEach(line -> sb.append("        ").append(line).append('\n'));
+        }
+        for (int file = 0; file < includeCount; file++) {
+            File fragment = workspace.directory.resolve("model").resolve("part-" + file + ".dsl").toFile();
+            write(fragment, contents.get(file).toString());
+            workspace.fragments.add(fragment);
+            sb.append("        !include model/part-").append(file).append(".dsl\n");
+        }
+        sb.append("    }\n\n");
+        sb.append("    views {\n");
+        for (int view = 0; view < viewCount; view++) {
+            if (view == 0) {
+                sb.append("        systemLandscape \"landscape\" {\n");
+            } else {
+                String id = ids[systems.get(random.nextInt(systems.size()))];
+                String type = view % 2 == 1 ? "systemContext" : "container";
+                sb.append("        ").append(type).append(' ').append(id).append(" \"view_").append(view).append("\" {\n");
+            }
+            sb.append("            include *\n");
+            sb.append("            autoLayout\n");
+            sb.append("        }\n");
+        }
+        sb.append("    }\n\n");
+        sb.append("}\n");
+        write(workspace.root, sb.toString());
+        return workspace;
+    }
+
+    // SVG as graphviz renders the view: a polygon per element and a spline per relationship,
+    // grouped by their ids, at random positions
+    public static String svg(ModelView view, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+        sb.append("<svg width=\"4000pt\" height=\"4000pt\" viewBox=\"0.00 0.00 4000.00 4000.00\">\n");
+        sb.append("<g id=\"graph0\" class=\"graph\" transform=\"scale(1 1) rotate(0) translate(4 3996)\">\n");
+        for (ElementView elementView : view.getElements()) {
+            Element element = elementView.getElement();
+            int x = random.nextInt(3600);
+            int y = -random.nextInt(3600);
+            sb.append("<g id=\"").append(element.getId()).append("\" class=\"node\">\n");
+            sb.append("<title>").append(element.getId()).append("</title>\n");
+            sb.append("<polygon fill=\"none\" stroke=\"black\" points=\"").append(x + 320).append(',').append(y)
+                    .append(' ').append(x).append(',').append(y).append(' ').append(x).append(',').append(y - 216)
+                    .append(' ').append(x + 320).append(',').append(y - 216).append(' ').append(x + 320).append(',')
+                    .append(y).append("\"/>\n");
+            sb.append("</g>\n");
+        }
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            sb.append("<g id=\"").append(relationshipView.getId()).append("\" class=\"edge\">\n");
+            sb.append("<path fill=\"none\" stroke=\"black\" d=\"M");
+            for (int point = 0; point < 7; point++) {
+                sb.append(point == 0 ? "" : point == 1 ? "C" : " ")
+                        .append(random.nextInt(3600)).append(',').append(-random.nextInt(3600));
+            }
+            sb.append("\"/>\n");
+            sb.append("</g>\n");
+        }
+        sb.append("</g>\n");
+        sb.append("</svg>\n");
+        return sb.toString();
+    }
+
+    private static String fragment(String prefix, int elements, List<String> includes) {
+        String id = prefix.replace('-', '_');
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < elements; i++) {
+            sb.append(id).append("_s").append(i)
+                    .append(" = softwareSystem \"").append(prefix).append(" system ").append(i)
+                    .append("\" \"Generated software system\"\n");
+        }
+        for (int i = 1; i < elements; i++) {
+            sb.append(id).append("_s").append(i - 1).append(" -> ").append(id).append("_s").append(i)
+                    .append(" \"Uses\" \"HTTPS\"\n");
+        }
+        includes.forEach(include -> sb.append("!include ").append(include).append('\n'));
+        return sb.toString();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), content);
+    }
+
+    // Console logging of the server would dominate the measurements
+    public static void quietLogging() {
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.WARN);
+    }
+
+    public File root() {
+        return root;
+    }
+
+    public List<File> fragments() {
+        return fragments;
+    }
+
+    public String read(File file) throws IOException {
+        return Files.readString(file.toPath());
+    }
+
+    public void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+}
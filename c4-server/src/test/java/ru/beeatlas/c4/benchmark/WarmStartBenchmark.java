@@ -0,0 +1,114 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.CompletionItem;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.beeatlas.c4.model.C4DocumentManager;
+import ru.beeatlas.c4.model.C4DocumentModel;
+import ru.beeatlas.c4.model.C4IndexStore;
+import ru.beeatlas.c4.model.C4TextBuffer;
+import ru.beeatlas.c4.model.C4TokensLoader;
+import ru.beeatlas.c4.provider.C4CompletionProvider;
+
+/**
+ * Time from opening workspace.dsl of a large workspace in a fresh server until the first
+ * completion inside the model block: parsing the whole workspace against restoring the
+ * file from the index written by an earlier session.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WarmStartBenchmark {
+
+    // 100 fragments of 500 software systems each
+    @Param({ "50000" })
+    int elements;
+
+    SyntheticWorkspace workspace;
+    File indexDirectory;
+    String content;
+    TextDocumentIdentifier documentId;
+    C4CompletionProvider completionProvider;
+    // cursor at the start of the first !include line, inside the model block
+    Position position = new Position(3, 0);
+
+    @Setup
+    public void generate() throws IOException {
+        SyntheticWorkspace.quietLogging();
+        workspace = SyntheticWorkspace.create(100, elements / 100);
+        indexDirectory = new File(workspace.root().getParentFile(), "index");
+        content = workspace.read(workspace.root());
+        documentId = new TextDocumentIdentifier(workspace.root().toURI().toString());
+        completionProvider = new C4CompletionProvider(new C4TokensLoader());
+
+        // earlier session writing the index
+        C4DocumentManager documentManager = IncludeGraphBenchmark.bind(new C4DocumentManager());
+        documentManager.setIndexStore(new C4IndexStore(indexDirectory));
+        documentManager.calcDiagnostics(workspace.root(), content);
+        documentManager.getIndexStore().flush().join();
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        workspace.delete();
+    }
+
+    // a full parse takes minutes at this size
+    @Benchmark
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public List<CompletionItem> coldStart() throws URISyntaxException {
+        C4DocumentManager documentManager = IncludeGraphBenchmark.bind(new C4DocumentManager());
+        documentManager.calcDiagnostics(workspace.root(), content);
+        C4DocumentModel model = documentManager.getDocument(documentId);
+        return completionProvider.calcCompletions(model, position, documentManager.getElements(workspace.root()));
+    }
+
+    @Benchmark
+    public List<CompletionItem> warmStart() throws URISyntaxException {
+        C4DocumentManager documentManager = IncludeGraphBenchmark.bind(new C4DocumentManager());
+        documentManager.setIndexStore(new C4IndexStore(indexDirectory));
+        documentManager.warmUp(workspace.root(), new C4TextBuffer(content).snapshot());
+        C4DocumentModel model = documentManager.getDocumentOrIndexed(documentManager.getSnapshot(), documentId);
+        return completionProvider.calcCompletions(model, position, documentManager.getElements(workspace.root()));
+    }
+
+}
@@ -18,29 +18,42 @@ package ru.beeatlas.c4.model;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Module;
+import com.structurizr.Workspace;
 import com.structurizr.model.SoftwareSystem;
 
 import ru.beeatlas.c4.helper.C4TestHelper;
 import ru.beeatlas.c4.intercept.InterceptParserAspect;
 import ru.beeatlas.c4.intercept.StructurizrDslParserListener;
 
+import org.eclipse.lsp4j.FileChangeType;
 import org.eclipse.lsp4j.PublishDiagnosticsParams;
 import org.eclipse.lsp4j.TextDocumentIdentifier;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.aspectj.lang.Aspects.*;
 
@@ -127,4 +140,267 @@ public class C4DocumentModelTest {
         }
 
     }
+
+    @Test
+    public void calcDiagnosticsIncludedFile() throws IOException {
+
+        File workspaceFile = new File(C4TestHelper.PATH_INCLUDE_MODELS + File.separator + "include-test.dsl");
+        File includedFile = new File(C4TestHelper.PATH_INCLUDE_MODELS + File.separator + "subFolder" + File.separator + "model.dsl");
+
+        // not known as part of a workspace yet - parsed on its own
+        String includedContent = new String(Files.readAllBytes(Paths.get(includedFile.getAbsolutePath())));
+        List<PublishDiagnosticsParams> errors = documentManager.calcDiagnostics(includedFile, includedContent);
+        assertEquals(1, errors.get(0).getDiagnostics().size());
+
+        String content = new String(Files.readAllBytes(Paths.get(workspaceFile.getAbsolutePath())));
+        errors = documentManager.calcDiagnostics(workspaceFile, content);
+        assertEquals(0, errors.get(0).getDiagnostics().size());
+
+        // now the including workspace is reparsed instead
+        errors = documentManager.calcDiagnostics(includedFile, includedContent + "\n");
+        assertEquals(1, errors.size());
+        assertEquals(workspaceFile.toURI().toString(), errors.get(0).getUri());
+        assertEquals(0, errors.get(0).getDiagnostics().size());
+    }
+
+    @Test
+    public void calcDiagnosticsCanceled() throws IOException, URISyntaxException {
+
+        File testFile = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "c4-dsl-extension.dsl");
+        String content = new String(Files.readAllBytes(Paths.get(testFile.getAbsolutePath())));
+        documentManager.calcDiagnostics(testFile, content);
+
+        TextDocumentIdentifier documentId = new TextDocumentIdentifier(testFile.toURI().toURL().toString());
+        C4DocumentModel committed = documentManager.getDocument(documentId);
+        int elements = documentManager.getElements(testFile).size();
+
+        // cancel after a few lines
+        AtomicInteger lines = new AtomicInteger();
+        assertThrows(CancellationException.class, () -> documentManager.calcDiagnostics(testFile, content + "\n", () -> {
+            if (lines.incrementAndGet() > 5) {
+                throw new CancellationException();
+            }
+        }));
+
+        assertSame(committed, documentManager.getDocument(documentId));
+        assertEquals(elements, documentManager.getElements(testFile).size());
+
+        // next parse is not served from a half written cache
+        List<PublishDiagnosticsParams> errors = documentManager.calcDiagnostics(testFile, content + "\n");
+        assertEquals(0, errors.get(0).getDiagnostics().size());
+        assertFalse(committed == documentManager.getDocument(documentId));
+    }
+
+    @Test
+    public void canceledParseKeepsIncludeGraph(@TempDir Path directory) throws IOException {
+
+        File workspace = directory.resolve("workspace.dsl").toFile();
+        File model = directory.resolve("model.dsl").toFile();
+        String content = "workspace {\n    model {\n        !include model.dsl\n    }\n}\n";
+        Files.writeString(workspace.toPath(), content);
+        Files.writeString(model.toPath(), "user = person \"User\"\n");
+        documentManager.calcDiagnostics(workspace, content);
+        assertEquals(workspace.getAbsolutePath(), documentManager.getWorkspaceRoot(model));
+
+        // the workspace file is started, but the parse stops before its include is reached
+        AtomicInteger lines = new AtomicInteger();
+        assertThrows(CancellationException.class, () -> documentManager.calcDiagnostics(workspace, content + "\n", () -> {
+            if (lines.incrementAndGet() > 1) {
+                throw new CancellationException();
+            }
+        }));
+
+        assertEquals(workspace.getAbsolutePath(), documentManager.getWorkspaceRoot(model));
+        assertTrue(documentManager.isPartOf(model, workspace.getAbsolutePath()));
+        assertTrue(documentManager.isPartOf(workspace, workspace.getAbsolutePath()));
+    }
+
+    @Test
+    public void snapshotVersions() throws IOException, URISyntaxException {
+
+        File testFile = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "c4-dsl-extension.dsl");
+        String content = new String(Files.readAllBytes(Paths.get(testFile.getAbsolutePath())));
+        TextDocumentIdentifier documentId = new TextDocumentIdentifier(testFile.toURI().toURL().toString());
+
+        assertEquals(0, documentManager.getSnapshot().version());
+
+        documentManager.calcDiagnostics(testFile, content);
+        C4DocumentSnapshot first = documentManager.getSnapshot();
+        C4DocumentModel model = documentManager.getDocument(documentId);
+        assertEquals(1, first.version());
+        assertEquals(1, model.getVersion());
+
+        documentManager.calcDiagnostics(testFile, content + "\n");
+        C4DocumentSnapshot second = documentManager.getSnapshot();
+        assertEquals(2, second.version());
+        assertEquals(2, documentManager.getDocument(documentId).getVersion());
+
+        // published models are read only and the old snapshot still holds the old model
+        assertSame(model, C4DocumentManager.getDocument(first, documentId));
+        assertThrows(UnsupportedOperationException.class, () -> model.addProperty(new C4Property(1, "", "name", "value")));
+    }
+
+    @Test
+    public void undoServedFromParseCache() throws IOException, URISyntaxException {
+
+        File testFile = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "c4-dsl-extension.dsl");
+        String content = new String(Files.readAllBytes(Paths.get(testFile.getAbsolutePath())));
+        TextDocumentIdentifier documentId = new TextDocumentIdentifier(testFile.toURI().toURL().toString());
+
+        List<PublishDiagnosticsParams> original = documentManager.calcDiagnostics(testFile, content);
+        C4DocumentModel model = documentManager.getDocument(documentId);
+        documentManager.calcDiagnostics(testFile, content + "\n");
+        long misses = documentManager.getParseCache().getMisses();
+
+        // undo: the models of the first parse are published again without parsing
+        assertEquals(original, documentManager.calcDiagnostics(testFile, content));
+        assertSame(model, documentManager.getDocument(documentId));
+        assertEquals(3, documentManager.getSnapshot().version());
+        assertEquals(1, documentManager.getParseCache().getHits());
+        assertEquals(misses, documentManager.getParseCache().getMisses());
+
+        // redo
+        documentManager.calcDiagnostics(testFile, content + "\n");
+        assertEquals(2, documentManager.getParseCache().getHits());
+        assertEquals(2, documentManager.getDocument(documentId).getVersion());
+    }
+
+    @Test
+    public void calcDiagnosticsInParallel() throws Exception {
+
+        List<File> files = C4TestHelper.MODELS_TO_TEST.stream()
+                .map(model -> new File(C4TestHelper.PATH_VALID_MODELS + File.separator + model))
+                .collect(Collectors.toList());
+
+        // every file is a workspace of its own, all of them parsed at the same time
+        ExecutorService pool = Executors.newFixedThreadPool(files.size());
+        try {
+            List<Future<List<PublishDiagnosticsParams>>> results = new ArrayList<>();
+            for (File file : files) {
+                String content = new String(Files.readAllBytes(file.toPath()));
+                results.add(pool.submit(() -> documentManager.calcDiagnostics(file, content)));
+            }
+            for (Future<List<PublishDiagnosticsParams>> result : results) {
+                assertEquals(0, result.get().get(0).getDiagnostics().size());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(files.size(), documentManager.getSnapshot().version());
+
+        List<C4DocumentModel> models = new ArrayList<>();
+        for (File file : files) {
+            C4DocumentModel model = documentManager.getDocument(new TextDocumentIdentifier(file.toURI().toString()));
+            assertTrue(model.isValid());
+            models.add(model);
+        }
+
+        // same models as parsed one after another
+        setupDI();
+        for (int i = 0; i < files.size(); i++) {
+            C4DocumentModel expected = C4TestHelper.createDocumentFromFile(files.get(i), documentManager);
+            assertEquals(expected.getAllElements().size(), models.get(i).getAllElements().size());
+            assertEquals(expected.getWorkspace().getModel().getElements().size(), models.get(i).getWorkspace().getModel().getElements().size());
+        }
+    }
+
+    @Test
+    public void workspacesKeptPerRoot() throws IOException {
+
+        File first = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "c4-dsl-extension.dsl");
+        File second = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "big_bank.dsl");
+        List<Workspace> committed = new ArrayList<>();
+        documentManager.calcDiagnostics(first, new C4TextBuffer(Files.readString(first.toPath())).snapshot(), () -> {}, committed::add);
+        documentManager.calcDiagnostics(second, new C4TextBuffer(Files.readString(second.toPath())).snapshot(), () -> {}, committed::add);
+
+        // the second parse does not replace the workspace and elements of the first
+        C4DocumentSnapshot snapshot = documentManager.getSnapshot();
+        assertEquals(List.of(snapshot.getWorkspace(first.getAbsolutePath()), snapshot.getWorkspace(second.getAbsolutePath())), committed);
+        assertFalse(committed.get(0) == committed.get(1));
+        assertTrue(documentManager.getElements(first).stream()
+                .allMatch(element -> element.getContainer().getUri().equals(first.toURI().toString())));
+        assertEquals(committed.get(0).getModel().getElements().size(), documentManager.getElements(first).size());
+    }
+
+    @Test
+    public void fileChangedOnDisk(@TempDir Path directory) throws IOException, URISyntaxException {
+
+        File workspace = directory.resolve("workspace.dsl").toFile();
+        File model = directory.resolve("model.dsl").toFile();
+        Files.writeString(workspace.toPath(), "workspace {\n    model {\n        !include model.dsl\n    }\n}\n");
+        Files.writeString(model.toPath(), "user = person \"User\"\n");
+        documentManager.setFileWatching(true);
+
+        String modelContent = Files.readString(model.toPath());
+        documentManager.calcDiagnostics(model, modelContent);
+        assertEquals(1, documentManager.getElements(model).size());
+
+        // the workspace is changed by a checkout, the included file is edited afterwards
+        Files.writeString(workspace.toPath(), "workspace {\n    model {\n        !include model.dsl\n        admin = person \"Admin\"\n    }\n}\n");
+        assertEquals(Set.of(workspace.getAbsolutePath()), documentManager.fileChanged(workspace, FileChangeType.Changed));
+        documentManager.calcDiagnostics(model, modelContent + "\n");
+        assertEquals(2, documentManager.getElements(model).size());
+
+        // a new file belongs to the workspace found above it
+        File other = directory.resolve("other.dsl").toFile();
+        Files.writeString(other.toPath(), "other = person \"Other\"\n");
+        assertEquals(Set.of(workspace.getAbsolutePath()), documentManager.fileChanged(other, FileChangeType.Created));
+        assertEquals(Set.of(workspace.getAbsolutePath()), documentManager.fileChanged(model, FileChangeType.Changed));
+
+        assertTrue(workspace.delete());
+        assertEquals(Set.of(), documentManager.fileChanged(workspace, FileChangeType.Deleted));
+        assertEquals(Set.of(other.getAbsolutePath()), documentManager.fileChanged(other, FileChangeType.Changed));
+    }
+
+    @Test
+    public void closedDocumentsEvictedOverBudget() throws IOException, URISyntaxException {
+
+        File first = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "c4-dsl-extension.dsl");
+        File second = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "big_bank.dsl");
+        C4TestHelper.createDocumentFromFile(first, documentManager);
+        documentManager.documentOpened(second);
+        C4TestHelper.createDocumentFromFile(second, documentManager);
+
+        List<C4MemoryBudget.ModelSize> report = documentManager.getMemoryReport();
+        assertEquals(2, report.size());
+        assertTrue(report.stream().allMatch(size -> size.bytes() > 0));
+
+        // the open document stays, the other one is dropped together with its cached parses
+        documentManager.setMemoryBudget(1);
+        assertEquals(Set.of(second.getAbsolutePath()), documentManager.getSnapshot().models().keySet());
+        assertEquals(1, documentManager.getMemoryBudget().getEvictedCount());
+
+        // the workspace used last is kept even if closed
+        documentManager.documentClosed(second);
+        assertEquals(Set.of(second.getAbsolutePath()), documentManager.getSnapshot().models().keySet());
+
+        // parsed again when needed, now the other one is used least recently
+        long misses = documentManager.getParseCache().getMisses();
+        assertTrue(C4TestHelper.createDocumentFromFile(first, documentManager).isValid());
+        assertEquals(misses + 1, documentManager.getParseCache().getMisses());
+        assertEquals(Set.of(first.getAbsolutePath()), documentManager.getSnapshot().models().keySet());
+    }
+
+    @Test
+    public void cachedParsesCountAgainstBudget() throws IOException {
+
+        File file = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "big_bank.dsl");
+        String content = new String(Files.readAllBytes(file.toPath()));
+        documentManager.documentOpened(file);
+        documentManager.calcDiagnostics(file, content);
+        documentManager.calcDiagnostics(file, content + "\n");
+        assertEquals(2, documentManager.getParseCache().size());
+
+        // the published models fit, the earlier parse kept for undo does not
+        long published = documentManager.getMemoryReport().stream().mapToLong(C4MemoryBudget.ModelSize::bytes).sum();
+        documentManager.setMemoryBudget(published);
+        assertEquals(1, documentManager.getParseCache().size());
+        assertEquals(Set.of(file.getAbsolutePath()), documentManager.getSnapshot().models().keySet());
+        assertEquals(0, documentManager.getMemoryBudget().getEvictedCount());
+
+        // the current parse is still served from the cache
+        long hits = documentManager.getParseCache().getHits();
+        documentManager.calcDiagnostics(file, content + "\n");
+        assertEquals(hits + 1, documentManager.getParseCache().getHits());
+    }
 }
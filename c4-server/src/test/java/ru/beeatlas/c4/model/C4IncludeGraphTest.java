@@ -0,0 +1,140 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class C4IncludeGraphTest {
+
+    private C4IncludeGraph graph;
+
+    // workspace.dsl includes model.dsl and views.dsl, model.dsl includes people.dsl
+    @BeforeEach
+    public void setUp() {
+        graph = new C4IncludeGraph();
+        graph.addRoot("workspace.dsl");
+        graph.addEdge("workspace.dsl", "model.dsl");
+        graph.addEdge("workspace.dsl", "views.dsl");
+        graph.addEdge("model.dsl", "people.dsl");
+    }
+
+    @Test
+    public void rootsOfIncludedFiles() {
+        assertEquals(Set.of("workspace.dsl"), graph.findRoots("model.dsl"));
+        // transitively included
+        assertEquals(Set.of("workspace.dsl"), graph.findRoots("people.dsl"));
+        assertTrue(graph.isIncluded("people.dsl"));
+    }
+
+    @Test
+    public void rootHasNoRootsOfItsOwn() {
+        // a root is parsed as it is, it is not a root of itself
+        assertTrue(graph.isRoot("workspace.dsl"));
+        assertTrue(graph.findRoots("workspace.dsl").isEmpty());
+        assertFalse(graph.isIncluded("workspace.dsl"));
+    }
+
+    @Test
+    public void unknownFileHasNoRoots() {
+        assertTrue(graph.findRoots("other.dsl").isEmpty());
+        assertFalse(graph.isRoot("other.dsl"));
+        assertEquals(List.of("other.dsl"), List.copyOf(graph.closure("other.dsl")));
+    }
+
+    @Test
+    public void fileSharedByWorkspaces() {
+        graph.addRoot("other.dsl");
+        graph.addEdge("other.dsl", "people.dsl");
+        assertEquals(Set.of("workspace.dsl", "other.dsl"), graph.findRoots("people.dsl"));
+        assertEquals(Set.of("workspace.dsl"), graph.findRoots("views.dsl"));
+    }
+
+    @Test
+    public void rootIncludedByAnotherRoot() {
+        // workspace.dsl extends base.dsl, and base.dsl was opened on its own before
+        graph.addRoot("base.dsl");
+        graph.addEdge("base.dsl", "styles.dsl");
+        graph.addEdge("workspace.dsl", "base.dsl");
+        assertEquals(Set.of("workspace.dsl"), graph.findRoots("base.dsl"));
+        assertEquals(Set.of("base.dsl", "workspace.dsl"), graph.findRoots("styles.dsl"));
+    }
+
+    @Test
+    public void topOfATreeNotParsedAsRoot() {
+        // the including file was never parsed as a root, it is still the top of the tree
+        graph.addEdge("draft.dsl", "notes.dsl");
+        assertEquals(Set.of("draft.dsl"), graph.findRoots("notes.dsl"));
+        assertFalse(graph.isRoot("draft.dsl"));
+    }
+
+    @Test
+    public void cyclesAreVisitedOnce() {
+        graph.addEdge("people.dsl", "model.dsl");
+        assertEquals(Set.of("workspace.dsl"), graph.findRoots("people.dsl"));
+        assertEquals(Set.of("workspace.dsl", "model.dsl", "views.dsl", "people.dsl"), graph.closure("workspace.dsl"));
+        // a file including itself is no edge
+        graph.addEdge("views.dsl", "views.dsl");
+        assertTrue(graph.getIncludes("views.dsl").isEmpty());
+    }
+
+    @Test
+    public void closureStartsWithTheRoot() {
+        assertEquals(List.of("workspace.dsl", "model.dsl", "views.dsl", "people.dsl"),
+                List.copyOf(graph.closure("workspace.dsl")));
+        assertEquals(Set.of("model.dsl", "people.dsl"), graph.closure("model.dsl"));
+    }
+
+    @Test
+    public void startFileForgetsOutgoingEdgesOnly() {
+        graph.startFile("model.dsl");
+        assertTrue(graph.getIncludes("model.dsl").isEmpty());
+        assertTrue(graph.findRoots("people.dsl").isEmpty());
+        assertFalse(graph.isIncluded("people.dsl"));
+        // still included by the root
+        assertEquals(Set.of("workspace.dsl"), graph.findRoots("model.dsl"));
+    }
+
+    @Test
+    public void removedRoot() {
+        graph.remove("workspace.dsl");
+        assertFalse(graph.isRoot("workspace.dsl"));
+        assertEquals(Set.of("workspace.dsl"), graph.closure("workspace.dsl"));
+        // its fragments are trees of their own until they are parsed with a root again
+        assertTrue(graph.findRoots("model.dsl").isEmpty());
+        assertEquals(Set.of("model.dsl"), graph.findRoots("people.dsl"));
+    }
+
+    @Test
+    public void removedFragmentIsStillReachableFromItsRoot() {
+        // deleted on disk: its own edges are gone, a file created again under
+        // the same path still belongs to the workspace including it
+        graph.remove("model.dsl");
+        assertTrue(graph.getIncludes("model.dsl").isEmpty());
+        assertEquals(Set.of("workspace.dsl"), graph.findRoots("model.dsl"));
+        assertTrue(graph.findRoots("people.dsl").isEmpty());
+        assertEquals(Set.of("workspace.dsl", "model.dsl", "views.dsl"), graph.closure("workspace.dsl"));
+    }
+
+}
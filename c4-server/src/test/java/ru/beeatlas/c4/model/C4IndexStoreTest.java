@@ -0,0 +1,119 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import com.structurizr.model.SoftwareSystem;
+
+import ru.beeatlas.c4.helper.C4TestHelper;
+import ru.beeatlas.c4.intercept.InterceptParserAspect;
+import ru.beeatlas.c4.intercept.StructurizrDslParserListener;
+
+import static org.aspectj.lang.Aspects.*;
+
+public class C4IndexStoreTest {
+
+    @TempDir
+    Path indexDirectory;
+
+    private C4DocumentManager documentManager;
+
+    @BeforeEach
+    public void setupDI() {
+        documentManager = bind(new C4DocumentManager());
+    }
+
+    private static C4DocumentManager bind(C4DocumentManager documentManager) {
+
+        Module testModule = new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                bind(StructurizrDslParserListener.class).toInstance(documentManager);
+                requestInjection(aspectOf(InterceptParserAspect.class));
+            }
+
+        };
+
+        Guice.createInjector(testModule);
+        return documentManager;
+    }
+
+    @Test
+    public void warmUpFromIndex() throws IOException, URISyntaxException {
+
+        File file = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "big_bank.dsl");
+        String content = new String(Files.readAllBytes(file.toPath()));
+        documentManager.setIndexStore(new C4IndexStore(indexDirectory.toFile()));
+        C4DocumentModel parsed = C4TestHelper.createDocumentFromFile(file, documentManager);
+        documentManager.getIndexStore().flush().join();
+
+        // a new server, nothing parsed yet
+        C4DocumentManager restarted = bind(new C4DocumentManager());
+        restarted.setIndexStore(new C4IndexStore(indexDirectory.toFile()));
+        TextDocumentIdentifier documentId = new TextDocumentIdentifier(file.toURI().toString());
+        assertFalse(restarted.warmUp(file, new C4TextBuffer(content + "\n").snapshot()));
+        assertTrue(restarted.warmUp(file, new C4TextBuffer(content).snapshot()));
+
+        C4DocumentModel indexed = restarted.getDocumentOrIndexed(restarted.getSnapshot(), documentId);
+        assertTrue(indexed.isValid());
+        assertEquals(parsed.getScopes(), indexed.getScopes());
+        assertArrayEquals(parsed.getEncodedTokens(), indexed.getEncodedTokens());
+        assertEquals(sorted(parsed.getIdentifiers()), sorted(indexed.getIdentifiers()));
+        assertEquals(sorted(parsed.getIdentifiersWithFilter(e -> e.getObject() instanceof SoftwareSystem)),
+                sorted(indexed.getIdentifiersWithFilter(e -> e.getObject() instanceof SoftwareSystem)));
+        assertFalse(restarted.getDocument(documentId).isValid());
+
+        // the parsed model replaces the indexed one
+        C4DocumentModel reparsed = C4TestHelper.createDocumentFromFile(file, restarted);
+        assertEquals(reparsed, restarted.getDocumentOrIndexed(restarted.getSnapshot(), documentId));
+        // the index of the reparse is written before the directory is removed
+        restarted.getIndexStore().flush().join();
+    }
+
+    @Test
+    public void indexKeptOutsideTheWorkspaceFolder(@TempDir Path workspaceFolder) {
+        File directory = C4IndexStore.cacheDirectory(workspaceFolder.toFile());
+        assertFalse(directory.toPath().startsWith(workspaceFolder));
+        assertEquals(directory, C4IndexStore.cacheDirectory(workspaceFolder.toFile()));
+        assertFalse(directory.equals(C4IndexStore.cacheDirectory(workspaceFolder.resolve("other").toFile())));
+    }
+
+    private static List<String> sorted(List<String> identifiers) {
+        return identifiers.stream().sorted().toList();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.Container;
+import com.structurizr.model.ContainerInstance;
+import com.structurizr.model.DeploymentNode;
+import com.structurizr.model.Model;
+import com.structurizr.model.Person;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.util.WorkspaceUtils;
+import com.structurizr.view.DeploymentView;
+import com.structurizr.view.PaperSize;
+import com.structurizr.view.RelationshipView;
+import com.structurizr.view.Routing;
+import com.structurizr.view.SystemLandscapeView;
+import com.structurizr.view.Vertex;
+
+public class C4LayoutTableTest {
+
+    // the same workspace, optionally with an element declared first so that all ids shift
+    private static Workspace createWorkspace(boolean shiftIds) {
+        Workspace workspace = new Workspace("test", "");
+        Model model = workspace.getModel();
+        if (shiftIds) {
+            model.addPerson("Other", "");
+        }
+        Person user = model.addPerson("User", "");
+        SoftwareSystem system = model.addSoftwareSystem("System", "");
+        Container api = system.addContainer("Api", "", "");
+        user.uses(system, "Uses");
+        user.uses(api, "Calls");
+        DeploymentNode node = model.addDeploymentNode("Live", "Server", "", "");
+        node.add(api);
+
+        SystemLandscapeView landscape = workspace.getViews().createSystemLandscapeView("landscape", "");
+        landscape.add(user);
+        landscape.add(system);
+        DeploymentView deployment = workspace.getViews().createDeploymentView(system, "deployment", "");
+        deployment.setEnvironment("Live");
+        deployment.addAllDeploymentNodes();
+        return workspace;
+    }
+
+    @Test
+    public void layoutsAreAppliedByName() throws Exception {
+        Workspace saved = createWorkspace(false);
+        SystemLandscapeView landscape = (SystemLandscapeView) saved.getViews().getViewWithKey("landscape");
+        landscape.setPaperSize(PaperSize.A3_Landscape);
+        landscape.getElements().forEach(e -> {
+            e.setX(e.getElement().getName().length() * 100);
+            e.setY(42);
+        });
+        RelationshipView uses = landscape.getRelationships().iterator().next();
+        uses.setVertices(List.of(new Vertex(10, 20), new Vertex(30, 40)));
+        uses.setRouting(Routing.Orthogonal);
+        uses.setPosition(70);
+        DeploymentView deployment = (DeploymentView) saved.getViews().getViewWithKey("deployment");
+        deployment.getElements().forEach(e -> e.setX(e.getElement() instanceof ContainerInstance ? 500 : 300));
+
+        C4LayoutTable table = C4LayoutTable.read(new StringReader(WorkspaceUtils.toJson(saved, false)));
+        assertEquals(2, table.getViewCount());
+
+        Workspace parsed = createWorkspace(true);
+        assertNotEquals(saved.getModel().getPersonWithName("User").getId(), parsed.getModel().getPersonWithName("User").getId());
+        table.apply(parsed.getViews());
+
+        SystemLandscapeView applied = (SystemLandscapeView) parsed.getViews().getViewWithKey("landscape");
+        assertEquals(PaperSize.A3_Landscape, applied.getPaperSize());
+        applied.getElements().forEach(e -> {
+            assertEquals(e.getElement().getName().length() * 100, e.getX());
+            assertEquals(42, e.getY());
+        });
+        RelationshipView appliedUses = applied.getRelationships().iterator().next();
+        assertEquals(List.of(10, 20, 30, 40), appliedUses.getVertices().stream()
+                .flatMap(v -> Stream.of(v.getX(), v.getY())).toList());
+        assertEquals(Routing.Orthogonal, appliedUses.getRouting());
+        assertEquals(70, appliedUses.getPosition());
+
+        DeploymentView appliedDeployment = (DeploymentView) parsed.getViews().getViewWithKey("deployment");
+        assertEquals(2, appliedDeployment.getElements().size());
+        appliedDeployment.getElements().forEach(e -> assertEquals(e.getElement() instanceof ContainerInstance ? 500 : 300, e.getX()));
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.structurizr.dsl.DslPackage.Line;
+
+import ru.beeatlas.c4.model.C4ParseSession.ParseContext;
+
+public class C4ParseEventsTest {
+
+    @Test
+    public void modelsAreBuiltWhenEventsAreApplied() {
+        C4ParseSession session = new C4ParseSession(() -> {}, null, workspace -> {});
+        ParseContext context = new ParseContext();
+        context.file = new File("fragment.dsl");
+        context.model = new C4DocumentModel(context.file.getAbsolutePath(), true);
+        // lines of a fragment included with four spaces of indentation
+        context.lines = List.of(new Line(1, "    properties {"), new Line(2, "        owner team"), new Line(3, "    }"));
+        context.leadingSpace = 4;
+        context.index = session.events.addFile(context);
+
+        session.events.add(C4ParseEvents.START_FILE, context, 0, null, null);
+        context.newLine();
+        context.newLine();
+        session.events.add(C4ParseEvents.PROPERTY, context, 0, "owner", "team");
+        context.newLine();
+        // the parser reads no lines past the end of the file
+        context.newLine();
+        session.events.add(C4ParseEvents.PROPERTY, context, 0, "last", "line");
+        assertEquals(3, session.events.size());
+        assertTrue(context.model.getProperties().isEmpty());
+
+        session.events.apply(session);
+        assertEquals(0, session.events.size());
+        assertEquals(List.of(new C4Property(2, "    owner team", "owner", "team"), new C4Property(3, "}", "last", "line")),
+                context.model.getProperties());
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+
+import ru.beeatlas.c4.helper.C4TestHelper;
+import ru.beeatlas.c4.intercept.InterceptParserAspect;
+import ru.beeatlas.c4.intercept.StructurizrDslParserListener;
+import ru.beeatlas.c4.model.C4DocumentModel.C4CompletionScope;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.aspectj.lang.Aspects.*;
+
+public class C4ScopeIndexTest {
+
+    protected C4DocumentManager documentManager;
+
+    @BeforeEach
+    public void setupDI() {
+
+        Module testModule = new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                documentManager = new C4DocumentManager();
+                bind(StructurizrDslParserListener.class).toInstance(documentManager);
+                requestInjection(aspectOf(InterceptParserAspect.class));
+            }
+
+        };
+
+        Guice.createInjector(testModule);
+    }
+
+    @Test
+    public void lookupsMatchScanOfAllScopes() throws IOException, URISyntaxException {
+
+        List<String> models = new ArrayList<>(C4TestHelper.MODELS_TO_TEST);
+        models.add("c4-dsl-extension.dsl");
+        for (String name : models) {
+            File testFile = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + name);
+            C4DocumentModel model = C4TestHelper.createDocumentFromFile(testFile, documentManager);
+            List<C4CompletionScope> scopes = model.getScopes();
+            assertFalse(scopes.isEmpty());
+            for (int line = -1; line <= model.getRawLines().size() + 1; line++) {
+                assertEquals(scanSurroundingScope(scopes, line), model.getSurroundingScope(line), name + ":" + line);
+                assertEquals(scanNearestScope(scopes, line), model.getNearestScope(line), name + ":" + line);
+            }
+        }
+    }
+
+    @Test
+    public void tiesAndUnclosedScopes() {
+
+        List<C4CompletionScope> scopes = List.of(
+                new C4CompletionScope(1, "ModelDslContext", 2, 20, 1),
+                new C4CompletionScope(2, "CommentDslContext", 5, 7, 2),
+                new C4CompletionScope(3, "First", 10, 12, 2),
+                new C4CompletionScope(4, "Second", 10, 14, 2),
+                new C4CompletionScope(5, "Open", 18, C4CompletionScope.SCOPE_NOT_CLOSED, 2),
+                new C4CompletionScope(6, "WorkspaceDslContext", 1, C4CompletionScope.SCOPE_NOT_CLOSED, 0));
+        C4ScopeIndex index = new C4ScopeIndex(scopes);
+
+        for (int line = 0; line <= 30; line++) {
+            assertEquals(scanSurroundingScope(scopes, line - 1),
+                    Optional.ofNullable(index.surrounding(line)).map(C4CompletionScope::name).orElse(C4DocumentModel.NO_SCOPE),
+                    "line " + line);
+            assertEquals(scanNearestScope(scopes, line - 1), Optional.ofNullable(index.nearest(line)), "line " + line);
+        }
+    }
+
+    // Scope lookups as implemented before the line to scope tables
+    private static String scanSurroundingScope(List<C4CompletionScope> scopes, int lineNumber) {
+        final int adjustedLineNumber = lineNumber + 1;
+        return scopes.stream()
+                .filter(scope -> scope.start() < adjustedLineNumber && (scope.end() > adjustedLineNumber
+                        || scope.end() == C4CompletionScope.SCOPE_NOT_CLOSED))
+                .sorted(Comparator.comparingInt(C4CompletionScope::start).reversed())
+                .findFirst()
+                .map(C4CompletionScope::name).orElse(C4DocumentModel.NO_SCOPE);
+    }
+
+    private static Optional<C4CompletionScope> scanNearestScope(List<C4CompletionScope> scopes, int lineNumber) {
+        final int adjustedLineNumber = lineNumber + 1;
+        return scopes.stream()
+                .filter(scope -> !scope.name().equals("CommentDslContext"))
+                .filter(scope -> scope.start() <= adjustedLineNumber
+                        && (scope.end() >= adjustedLineNumber
+                                || scope.end() == C4CompletionScope.SCOPE_NOT_CLOSED))
+                .sorted(Comparator.comparingInt(C4CompletionScope::start).reversed())
+                .findFirst();
+    }
+
+}
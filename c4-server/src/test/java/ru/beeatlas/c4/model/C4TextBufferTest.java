@@ -0,0 +1,97 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.junit.jupiter.api.Test;
+
+public class C4TextBufferTest {
+
+    private static final String[] FRAGMENTS = { "a", "softwareSystem", " {", "}", "\n", "\r\n", "\r", "\"x y\"", "" };
+
+    @Test
+    public void applyRangeChanges() {
+        C4TextBuffer buffer = new C4TextBuffer("workspace {\n    model {\n    }\n}\n");
+
+        buffer.apply(change(1, 11, 1, 11, "\n        user = person \"User\""));
+        buffer.apply(change(0, 0, 0, 9, "Workspace"));
+        buffer.apply(change(3, 4, 3, 5, "} "));
+
+        String expected = "Workspace {\n    model {\n        user = person \"User\"\n    } \n}\n";
+        assertEquals(expected, buffer.getText());
+        assertArrayEquals(C4TextBuffer.lineStarts(expected), buffer.getLineStarts());
+        assertEquals(expected.lines().toList(), C4TextBuffer.lines(buffer.getText(), buffer.getLineStarts()));
+
+        buffer.apply(new TextDocumentContentChangeEvent("views {}"));
+        assertEquals("views {}", buffer.getText());
+        assertArrayEquals(new int[] { 0 }, buffer.getLineStarts());
+    }
+
+    @Test
+    public void randomChangesMatchString() {
+        Random random = new Random(42);
+        String expected = "workspace {\r\n\tmodel {\n\t}\r}";
+        C4TextBuffer buffer = new C4TextBuffer(expected);
+
+        for (int i = 0; i < 5_000; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            int end = Math.min(expected.length(), start + random.nextInt(8));
+            String text = FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+            Position from = positionAt(buffer, start);
+            Position to = positionAt(buffer, end);
+            buffer.apply(List.of(new TextDocumentContentChangeEvent(new Range(from, to), text)));
+            expected = expected.substring(0, start) + text + expected.substring(end);
+
+            assertArrayEquals(C4TextBuffer.lineStarts(expected), buffer.getLineStarts(), "change " + i);
+            if (i % 50 == 0) {
+                assertEquals(expected, buffer.getText(), "change " + i);
+            }
+        }
+        assertEquals(expected, buffer.getText());
+        assertEquals(expected.lines().toList(), C4TextBuffer.lines(buffer.getText(), buffer.getLineStarts()));
+    }
+
+    @Test
+    public void linesMatchStringLines() {
+        for (String text : List.of("", "a", "a\n", "\n", "a\r\nb", "a\rb\r", "a\n\nb\n\n", "\r\n\r\n")) {
+            assertEquals(text.lines().toList(), C4TextBuffer.lines(text, C4TextBuffer.lineStarts(text)), text);
+        }
+    }
+
+    private static TextDocumentContentChangeEvent change(int startLine, int startCharacter, int endLine, int endCharacter, String text) {
+        return new TextDocumentContentChangeEvent(new Range(new Position(startLine, startCharacter), new Position(endLine, endCharacter)), text);
+    }
+
+    // Position as a client would send it: the line, and the offset within the line
+    private static Position positionAt(C4TextBuffer buffer, int offset) {
+        int[] starts = buffer.getLineStarts();
+        int line = 0;
+        while (line + 1 < starts.length && starts[line + 1] <= offset) {
+            line++;
+        }
+        return new Position(line, offset - starts[line]);
+    }
+
+}
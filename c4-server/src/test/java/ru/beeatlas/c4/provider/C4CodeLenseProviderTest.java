@@ -18,6 +18,7 @@ package ru.beeatlas.c4.provider;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 import java.io.File;
 import java.io.IOException;
@@ -37,6 +38,7 @@ import ru.beeatlas.c4.helper.C4TestHelper;
 import ru.beeatlas.c4.intercept.InterceptParserAspect;
 import ru.beeatlas.c4.intercept.StructurizrDslParserListener;
 import ru.beeatlas.c4.model.C4DocumentManager;
+import ru.beeatlas.c4.model.C4DocumentModel;
 
 import static org.aspectj.lang.Aspects.*;
 
@@ -82,9 +84,15 @@ public class C4CodeLenseProviderTest {
 
         File testFile = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "amazon_web_service.dsl");
         try {
-            List<CodeLens> codeLenses = C4TestHelper.createDocumentFromFile(testFile, documentManager).calcCodeLenses();
+            C4DocumentModel model = C4TestHelper.createDocumentFromFile(testFile, documentManager);
+            List<CodeLens> unresolved = model.calcCodeLenses();
 
-            assertEquals(1, codeLenses.size());
+            assertEquals(1, unresolved.size());
+            // the workspace is encoded only when the lens is resolved
+            assertNull(unresolved.get(0).getCommand());
+
+            List<CodeLens> codeLenses = List.of(model.resolveCodeLens(0));
+            assertNull(model.resolveCodeLens(1));
 
             assertEquals("c4.show.diagram", codeLenses.get(0).getCommand().getCommand());
             assertEquals(36, codeLenses.get(0).getRange().getStart().getLine());
@@ -96,6 +104,7 @@ public class C4CodeLenseProviderTest {
 
             CodeLensCommandArgs args = (CodeLensCommandArgs)codeLenses.get(0).getCommand().getArguments().get(0);
             assertEquals("AmazonWebServicesDeployment", args.diagramKey());
+            assertNotNull(args.encodedWorkspace());
 
         } 
         catch (IOException | URISyntaxException e) {
@@ -17,6 +17,7 @@
 package ru.beeatlas.c4.provider;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -103,4 +104,19 @@ public class C4DefinitionProviderTest {
         assertEquals(0, result.getRight().size());
     }
 
+    @Test
+    public void calcDefinitionsInIncludedFile() throws IOException, URISyntaxException {
+
+        C4DocumentModel workspaceModel = C4TestHelper.createDocumentFromFile(new File(C4TestHelper.PATH_INCLUDE_MODELS + File.separator + "include-test.dsl"), documentManager);
+
+        // systemContext _mysoftwareSystem_ -> subFolder/model.dsl
+        DefinitionParams params = new DefinitionParams(new TextDocumentIdentifier(workspaceModel.getUri()), new Position(7, 25));
+
+        Either<List<? extends Location>, List<? extends LocationLink>> result = definitionProvider.calcDefinitions(workspaceModel, params);
+
+        assertEquals(1, result.getRight().size());
+        assertTrue(result.getRight().get(0).getTargetUri().endsWith("subFolder/model.dsl"));
+        assertEquals(new Range(new Position(1, 0), new Position(1, 16)), result.getRight().get(0).getTargetSelectionRange());
+    }
+
 }
@@ -0,0 +1,136 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.provider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.lsp4j.SemanticTokensEdit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+
+import ru.beeatlas.c4.helper.C4TestHelper;
+import ru.beeatlas.c4.intercept.InterceptParserAspect;
+import ru.beeatlas.c4.intercept.StructurizrDslParserListener;
+import ru.beeatlas.c4.model.C4DocumentManager;
+import ru.beeatlas.c4.model.C4DocumentModel;
+
+import static org.aspectj.lang.Aspects.*;
+
+public class C4SemanticTokenProviderTest {
+
+    private C4DocumentManager documentManager;
+
+    @BeforeEach
+    public void initialize() {
+
+        Module testModule = new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                documentManager = new C4DocumentManager();
+                bind(StructurizrDslParserListener.class).toInstance(documentManager);
+                requestInjection(aspectOf(InterceptParserAspect.class));
+            }
+
+        };
+
+        Guice.createInjector(testModule);
+    }
+
+    @Test
+    public void calcDelta() {
+        int[] previous = { 1, 2, 3, 4, 5, 0, 4, 6, 14, 0 };
+        int[] current = { 1, 2, 3, 4, 5, 1, 0, 7, 14, 0, 0, 4, 6, 14, 0 };
+
+        List<SemanticTokensEdit> edits = C4SemanticTokenProvider.calcDelta(previous, current);
+
+        assertEquals(1, edits.size());
+        assertEquals(applyEdit(previous, edits.get(0)), Arrays.stream(current).boxed().toList());
+        assertTrue(C4SemanticTokenProvider.calcDelta(current, current.clone()).isEmpty());
+        assertEquals(applyEdit(current, C4SemanticTokenProvider.calcDelta(current, new int[0]).get(0)), List.of());
+    }
+
+    @Test
+    public void encode() {
+        List<C4SemanticTokenProvider.Token> tokens = List.of(
+                new C4SemanticTokenProvider.Token(2, 8, 3, 14, 0),
+                new C4SemanticTokenProvider.Token(0, 4, 5, 2, 1),
+                new C4SemanticTokenProvider.Token(2, 1, 4, 14, 0));
+
+        C4SemanticTokenProvider.EncodedTokens encoded = C4SemanticTokenProvider.encode(tokens);
+
+        assertEquals(Arrays.toString(new int[] { 0, 4, 5, 2, 1, 2, 1, 4, 14, 0, 0, 7, 3, 14, 0 }), Arrays.toString(encoded.data()));
+        assertEquals(Arrays.toString(new int[] { 0, 2, 2 }), Arrays.toString(encoded.lines()));
+        assertEquals(Arrays.toString(new int[] { 4, 1, 8 }), Arrays.toString(encoded.starts()));
+    }
+
+    @Test
+    public void calculateTokensInRange() throws IOException, URISyntaxException {
+
+        C4DocumentModel model = C4TestHelper.createDocumentFromFile(new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "amazon_web_service.dsl"), documentManager);
+
+        List<Integer> all = model.calculateTokens();
+        assertFalse(all.isEmpty());
+        List<int[]> absolute = decode(all);
+
+        int startLine = 20;
+        int endLine = 35;
+        List<int[]> expected = absolute.stream().filter(t -> t[0] >= startLine && t[0] <= endLine).toList();
+        List<int[]> range = decode(model.calculateTokens(startLine, endLine));
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), range.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(Arrays.toString(expected.get(i)), Arrays.toString(range.get(i)));
+        }
+        assertTrue(model.calculateTokens(10_000, 20_000).isEmpty());
+    }
+
+    // line, start, length, type, modifier of every token
+    private static List<int[]> decode(List<Integer> data) {
+        List<int[]> tokens = new ArrayList<>();
+        int line = 0;
+        int start = 0;
+        for (int i = 0; i < data.size(); i += 5) {
+            start = data.get(i) == 0 ? start + data.get(i + 1) : data.get(i + 1);
+            line += data.get(i);
+            tokens.add(new int[] { line, start, data.get(i + 2), data.get(i + 3), data.get(i + 4) });
+        }
+        return tokens;
+    }
+
+    private static List<Integer> applyEdit(int[] data, SemanticTokensEdit edit) {
+        List<Integer> result = new ArrayList<>(Arrays.stream(data).boxed().toList());
+        result.subList(edit.getStart(), edit.getStart() + edit.getDeleteCount()).clear();
+        result.addAll(edit.getStart(), edit.getData());
+        return result;
+    }
+
+}
@@ -19,10 +19,14 @@ package ru.beeatlas.c4.provider;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.inject.AbstractModule;
 import com.google.inject.Module;
 
@@ -33,9 +37,15 @@ import ru.beeatlas.c4.intercept.StructurizrDslParserListener;
 import ru.beeatlas.c4.model.C4DocumentManager;
 
 import com.google.inject.Guice;
+import com.structurizr.Workspace;
+import com.structurizr.util.WorkspaceUtils;
 
 import static org.aspectj.lang.Aspects.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class C4ViewProviderTest {
     private C4DocumentManager documentManager;
@@ -67,4 +77,53 @@ public class C4ViewProviderTest {
             e.printStackTrace();
         }
     }
+
+    @Test
+    void encodedWorkspaceIsCachedPerVersion() throws Exception {
+        File testFile = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "big_bank.dsl");
+        Workspace workspace = C4TestHelper.createDocumentFromFile(testFile, documentManager).getWorkspace();
+        String json = WorkspaceUtils.toJson(workspace, false);
+
+        String encoded = C4Generator.generateEncodedWorkspace(workspace, 1);
+        assertEquals(json, new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8));
+        assertEquals(json, C4Generator.json(workspace, 1));
+        // the fingerprint taken while writing is that of the JSON written
+        assertEquals(C4Generator.payload(json).version(), C4Generator.payload(workspace, 1).version());
+
+        assertSame(encoded, C4Generator.generateEncodedWorkspace(workspace, 1));
+        assertNotSame(encoded, C4Generator.generateEncodedWorkspace(workspace, 2));
+        String current = C4Generator.generateEncodedWorkspace(workspace, 2);
+        C4Generator.invalidate(workspace);
+        assertNotSame(current, C4Generator.generateEncodedWorkspace(workspace, 2));
+    }
+
+    @Test
+    void viewPayloadHasTheViewOnly() throws Exception {
+        File testFile = new File(C4TestHelper.PATH_VALID_MODELS + File.separator + "big_bank.dsl");
+        Workspace workspace = C4TestHelper.createDocumentFromFile(testFile, documentManager).getWorkspace();
+        C4Generator.Payload whole = C4Generator.payload(workspace, 1);
+        C4Generator.Payload payload = C4Generator.viewPayload(workspace, 1, "SystemContext");
+        assertTrue(payload.json().length() < whole.json().length());
+        assertNotSame(whole.version(), payload.version());
+        assertSame(payload, C4Generator.viewPayload(workspace, 1, "SystemContext"));
+        assertEquals(C4Generator.payload(payload.json()).version(), payload.version());
+        assertEquals(payload.version(), C4Generator.viewPayload(workspace, 2, "SystemContext").version());
+
+        JsonObject json = JsonParser.parseString(payload.json()).getAsJsonObject();
+        JsonObject views = json.getAsJsonObject("views");
+        assertEquals(1, views.getAsJsonArray("systemContextViews").size());
+        assertEquals(0, views.getAsJsonArray("containerViews").size());
+        assertEquals(0, views.getAsJsonArray("deploymentViews").size());
+        // the deployment model is not shown in the view
+        assertTrue(!json.getAsJsonObject("model").has("deploymentNodes")
+                || json.getAsJsonObject("model").getAsJsonArray("deploymentNodes").isEmpty());
+        // styles also apply to tags the renderer adds, like those of boundaries and groups
+        JsonObject wholeViews = JsonParser.parseString(whole.json()).getAsJsonObject().getAsJsonObject("views");
+        assertEquals(wholeViews.getAsJsonObject("configuration").get("styles"),
+                views.getAsJsonObject("configuration").get("styles"));
+        // the parsed payload is a workspace
+        Workspace view = WorkspaceUtils.fromJson(payload.json());
+        assertEquals(1, view.getViews().getSystemContextViews().size());
+        assertNotNull(view.getModel().getSoftwareSystemWithName("Internet Banking System"));
+    }
 }
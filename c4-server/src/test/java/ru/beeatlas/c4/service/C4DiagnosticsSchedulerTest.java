@@ -0,0 +1,222 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ru.beeatlas.c4.service.C4DiagnosticsScheduler.Request;
+
+public class C4DiagnosticsSchedulerTest {
+
+    private final List<Request> handled = new CopyOnWriteArrayList<>();
+    private C4DiagnosticsScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new C4DiagnosticsScheduler((request, cancelChecker) -> handled.add(request));
+        // long enough to queue everything before the first parse starts
+        scheduler.setDebounce(60_000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void latestVersionWins() {
+        scheduler.schedule("workspace.dsl", new Request("a.dsl", 1));
+        scheduler.schedule("workspace.dsl", new Request("a.dsl", 2));
+        scheduler.schedule("workspace.dsl", new Request("a.dsl", 3));
+
+        assertEquals(1, scheduler.getQueueDepth());
+        assertEquals(2, scheduler.getSkippedCount());
+
+        scheduler.flush().join();
+
+        assertEquals(List.of(new Request("a.dsl", 3)), handled);
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getParsedCount());
+    }
+
+    @Test
+    public void olderVersionIsDropped() {
+        scheduler.schedule("workspace.dsl", new Request("a.dsl", 5));
+        scheduler.schedule("workspace.dsl", new Request("a.dsl", 4));
+        scheduler.flush().join();
+
+        assertEquals(List.of(new Request("a.dsl", 5)), handled);
+        assertEquals(1, scheduler.getSkippedCount());
+    }
+
+    @Test
+    public void documentsAndRootsAreKeptApart() {
+        scheduler.schedule("one/workspace.dsl", new Request("one/a.dsl", 1));
+        scheduler.schedule("one/workspace.dsl", new Request("one/b.dsl", 1));
+        scheduler.schedule("two/workspace.dsl", new Request("two/c.dsl", 1));
+
+        assertEquals(3, scheduler.getQueueDepth());
+
+        scheduler.flush().join();
+
+        assertEquals(3, handled.size());
+        assertEquals(0, scheduler.getSkippedCount());
+    }
+
+    @Test
+    public void flushOfOneRootLeavesOthersQueued() {
+        scheduler.schedule("one/workspace.dsl", new Request("one/a.dsl", 1));
+        scheduler.schedule("two/workspace.dsl", new Request("two/b.dsl", 1));
+
+        scheduler.flush("one/workspace.dsl").join();
+
+        assertEquals(List.of(new Request("one/a.dsl", 1)), handled);
+        assertEquals(1, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void runningParseOfOlderVersionIsCanceled() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        C4DiagnosticsScheduler cancelingScheduler = new C4DiagnosticsScheduler((request, cancelChecker) -> {
+            if (request.version() == 1) {
+                started.countDown();
+                // a long parse checking for cancellation on every line
+                while (true) {
+                    cancelChecker.checkCanceled();
+                    Thread.onSpinWait();
+                }
+            }
+            handled.add(request);
+        });
+        try {
+            cancelingScheduler.setDebounce(0);
+            cancelingScheduler.schedule("workspace.dsl", new Request("a.dsl", 1));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            cancelingScheduler.schedule("workspace.dsl", new Request("a.dsl", 2));
+            cancelingScheduler.flush().join();
+
+            assertEquals(1, cancelingScheduler.getCanceledCount());
+            assertEquals(List.of(new Request("a.dsl", 2)), handled);
+        } finally {
+            cancelingScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void queuedOlderVersionIsSkipped() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        C4DiagnosticsScheduler blockingScheduler = new C4DiagnosticsScheduler((request, cancelChecker) -> {
+            if (request.uri().equals("b.dsl")) {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            handled.add(request);
+        });
+        try {
+            blockingScheduler.setDebounce(60_000);
+            blockingScheduler.schedule("workspace.dsl", new Request("b.dsl", 1));
+            blockingScheduler.flush("workspace.dsl");
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // dispatched behind the running parse, then replaced by a newer version
+            blockingScheduler.schedule("workspace.dsl", new Request("a.dsl", 1));
+            blockingScheduler.flush("workspace.dsl");
+            blockingScheduler.schedule("workspace.dsl", new Request("a.dsl", 2));
+            release.countDown();
+            blockingScheduler.flush().join();
+
+            assertEquals(List.of(new Request("b.dsl", 1), new Request("a.dsl", 2)), handled);
+            assertEquals(1, blockingScheduler.getSkippedCount());
+        } finally {
+            blockingScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void rootsAreParsedInParallel() throws InterruptedException {
+        // both parses wait for each other, only completes if they run at the same time
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        C4DiagnosticsScheduler parallelScheduler = new C4DiagnosticsScheduler((request, cancelChecker) -> {
+            bothStarted.countDown();
+            try {
+                if (bothStarted.await(10, TimeUnit.SECONDS)) {
+                    handled.add(request);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2);
+        try {
+            parallelScheduler.setDebounce(60_000);
+            parallelScheduler.schedule("one/workspace.dsl", new Request("one/a.dsl", 1));
+            parallelScheduler.schedule("two/workspace.dsl", new Request("two/b.dsl", 1));
+            parallelScheduler.flush().join();
+
+            assertEquals(2, handled.size());
+        } finally {
+            parallelScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void sameRootIsParsedInOrder() throws InterruptedException {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        C4DiagnosticsScheduler serialScheduler = new C4DiagnosticsScheduler((request, cancelChecker) -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            started.countDown();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.add(request);
+            active.decrementAndGet();
+        }, 4);
+        try {
+            serialScheduler.setDebounce(0);
+            serialScheduler.schedule("workspace.dsl", new Request("a.dsl", 1));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // queued behind the running parse of the same root
+            serialScheduler.schedule("workspace.dsl", new Request("b.dsl", 1));
+            serialScheduler.flush().join();
+
+            assertEquals(List.of(new Request("a.dsl", 1), new Request("b.dsl", 1)), handled);
+            assertEquals(1, maxActive.get());
+        } finally {
+            serialScheduler.shutdown();
+        }
+    }
+
+}
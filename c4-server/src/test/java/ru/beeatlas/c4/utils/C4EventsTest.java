@@ -0,0 +1,52 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.utils;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.lsp4j.CodeLensParams;
+import org.eclipse.lsp4j.ExecuteCommandParams;
+import org.eclipse.lsp4j.HoverParams;
+import org.eclipse.lsp4j.InitializeParams;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class C4EventsTest {
+
+    @Test
+    void documentUriOfRequests() {
+        TextDocumentIdentifier document = new TextDocumentIdentifier("file:///tmp/workspace.dsl");
+        assertThat(C4Events.documentUri(new HoverParams(document, new Position(1, 2)))).isEqualTo(document.getUri());
+        assertThat(C4Events.documentUri(new CodeLensParams(document))).isEqualTo(document.getUri());
+
+        JsonObject options = new JsonObject();
+        options.addProperty("document", "/tmp/workspace.dsl");
+        options.addProperty("viewKey", "landscape");
+        assertThat(C4Events.documentUri(new ExecuteCommandParams("c4-server.get-json", List.of(options))))
+                .isEqualTo(new File("/tmp/workspace.dsl").toURI().toString());
+
+        assertThat(C4Events.documentUri(new InitializeParams())).isNull();
+        assertThat(C4Events.documentUri(null)).isNull();
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.utils;
+
+import java.util.List;
+
+import org.eclipse.lsp4j.ExecuteCommandParams;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+import org.eclipse.lsp4j.jsonrpc.services.GenericEndpoint;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class C4MetricsTest {
+
+    @Test
+    void percentilesAreBucketBounds() {
+        C4Metrics.Histogram histogram = new C4Metrics.Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getCount()).isEqualTo(100);
+        // 50 falls into 32-63, 95 and 99 into 64-127 which is capped by the maximum
+        assertThat(histogram.percentile(50)).isEqualTo(63);
+        assertThat(histogram.percentile(95)).isEqualTo(100);
+        assertThat(histogram.percentile(99)).isEqualTo(100);
+        assertThat(new C4Metrics.Histogram().percentile(99)).isZero();
+    }
+
+    @Test
+    void requestsAreTimedUntilTheirResponse() {
+        C4Metrics metrics = new C4Metrics();
+        MessageConsumer incoming = metrics.timeRequests(new RemoteEndpoint(message -> {}, new GenericEndpoint(new Object())) {
+            @Override
+            public void consume(Message message) {
+            }
+        });
+        MessageConsumer outgoing = metrics.timeRequests(message -> {});
+
+        incoming.consume(request("1", "textDocument/hover", null));
+        incoming.consume(request("2", "workspace/executeCommand", new ExecuteCommandParams("c4-server.get-json", List.of())));
+        // a request of the server to the client is not timed
+        outgoing.consume(request("1", "workspace/configuration", null));
+        outgoing.consume(response("1"));
+        outgoing.consume(response("2"));
+        outgoing.consume(response("1"));
+
+        assertThat(metrics.getRequestTime("textDocument/hover").getCount()).isEqualTo(1);
+        assertThat(metrics.getRequestTime("workspace/executeCommand c4-server.get-json").getCount()).isEqualTo(1);
+        assertThat(metrics.getRequestTime("workspace/configuration")).isNull();
+    }
+
+    private static RequestMessage request(String id, String method, Object params) {
+        RequestMessage request = new RequestMessage();
+        request.setId(id);
+        request.setMethod(method);
+        request.setParams(params);
+        return request;
+    }
+
+    private static ResponseMessage response(String id) {
+        ResponseMessage response = new ResponseMessage();
+        response.setId(id);
+        return response;
+    }
+
+}
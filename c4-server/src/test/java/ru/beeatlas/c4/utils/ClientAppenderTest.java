@@ -0,0 +1,128 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.Test;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClientAppenderTest {
+
+    private static class StringEncoder extends EncoderBase<String> {
+        @Override
+        public byte[] headerBytes() {
+            return null;
+        }
+
+        @Override
+        public byte[] encode(String event) {
+            return event.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public byte[] footerBytes() {
+            return null;
+        }
+    }
+
+    private static class RecordingClient implements LanguageClient {
+        final List<String> messages = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void logMessage(MessageParams message) {
+            messages.add(message.getMessage());
+        }
+
+        @Override
+        public void telemetryEvent(Object object) {
+        }
+
+        @Override
+        public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+        }
+
+        @Override
+        public void showMessage(MessageParams messageParams) {
+        }
+
+        @Override
+        public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static ClientAppender<String> appender(RecordingClient client, int capacity) {
+        ClientAppender<String> appender = new ClientAppender<>();
+        appender.setContext(new LoggerContext());
+        appender.setEncoder(new StringEncoder());
+        appender.setClient(client);
+        appender.setCapacity(capacity);
+        // flushed by the test
+        appender.setFlushInterval(60_000);
+        appender.start();
+        return appender;
+    }
+
+    @Test
+    void linesAreSentInOneBatch() {
+        RecordingClient client = new RecordingClient();
+        ClientAppender<String> appender = appender(client, 16);
+        appender.doAppend("first");
+        appender.doAppend("second");
+        assertThat(client.messages).isEmpty();
+
+        appender.flush();
+        assertThat(client.messages).containsExactly("first\nsecond");
+        // nothing new, nothing sent
+        appender.flush();
+        assertThat(client.messages).hasSize(1);
+        appender.stop();
+    }
+
+    @Test
+    void linesOverCapacityAreDroppedAndReported() {
+        RecordingClient client = new RecordingClient();
+        ClientAppender<String> appender = appender(client, 2);
+        for (int i = 0; i < 5; i++) {
+            appender.doAppend("line " + i);
+        }
+        assertThat(appender.getDroppedCount()).isEqualTo(3);
+
+        appender.flush();
+        assertThat(client.messages).containsExactly("line 0\nline 1\n3 log lines dropped");
+        appender.doAppend("line 5");
+        appender.stop();
+        // the rest is flushed on stop and drops are reported once
+        assertThat(client.messages).last().isEqualTo("line 5");
+        appender.doAppend("after stop");
+        assertThat(client.messages).hasSize(2);
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.utils;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.structurizr.Workspace;
+import com.structurizr.model.Person;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.util.WorkspaceUtils;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.RelationshipView;
+import com.structurizr.view.SystemLandscapeView;
+
+import ru.beeatlas.c4.benchmark.SyntheticWorkspace;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LayoutOverlayTest {
+
+    private static SystemLandscapeView landscape(Workspace workspace) {
+        Person user = workspace.getModel().addPerson("User", "A user");
+        SoftwareSystem previous = null;
+        for (int i = 0; i < 5; i++) {
+            SoftwareSystem system = workspace.getModel().addSoftwareSystem("System " + i, "A system");
+            user.uses(system, "Uses");
+            if (previous != null) {
+                previous.uses(system, "Calls");
+            }
+            previous = system;
+        }
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("landscape", "All systems");
+        view.addAllElements();
+        return view;
+    }
+
+    private static JsonObject parse(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    // draw.io diagram with the geometry of every element and a bend point on every relationship
+    private static String mx(SystemLandscapeView view) {
+        StringBuilder sb = new StringBuilder("<mxfile><diagram><mxGraphModel><root>");
+        int i = 0;
+        for (ElementView elementView : view.getElements()) {
+            sb.append("<object id=\"").append(elementView.getId()).append("\"><mxCell><mxGeometry x=\"")
+                    .append(100 * i).append("\" y=\"").append(50 * i++).append("\"/></mxCell></object>");
+        }
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            sb.append("<object id=\"").append(MxExporter.relationshipId(relationshipView))
+                    .append("\"><mxCell><mxGeometry><Array><mxPoint x=\"").append(30 * i).append("\" y=\"")
+                    .append(20 * i++).append("\"/></Array></mxGeometry></mxCell></object>");
+        }
+        return sb.append("</root></mxGraphModel></diagram></mxfile>").toString();
+    }
+
+    @Test
+    void svgLayoutLeavesTheWorkspaceAsItIs() throws Exception {
+        Workspace workspace = new Workspace("Layout", "SVG layout");
+        SystemLandscapeView view = landscape(workspace);
+        String svg = SyntheticWorkspace.svg(view, 42);
+        String before = WorkspaceUtils.toJson(workspace, false);
+
+        LayoutOverlay layout = new SVGReader(400, true).parseLayout(view, svg);
+        assertThat(WorkspaceUtils.toJson(workspace, false)).isEqualTo(before);
+        assertThat(layout.getViewKey()).isEqualTo("landscape");
+
+        JsonObject json = parse(before);
+        layout.applyTo(json);
+        // the same JSON as with the layout applied to the view
+        new SVGReader(400, true).parseAndApplyLayout(view, svg);
+        assertThat(json).isEqualTo(parse(WorkspaceUtils.toJson(workspace, false)));
+    }
+
+    @Test
+    void mxLayoutLeavesTheWorkspaceAsItIs() throws Exception {
+        Workspace workspace = new Workspace("Layout", "draw.io layout");
+        SystemLandscapeView view = landscape(workspace);
+        String mx = mx(view);
+        String before = WorkspaceUtils.toJson(workspace, false);
+
+        LayoutOverlay layout = new MxReader(400, true).parseLayout(view, mx);
+        assertThat(WorkspaceUtils.toJson(workspace, false)).isEqualTo(before);
+
+        JsonObject json = parse(before);
+        layout.applyTo(json);
+        new MxReader(400, true).parseAndApplyLayout(view, mx);
+        String after = WorkspaceUtils.toJson(workspace, false);
+        assertThat(after).isNotEqualTo(before);
+        assertThat(json).isEqualTo(parse(after));
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+    Copyright 2025 VimpelCom PJSC
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package ru.beeatlas.c4.utils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.Container;
+import com.structurizr.model.Person;
+import com.structurizr.model.Relationship;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.view.ContainerView;
+import com.structurizr.view.PaperSize;
+import com.structurizr.view.Vertex;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class SVGReaderTest {
+
+    // graphviz rendering of the container view: the software system boundary with a group
+    // in it as clusters, edges with and without labels, and a node whose shapes are nested
+    // in a link, deeper than the shapes the layout is read from
+    private static final File SVG = new File(String.join(File.separator,
+            Arrays.asList("src", "test", "java", "resources", "svg", "container.svg")));
+
+    private static ContainerView containerView() {
+        Workspace workspace = new Workspace("Layout", "Container view rendered by graphviz");
+        Person user = workspace.getModel().addPerson("User", "A user");
+        SoftwareSystem system = workspace.getModel().addSoftwareSystem("Software System", "A system");
+        Container web = system.addContainer("Web Application", "Serves the pages", "Java");
+        Container api = system.addContainer("API", "Serves the data", "Java");
+        Container database = system.addContainer("Database", "Stores data", "PostgreSQL");
+        web.setGroup("Services");
+        api.setGroup("Services");
+        user.uses(web, "Visits");
+        web.uses(api, "Calls", "JSON/HTTPS");
+        api.uses(database, "");
+        ContainerView view = workspace.getViews().createContainerView(system, "containers", "Containers");
+        view.addAllContainers();
+        view.add(user);
+        return view;
+    }
+
+    private static Relationship relationship(ContainerView view, String source, String destination) {
+        return view.getModel().getRelationships().stream()
+                .filter(r -> r.getSource().getName().equals(source) && r.getDestination().getName().equals(destination))
+                .findFirst().orElseThrow();
+    }
+
+    @Test
+    public void layoutOfGraphvizSvg() throws Exception {
+        ContainerView view = containerView();
+        // ids the SVG refers to
+        assertThat(view.getModel().getPersonWithName("User").getId()).isEqualTo("1");
+        assertThat(relationship(view, "Web Application", "API").getId()).isEqualTo("7");
+
+        new SVGReader(400, true).parseAndApplyLayout(view, Files.readString(SVG.toPath()));
+
+        assertThat(view.getElementView(view.getModel().getPersonWithName("User"))).satisfies(e -> {
+            assertThat(e.getX()).isEqualTo(750);
+            assertThat(e.getY()).isEqualTo(208);
+        });
+        SoftwareSystem system = view.getSoftwareSystem();
+        assertThat(view.getElementView(system.getContainerWithName("Web Application"))).satisfies(e -> {
+            assertThat(e.getX()).isEqualTo(750);
+            assertThat(e.getY()).isEqualTo(1475);
+        });
+        assertThat(view.getElementView(system.getContainerWithName("API"))).satisfies(e -> {
+            assertThat(e.getX()).isEqualTo(1141);
+            assertThat(e.getY()).isEqualTo(2542);
+        });
+        // shapes nested in a link are not read, the element is only moved with the others
+        assertThat(view.getElementView(system.getContainerWithName("Database"))).satisfies(e -> {
+            assertThat(e.getX()).isEqualTo(175);
+            assertThat(e.getY()).isEqualTo(192);
+        });
+
+        // straight edges have no vertices, with or without a label
+        assertThat(view.getRelationshipView(relationship(view, "User", "Web Application")).getVertices()).isEmpty();
+        assertThat(view.getRelationshipView(relationship(view, "API", "Database")).getVertices()).isEmpty();
+        // the inner points of a curved edge, its label nested in a link is skipped
+        assertThat(view.getRelationshipView(relationship(view, "Web Application", "API")).getVertices())
+                .extracting(Vertex::getX, Vertex::getY)
+                .containsExactly(
+                        tuple(1365, 2388),
+                        tuple(1400, 2432),
+                        tuple(1436, 2475));
+
+        // the page includes the clusters and the margin
+        assertThat(view.getPaperSize()).isEqualTo(PaperSize.A2_Portrait);
+        assertThat(view.getDimensions().getWidth()).isEqualTo(3933);
+        assertThat(view.getDimensions().getHeight()).isEqualTo(4816);
+    }
+
+    @Test
+    public void viewLeftAsItIs() throws Exception {
+        ContainerView view = containerView();
+        LayoutOverlay layout = new SVGReader(400, true).parseLayout(view, Files.readString(SVG.toPath()));
+
+        assertThat(layout.getX("1")).isEqualTo(750);
+        assertThat(view.getElements()).allSatisfy(e -> assertThat(e.getX()).isZero());
+        assertThat(view.getPaperSize()).isNull();
+    }
+
+}
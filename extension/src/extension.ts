@@ -105,7 +105,7 @@ function initExtension(context: ExtensionContext, env: NodeJS.ProcessEnv) {
     documentSelector: [{ scheme: "file", language: "c4" }, { scheme: "file", language: "markdown" }],
     outputChannel: logger,
     synchronize: {
-      fileEvents: [workspace.createFileSystemWatcher("**/*.dsl"), workspace.createFileSystemWatcher("**/*.md")],
+      fileEvents: [workspace.createFileSystemWatcher("**/*.dsl"), workspace.createFileSystemWatcher("**/*.md"), workspace.createFileSystemWatcher("**/workspace.json")],
     },
   };
 
@@ -27,7 +27,7 @@ import {
   window
 } from "vscode";
 
-import { CommandResultCode, RefreshOptions } from "../types";
+import { CommandResultCode, NOT_MODIFIED, RefreshOptions } from "../types";
 import { readFile, writeFile } from 'node:fs';
 import { join } from 'node:path';
 import { homedir } from 'node:os';
@@ -38,6 +38,8 @@ class PreviewService {
   private _currentDiagram: string;
   private _currentDocument: TextDocument;
   private _currentDiagramAsDot: string;
+  // version of the payload shown, sent with get-json to get NOT_MODIFIED instead of the same payload
+  private _version: string | undefined;
 
   private readonly title: string = 'Structurizr Preview';
   private readonly id: string = 'structurizrPreview';
@@ -132,16 +134,19 @@ public async importLayoutMax(context: ExtensionContext) {
               viewKey: this._currentDiagram,
               document: this._currentDocument.uri.path,
               svg: undefined,
-              mx: data.toString()
+              mx: data.toString(),
+              viewOnly: true,
+              version: this._version
             };
             progress.report({ message: "Apply layout..." });
             commands.executeCommand("c4-server.get-json", refreshOptions).then(async (callback) => {
               const result = callback as CommandResultCode;
-              if(result.message === undefined) {
+              if(result.resultcode === NOT_MODIFIED || result.message === undefined) {
                   resolve();
                   return;                  
               }
               progress.report({ message: "Refresh diagram..." });
+              this._version = result.version;
               this.panel ??= this.createPanel();
               this.panel.webview.postMessage( { 'body' : result.message, 'view' : this._currentDiagram }).then(() => resolve());
             });
@@ -216,11 +221,15 @@ public async importLayoutMax(context: ExtensionContext) {
       viewKey: this._currentDiagram,
       document: this._currentDocument.uri.path,
       svg: svg,
-      mx: undefined
+      mx: undefined,
+      viewOnly: true,
+      version: this.panel ? this._version : undefined
     };
     commands.executeCommand("c4-server.get-json", refreshOptions).then(async (callback) => {
       const result = callback as CommandResultCode;
-      if(result.message !== undefined) {
+      // the panel shows this payload already
+      if(result.resultcode !== NOT_MODIFIED && result.message !== undefined) {
+        this._version = result.version;
         this.panel ??= this.createPanel();
         this.panel.webview.postMessage( { 'body' : result.message, 'view' : this._currentDiagram });
       }
@@ -304,6 +313,7 @@ public async importLayoutMax(context: ExtensionContext) {
 
     panel.onDidDispose(() => {
       this._currentDiagram = "";
+      this._version = undefined;
       this.panel = undefined;
     });
     return panel;
@@ -22,13 +22,15 @@ import {
   window,
 } from "vscode";
 import { RefreshOptions } from "../types/RefreshOptions";
-import { CommandResultCode } from "../types/CommandResultCode";
+import { CommandResultCode, NOT_MODIFIED } from "../types/CommandResultCode";
 
 class StructurizrPreviewService {
   private readonly renderService: string;
   private panel: WebviewPanel | undefined;
   private _currentDiagram: string;
   private _currentDocument: TextDocument;
+  // version of the payload shown, sent with a refresh to get NOT_MODIFIED instead of the same payload
+  private _version: string | undefined;
 
   private readonly VIEW_TYPE: string = 'Structurizr Preview';  
 
@@ -58,16 +60,22 @@ class StructurizrPreviewService {
         viewKey: this.currentDiagram,
         document: savedDoc.uri.path,
         svg: undefined,
-        mx: undefined
+        mx: undefined,
+        viewOnly: true,
+        version: this._version
       };
       commands.executeCommand("c4.refresh", refreshOptions).then((callback) => {
         const result = callback as CommandResultCode;
-        this.updateWebView(Buffer.from(result.message, 'utf8').toString('base64'));
+        if (result.resultcode === NOT_MODIFIED || result.message === undefined) {
+          return;
+        }
+        this.updateWebView(Buffer.from(result.message, 'utf8').toString('base64'), result.version);
       });
     }
   }
 
-  public async updateWebView(encodedContent: string) {
+  public async updateWebView(encodedContent: string, version?: string) {
+    this._version = version;
     this.panel ??= this.createPanel();
     const content = await this.getViewContent(encodedContent);
     this.panel.webview.html = this.updateViewContent(content);
@@ -84,6 +92,7 @@ class StructurizrPreviewService {
     );
     panel.onDidDispose(() => {
       this.currentDiagram = "";
+      this._version = undefined;
       this.panel = undefined;
     });
     return panel;
@@ -17,6 +17,10 @@
 type CommandResultCode = {
   resultcode: number;
   message: string;
+  version?: string;
 };
 
-export { CommandResultCode };
+// resultcode of a refresh when the client has the payload of this version already, no message is sent
+const NOT_MODIFIED = 5;
+
+export { CommandResultCode, NOT_MODIFIED };
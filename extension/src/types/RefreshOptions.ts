@@ -19,6 +19,10 @@ type RefreshOptions = {
   document: string;
   svg: string | undefined;
   mx: string | undefined;
+  // reply with the part of the workspace the view shows only
+  viewOnly?: boolean;
+  // of the reply got last, the server answers NOT_MODIFIED while it is still the same
+  version?: string;
 };
 
 export { RefreshOptions };
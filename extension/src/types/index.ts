@@ -14,7 +14,7 @@
     limitations under the License.
 */
 
-import { CommandResultCode } from "./CommandResultCode";
+import { CommandResultCode, NOT_MODIFIED } from "./CommandResultCode";
 import { CommandResultTextDecorations } from "./CommandResultTextDecorations";
 import { ConfigurationOptions } from "./ConfigurationOptions";
 import { DecoratedRange } from "./DecoratedRange";
@@ -26,6 +26,7 @@ export {
   CommandResultTextDecorations,
   ConfigurationOptions,
   DecoratedRange,
+  NOT_MODIFIED,
   RefreshOptions,
   TextDocumentChangeConfig,
 };